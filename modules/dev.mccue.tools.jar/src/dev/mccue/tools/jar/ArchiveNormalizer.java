@@ -0,0 +1,113 @@
+package dev.mccue.tools.jar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.jar.JarFile;
+
+/**
+ * Rewrites a jar, jmod or other zip archive so that it only depends on the names and
+ * contents of its entries.
+ *
+ * <p>Entries are sorted by name, after {@code META-INF/} and the manifest as a jar
+ * requires. Every entry gets the same time, extra fields such as extended timestamps
+ * are dropped, and Unix permissions are reduced to {@code 755} for executables and
+ * directories and {@code 644} for everything else. Compressed data is copied as is,
+ * as is any preamble like a jmod's header.
+ *
+ * <pre>{@code
+ * ArchiveNormalizer.normalize(Path.of("build", "app.jar"), ZonedDateTime.parse("2024-01-01T00:00:00Z"));
+ * }</pre>
+ */
+public final class ArchiveNormalizer {
+    private static final int UNIX = 3;
+    private static final int JAR_MAGIC_ID = 0xCAFE;
+
+    private ArchiveNormalizer() {}
+
+    /**
+     * Normalizes an archive in place.
+     *
+     * @param archive The archive.
+     * @param date The time to give every entry.
+     */
+    public static void normalize(Path archive, ZonedDateTime date) throws IOException {
+        var dosTime = ZipArchiveWriter.dosTime(JarWriter.entryTime(date));
+        try (var reader = ZipArchiveReader.open(archive, true)) {
+            // The last entry with a name is the one readers see
+            var byName = new LinkedHashMap<String, ZipArchiveReader.Entry>();
+            for (var entry : reader.entries()) {
+                byName.put(entry.name(), entry);
+            }
+            var entries = new ArrayList<>(byName.values());
+            entries.sort(Comparator.comparingInt((ZipArchiveReader.Entry entry) -> rank(entry.name()))
+                    .thenComparing(ZipArchiveReader.Entry::name));
+
+            var preamble = reader.preamble();
+            ZipArchiveWriter.replace(archive, preamble, out -> {
+                for (int i = 0; i < entries.size(); i++) {
+                    var entry = entries.get(i);
+                    var extra = i == 0 && hasJarMagic(entry) ? JarWriter.JAR_MAGIC : new byte[0];
+                    out.write(
+                            new ZipArchiveWriter.Entry(
+                                    entry.name(),
+                                    entry.method(),
+                                    entry.crc(),
+                                    entry.compressedSize(),
+                                    entry.size(),
+                                    dosTime,
+                                    extra,
+                                    entry.versionMadeBy(),
+                                    externalAttributes(entry)
+                            ),
+                            reader.rawData(entry)
+                    );
+                }
+            });
+        }
+    }
+
+    private static int rank(String name) {
+        if (name.equals("META-INF/")) {
+            return 0;
+        }
+        else if (name.equals(JarFile.MANIFEST_NAME)) {
+            return 1;
+        }
+        else {
+            return 2;
+        }
+    }
+
+    private static boolean hasJarMagic(ZipArchiveReader.Entry entry) {
+        var extra = ByteBuffer.wrap(entry.extra()).order(ByteOrder.LITTLE_ENDIAN);
+        while (extra.remaining() >= 4) {
+            int id = Short.toUnsignedInt(extra.getShort());
+            int length = Short.toUnsignedInt(extra.getShort());
+            if (id == JAR_MAGIC_ID) {
+                return true;
+            }
+            if (length > extra.remaining()) {
+                break;
+            }
+            extra.position(extra.position() + length);
+        }
+        return false;
+    }
+
+    private static long externalAttributes(ZipArchiveReader.Entry entry) {
+        if (entry.versionMadeBy() >> 8 != UNIX) {
+            // Only the MS-DOS directory bit
+            return entry.externalAttributes() & 0x10;
+        }
+        var mode = (entry.externalAttributes() >> 16) & 0xFFFF;
+        var type = mode & 0170000;
+        var executable = entry.isDirectory() || (mode & 0111) != 0;
+        return ((type | (executable ? 0755 : 0644)) << 16) | (entry.externalAttributes() & 0x10);
+    }
+}
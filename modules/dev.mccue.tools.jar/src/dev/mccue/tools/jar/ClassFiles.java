@@ -0,0 +1,177 @@
+package dev.mccue.tools.jar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Just enough class file parsing to rewrite attributes.
+ */
+final class ClassFiles {
+    static final int CONSTANT_UTF8 = 1;
+    static final int CONSTANT_CLASS = 7;
+    static final int CONSTANT_PACKAGE = 20;
+
+    // What javac leaves out with -g:none
+    private static final Set<String> CLASS_DEBUG_ATTRIBUTES = Set.of(
+            "SourceFile", "SourceDebugExtension"
+    );
+    private static final Set<String> CODE_DEBUG_ATTRIBUTES = Set.of(
+            "LineNumberTable", "LocalVariableTable", "LocalVariableTypeTable"
+    );
+
+    private ClassFiles() {}
+
+    /**
+     * @param utf8 The {@code CONSTANT_Utf8} entries by index.
+     * @param count The {@code constant_pool_count}.
+     * @param end The offset just past the constant pool.
+     */
+    record ConstantPool(Map<Integer, String> utf8, int count, int end) {
+    }
+
+    /**
+     * @param classFile A class file.
+     * @return Its constant pool, with the buffer positioned just past it.
+     */
+    static ConstantPool constantPool(ByteBuffer classFile) {
+        var bytes = classFile.array();
+        classFile.position(8);
+        int count = Short.toUnsignedInt(classFile.getShort());
+        var utf8 = new HashMap<Integer, String>();
+        for (int i = 1; i < count; i++) {
+            int tag = Byte.toUnsignedInt(classFile.get());
+            switch (tag) {
+                case CONSTANT_UTF8 -> {
+                    int length = Short.toUnsignedInt(classFile.getShort());
+                    var start = classFile.position();
+                    utf8.put(i, decode(bytes, start - 2, length + 2));
+                    classFile.position(start + length);
+                }
+                case 3, 4 -> classFile.position(classFile.position() + 4);
+                case 5, 6 -> {
+                    classFile.position(classFile.position() + 8);
+                    i++;
+                }
+                case CONSTANT_CLASS, 8, 16, 19, CONSTANT_PACKAGE -> classFile.position(classFile.position() + 2);
+                case 9, 10, 11, 12, 17, 18 -> classFile.position(classFile.position() + 4);
+                case 15 -> classFile.position(classFile.position() + 3);
+                default -> throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+            }
+        }
+        return new ConstantPool(utf8, count, classFile.position());
+    }
+
+    static void skipAttributes(ByteBuffer in) {
+        int count = Short.toUnsignedInt(in.getShort());
+        for (int i = 0; i < count; i++) {
+            in.position(in.position() + 2);
+            int length = in.getInt();
+            in.position(in.position() + length);
+        }
+    }
+
+    /**
+     * Removes source file names, line numbers and local variable names, as
+     * compiling with {@code -g:none} would. The constant pool is left as is.
+     *
+     * @param classFile A class file.
+     * @return The class file without debug attributes.
+     */
+    static byte[] stripDebug(byte[] classFile) {
+        var in = ByteBuffer.wrap(classFile);
+        var constantPool = constantPool(in);
+        var utf8 = constantPool.utf8();
+
+        var bytes = new ByteArrayOutputStream(classFile.length);
+        var out = new DataOutputStream(bytes);
+        try {
+            out.write(classFile, 0, constantPool.end());
+
+            // access_flags, this_class, super_class, interfaces
+            int start = in.position();
+            in.position(start + 6);
+            int interfaces = Short.toUnsignedInt(in.getShort());
+            in.position(in.position() + 2 * interfaces);
+            out.write(classFile, start, in.position() - start);
+
+            for (int members = 0; members < 2; members++) {
+                int count = Short.toUnsignedInt(in.getShort());
+                out.writeShort(count);
+                for (int i = 0; i < count; i++) {
+                    out.write(classFile, in.position(), 6);
+                    in.position(in.position() + 6);
+                    copyAttributes(in, out, utf8, Set.of(), true);
+                }
+            }
+
+            copyAttributes(in, out, utf8, CLASS_DEBUG_ATTRIBUTES, false);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void copyAttributes(
+            ByteBuffer in,
+            DataOutputStream out,
+            Map<Integer, String> utf8,
+            Set<String> dropped,
+            boolean stripCode
+    ) throws IOException {
+        int count = Short.toUnsignedInt(in.getShort());
+        var kept = new ByteArrayOutputStream();
+        var keptOut = new DataOutputStream(kept);
+        int keptCount = 0;
+        for (int i = 0; i < count; i++) {
+            int nameIndex = Short.toUnsignedInt(in.getShort());
+            int length = in.getInt();
+            var name = utf8.get(nameIndex);
+            var info = new byte[length];
+            in.get(info);
+            if (dropped.contains(name)) {
+                continue;
+            }
+            if (stripCode && "Code".equals(name)) {
+                info = stripCode(info, utf8);
+            }
+            keptOut.writeShort(nameIndex);
+            keptOut.writeInt(info.length);
+            keptOut.write(info);
+            keptCount++;
+        }
+        out.writeShort(keptCount);
+        kept.writeTo(out);
+    }
+
+    private static byte[] stripCode(byte[] code, Map<Integer, String> utf8) throws IOException {
+        var in = ByteBuffer.wrap(code);
+        // max_stack, max_locals, code_length, code
+        in.position(4);
+        int codeLength = in.getInt();
+        in.position(in.position() + codeLength);
+        int exceptions = Short.toUnsignedInt(in.getShort());
+        in.position(in.position() + 8 * exceptions);
+
+        var bytes = new ByteArrayOutputStream(code.length);
+        var out = new DataOutputStream(bytes);
+        out.write(code, 0, in.position());
+        copyAttributes(in, out, utf8, CODE_DEBUG_ATTRIBUTES, false);
+        return bytes.toByteArray();
+    }
+
+    private static String decode(byte[] bytes, int offset, int length) {
+        try {
+            return new DataInputStream(new ByteArrayInputStream(bytes, offset, length)).readUTF();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package dev.mccue.tools.jar;
+
+import dev.mccue.tools.ExitStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The order a program loads its classes in, for {@link JarWriter#classLoadOrder(List)}.
+ *
+ * <p>The order comes from a training run logging with {@code -Xlog:class+load}.
+ *
+ * <pre>{@code
+ * var order = ClassLoadOrder.record(List.of("java", "-jar", "build/app.jar"));
+ * JarWriter.of(Path.of("build", "app.jar"))
+ *         .addAll(classes)
+ *         .classLoadOrder(order)
+ *         .write();
+ * }</pre>
+ */
+public final class ClassLoadOrder {
+    static final String TAGS = "[class,load] ";
+
+    private ClassLoadOrder() {}
+
+    /**
+     * @param log A file to log to.
+     * @return The option which makes the JVM log loaded classes to that file.
+     */
+    public static String logOption(Path log) {
+        return "-Xlog:class+load=info:file=" + log;
+    }
+
+    /**
+     * @param log A log written with {@link #logOption(Path)}.
+     * @return Binary names of the classes loaded, in the order they were first loaded.
+     */
+    public static List<String> parse(Path log) throws IOException {
+        var classNames = new LinkedHashSet<String>();
+        for (var line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            var className = className(line);
+            if (className != null) {
+                classNames.add(className);
+            }
+        }
+        return List.copyOf(classNames);
+    }
+
+    /**
+     * @return The class a {@code class+load} log line is about, or {@code null}
+     * if it is not about loading a class from a class file.
+     */
+    static String className(String line) {
+        var start = line.indexOf(TAGS);
+        if (start == -1) {
+            return null;
+        }
+        start += TAGS.length();
+        var end = line.indexOf(' ', start);
+        var className = end == -1 ? line.substring(start) : line.substring(start, end);
+        // Hidden classes, like lambdas, are named after their host class with a suffix
+        if (className.isEmpty() || className.indexOf('/') != -1) {
+            return null;
+        }
+        return className;
+    }
+
+    /**
+     * Runs a program to see what classes it loads.
+     *
+     * @param javaCommand The command to run, starting with the {@code java} launcher.
+     * @return Binary names of the classes loaded, in the order they were first loaded.
+     * @throws ExitStatusException If the program fails.
+     */
+    public static List<String> record(List<String> javaCommand)
+            throws IOException, InterruptedException, ExitStatusException {
+        var log = Files.createTempFile("class-load", ".log");
+        try {
+            var command = new ArrayList<String>(javaCommand.size() + 1);
+            command.add(javaCommand.get(0));
+            command.add(logOption(log));
+            command.addAll(javaCommand.subList(1, javaCommand.size()));
+            var process = new ProcessBuilder(command)
+                    .inheritIO()
+                    .start();
+            ExitStatusException.throwOnFailure(process.waitFor());
+            return parse(log);
+        } finally {
+            Files.deleteIfExists(log);
+        }
+    }
+}
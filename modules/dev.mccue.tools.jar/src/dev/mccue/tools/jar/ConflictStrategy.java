@@ -0,0 +1,99 @@
+package dev.mccue.tools.jar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * What {@link JarMerger} does when more than one jar has an entry with the same name.
+ */
+public sealed interface ConflictStrategy {
+    /**
+     * Keeps the entry from the first jar that has it, copied without being recompressed.
+     */
+    record FirstWins() implements ConflictStrategy {
+    }
+
+    /**
+     * Fails the merge.
+     */
+    record Fail() implements ConflictStrategy {
+    }
+
+    /**
+     * Replaces the entries with the result of combining their contents.
+     */
+    record Merge(Merger merger) implements ConflictStrategy {
+        public Merge {
+            Objects.requireNonNull(merger, "merger");
+        }
+    }
+
+    @FunctionalInterface
+    interface Merger {
+        /**
+         * @param name The name of the entry.
+         * @param contents The contents of each conflicting entry, in the order the jars were added.
+         * @return The contents of the merged entry.
+         */
+        byte[] merge(String name, List<byte[]> contents) throws IOException;
+    }
+
+    static ConflictStrategy firstWins() {
+        return new FirstWins();
+    }
+
+    static ConflictStrategy fail() {
+        return new Fail();
+    }
+
+    static ConflictStrategy merge(Merger merger) {
+        return new Merge(merger);
+    }
+
+    /**
+     * Joins the contents one after the other, separated by a newline where one
+     * does not already end with one.
+     */
+    static ConflictStrategy concatenate() {
+        return new Merge((name, contents) -> {
+            var out = new ByteArrayOutputStream();
+            var endsWithNewline = true;
+            for (var content : contents) {
+                if (out.size() > 0 && content.length > 0 && !endsWithNewline) {
+                    out.write('\n');
+                }
+                out.write(content);
+                if (content.length > 0) {
+                    endsWithNewline = content[content.length - 1] == '\n';
+                }
+            }
+            return out.toByteArray();
+        });
+    }
+
+    /**
+     * Merges {@code META-INF/services} files into one listing every provider once,
+     * in the order they first appear, without comments.
+     */
+    static ConflictStrategy mergeServices() {
+        return new Merge((name, contents) -> {
+            var providers = new LinkedHashSet<String>();
+            for (var content : contents) {
+                new String(content, StandardCharsets.UTF_8).lines().forEach(line -> {
+                    var comment = line.indexOf('#');
+                    var provider = (comment == -1 ? line : line.substring(0, comment)).strip();
+                    if (!provider.isEmpty()) {
+                        providers.add(provider);
+                    }
+                });
+            }
+            var merged = new StringBuilder();
+            providers.forEach(provider -> merged.append(provider).append('\n'));
+            return merged.toString().getBytes(StandardCharsets.UTF_8);
+        });
+    }
+}
@@ -2,14 +2,28 @@ package dev.mccue.tools.jar;
 
 import dev.mccue.tools.AbstractToolRunner;
 import dev.mccue.tools.ExitStatusException;
+import dev.mccue.tools.Reproducibility;
 import dev.mccue.tools.Tool;
+import dev.mccue.tools.ToolResult;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.spi.ToolProvider;
 
 public final class Jar extends AbstractToolRunner<Jar, JarArguments> {
+    private boolean normalize;
+
     private Jar(Tool tool, JarArguments arguments) {
         super(tool, arguments);
+        this.normalize = false;
     }
 
     private Jar() {
@@ -17,6 +31,136 @@ public final class Jar extends AbstractToolRunner<Jar, JarArguments> {
                 Tool.ofToolProvider("jar"),
                 new JarArguments()
         );
+        this.normalize = false;
+    }
+
+    /**
+     * Makes the jar depend only on its inputs, so rebuilding it gives the same bytes.
+     *
+     * <p>Unless given, {@code --date} is set to {@link Reproducibility#DEFAULT_DATE}.
+     * After the jar is created or updated, it is rewritten by {@link ArchiveNormalizer}
+     * with its entries sorted and permissions made uniform.
+     *
+     * <p>The arguments can be separate options, like {@code --create --file app.jar},
+     * or start with a cluster of single letter ones, like {@code -cf app.jar} or
+     * {@code cf app.jar}. jar takes no other options after a cluster, so then
+     * {@code --date} isn't added, and the date comes from normalizing alone. Running
+     * fails with an {@link IllegalArgumentException} if the arguments don't say
+     * whether a jar is being written.
+     */
+    public Jar normalize() {
+        this.normalize = true;
+        return this;
+    }
+
+    @Override
+    protected void beforeRun() {
+        if (!normalize) {
+            return;
+        }
+        var operation = operation();
+        if (operation.writing() == null) {
+            throw new IllegalArgumentException(
+                    "Can't tell whether jar will create or update a jar, so can't normalize it: " + arguments
+            );
+        }
+        if (operation.writing() && !operation.clustered() && !arguments.has("--date")) {
+            // Options have to come before the files
+            arguments.addAll(0, List.of("--date", Reproducibility.DEFAULT_DATE.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)));
+        }
+    }
+
+    @Override
+    protected void afterRun(ToolResult result) {
+        if (!normalize) {
+            return;
+        }
+        var operation = operation();
+        var file = Optional.ofNullable(operation.file());
+        if (Boolean.TRUE.equals(operation.writing()) && file.isPresent() && Files.isRegularFile(Path.of(file.get()))) {
+            var date = arguments.valueOf("--date")
+                    .map(value -> ZonedDateTime.parse(value, DateTimeFormatter.ISO_ZONED_DATE_TIME))
+                    .orElse(Reproducibility.DEFAULT_DATE);
+            try {
+                ArchiveNormalizer.normalize(Path.of(file.get()), date);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @param writing Whether a jar is created or updated, or {@code null} if the
+     *                arguments don't say what jar is to do.
+     * @param file The jar, if given.
+     * @param clustered Whether the options start with a cluster, like {@code -cf}.
+     */
+    private record Operation(Boolean writing, String file, boolean clustered) {
+    }
+
+    /**
+     * Reads the arguments the way jar does. A first argument like {@code -cf} or
+     * {@code cf} is a cluster of single letter options, where each of {@code f},
+     * {@code m} and {@code e} takes the next argument after the cluster in turn.
+     */
+    private Operation operation() {
+        var first = arguments.isEmpty() ? "" : arguments.get(0);
+        if (!first.isEmpty() && !first.startsWith("--") && !(first.startsWith("-") && first.length() == 2)) {
+            Boolean writing = null;
+            String file = null;
+            int next = 1;
+            for (var letter : (first.startsWith("-") ? first.substring(1) : first).toCharArray()) {
+                switch (letter) {
+                    case 'c', 'u' -> writing = true;
+                    case 't', 'x', 'i' -> writing = false;
+                    case 'f' -> file = next < arguments.size() ? arguments.get(next++) : null;
+                    case 'm', 'e' -> next++;
+                    default -> {
+                    }
+                }
+            }
+            return new Operation(writing, file, true);
+        }
+
+        Boolean writing = null;
+        if (arguments.has("-c", "--create", "-u", "--update")) {
+            writing = true;
+        }
+        else if (arguments.has(
+                "-t", "--list",
+                "-x", "--extract",
+                "-d", "--describe-module",
+                "-i", "--generate-index",
+                "--validate",
+                "-h", "--help", "--help-extra", "-?",
+                "--version"
+        )) {
+            writing = false;
+        }
+        return new Operation(writing, arguments.valueOf("-f", "--file").orElse(null), false);
+    }
+
+    /**
+     * A {@code jar} which compresses entries in parallel on the common fork-join pool.
+     * It only supports creating and updating jars, with the options {@link JarWriter}
+     * understands, and extracting them in parallel with a {@link ZipExtractor}.
+     *
+     * <pre>{@code
+     * Jar.run(Jar.parallelTool(), arguments -> arguments
+     *         .__create()
+     *         .__file("build/app.jar")
+     *         ._C("build/classes", "."));
+     * }</pre>
+     */
+    public static Tool parallelTool() {
+        return parallelTool(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * A {@code jar} which compresses and extracts entries in parallel on the given pool.
+     */
+    public static Tool parallelTool(ForkJoinPool pool) {
+        return Tool.ofToolProvider(new JarWriterToolProvider(pool));
     }
 
     public static Jar runner() {
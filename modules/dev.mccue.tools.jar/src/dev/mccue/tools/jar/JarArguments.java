@@ -170,6 +170,14 @@ public final class JarArguments extends ToolArguments {
         return this;
     }
 
+    //      --dir DIR              Directory into which the jar will be extracted
+
+    public JarArguments __dir(Object dir) {
+        add("--dir");
+        add(toArgumentString(dir));
+        return this;
+    }
+
     //  -f, --file=FILE            The archive file name. When omitted, either stdin or
     //                             stdout is used based on the operation
 
@@ -231,7 +239,7 @@ public final class JarArguments extends ToolArguments {
     }
 
     public JarArguments __manifest(Object file) {
-        add("--mainifest");
+        add("--manifest");
         add(toArgumentString(file));
         return this;
     }
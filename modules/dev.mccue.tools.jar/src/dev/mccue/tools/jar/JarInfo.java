@@ -0,0 +1,408 @@
+package dev.mccue.tools.jar;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.FindException;
+import java.lang.module.InvalidModuleDescriptorException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+
+/**
+ * What a jar contains, read straight from its central directory.
+ *
+ * <p>This answers the same questions as {@code jar --list} and
+ * {@code jar --describe-module} without running the jar tool or parsing its
+ * output. The archive is memory-mapped and only the manifest and
+ * {@code module-info.class} are ever inflated.
+ *
+ * <pre>{@code
+ * for (var jar : JarInfo.scan(Path.of("libs"))) {
+ *     jar.moduleDescriptor().ifPresent(descriptor ->
+ *             System.out.println(descriptor.toNameAndVersion()));
+ * }
+ * }</pre>
+ *
+ * @param path The jar.
+ * @param entries Every entry, in the order of the central directory.
+ * @param manifest The manifest, if there is one.
+ * @param moduleDescriptor The module descriptor, either explicit or the one
+ *                         derived for the jar as an automatic module. Empty if
+ *                         neither is possible.
+ */
+public record JarInfo(
+        Path path,
+        List<Entry> entries,
+        Optional<Manifest> manifest,
+        Optional<ModuleDescriptor> moduleDescriptor
+) {
+    private static final String VERSIONS = "META-INF/versions/";
+    private static final String SERVICES = "META-INF/services/";
+
+    // The rules ModuleFinder uses to derive an automatic module's name from a file name
+    private static final Pattern DASH_VERSION = Pattern.compile("-(\\d+(\\.|$))");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^A-Za-z0-9]");
+    private static final Pattern REPEATING_DOTS = Pattern.compile("(\\.)(\\1)+");
+    private static final Pattern LEADING_DOTS = Pattern.compile("^\\.");
+    private static final Pattern TRAILING_DOTS = Pattern.compile("\\.$");
+
+    /**
+     * @param name The entry's name.
+     * @param size Its uncompressed size.
+     * @param compressedSize Its size as stored.
+     * @param crc The CRC-32 of its contents.
+     * @param compressed Whether it is deflated rather than stored.
+     * @param lastModified Its modification time, as recorded in the archive.
+     */
+    public record Entry(
+            String name,
+            long size,
+            long compressedSize,
+            long crc,
+            boolean compressed,
+            LocalDateTime lastModified
+    ) {
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    public JarInfo {
+        entries = List.copyOf(entries);
+    }
+
+    /**
+     * @param jar The jar to read.
+     * @return What it contains.
+     */
+    public static JarInfo read(Path jar) throws IOException {
+        try (var archive = ZipArchiveReader.open(jar, true)) {
+            var entries = new ArrayList<Entry>(archive.entries().size());
+            for (var entry : archive.entries()) {
+                entries.add(new Entry(
+                        entry.name(),
+                        entry.size(),
+                        entry.compressedSize(),
+                        entry.crc(),
+                        entry.method() != ZipArchiveWriter.STORED,
+                        ZipArchiveReader.localDateTime(entry.dosTime())
+                ));
+            }
+
+            Manifest manifest = null;
+            var manifestEntry = archive.entry(JarFile.MANIFEST_NAME);
+            if (manifestEntry != null) {
+                manifest = new Manifest(new ByteArrayInputStream(archive.contents(manifestEntry)));
+            }
+
+            ModuleDescriptor descriptor;
+            var moduleInfo = moduleInfo(archive, manifest);
+            if (moduleInfo != null) {
+                var multiRelease = multiRelease(manifest);
+                var packages = new HashSet<String>();
+                for (var entry : archive.entries()) {
+                    var packageName = ModuleInfos.packageOf(versionless(entry.name(), multiRelease));
+                    if (packageName != null) {
+                        packages.add(packageName);
+                    }
+                }
+                try {
+                    descriptor = ModuleDescriptor.read(ByteBuffer.wrap(archive.contents(moduleInfo)), () -> packages);
+                } catch (InvalidModuleDescriptorException e) {
+                    throw new IOException("Invalid module-info.class in " + jar + ": " + e.getMessage(), e);
+                }
+            }
+            else {
+                descriptor = automaticModule(jar, archive, manifest);
+            }
+
+            return new JarInfo(jar, entries, Optional.ofNullable(manifest), Optional.ofNullable(descriptor));
+        }
+    }
+
+    /**
+     * Reads every jar under a directory, in parallel.
+     *
+     * @param directory The directory to search, including its subdirectories.
+     * @return What each jar contains, sorted by path.
+     */
+    public static List<JarInfo> scan(Path directory) throws IOException {
+        List<Path> jars;
+        try (var paths = Files.walk(directory)) {
+            jars = paths.filter(path -> path.getFileName().toString().endsWith(".jar") && Files.isRegularFile(path))
+                    .sorted()
+                    .toList();
+        }
+
+        try {
+            return jars.parallelStream()
+                    .map(jar -> {
+                        try {
+                            return read(jar);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .sorted(Comparator.comparing(JarInfo::path))
+                    .toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return The entry with the given name, if there is one.
+     */
+    public Optional<Entry> entry(String name) {
+        for (var entry : entries) {
+            if (entry.name.equals(name)) {
+                return Optional.of(entry);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return Whether the manifest marks this as a multi-release jar.
+     */
+    public boolean isMultiRelease() {
+        return multiRelease(manifest.orElse(null));
+    }
+
+    /**
+     * Checks for problems which the jar tool would either refuse to create or which
+     * would only show up at run time: duplicate or unsafe entry names, packages
+     * missing from the module descriptor, a missing main class, and versioned entries
+     * in a jar which is not multi-release.
+     *
+     * @return A description of each problem found. Empty if there are none.
+     */
+    public List<String> validate() {
+        var problems = new ArrayList<String>();
+
+        var names = new HashSet<String>();
+        var classPackages = new TreeSet<String>();
+        var versioned = false;
+        for (var entry : entries) {
+            if (!names.add(entry.name)) {
+                problems.add("duplicate entry: " + entry.name);
+            }
+            if (entry.name.startsWith("/") || entry.name.contains("\\")
+                    || ("/" + entry.name + "/").contains("/../")) {
+                problems.add("unsafe entry name: " + entry.name);
+            }
+            if (entry.name.startsWith(VERSIONS) && !entry.isDirectory()) {
+                versioned = true;
+                var rest = entry.name.substring(VERSIONS.length());
+                var slash = rest.indexOf('/');
+                if (slash == -1 || !rest.substring(0, slash).matches("[1-9][0-9]*")) {
+                    problems.add("entry in an invalid versioned directory: " + entry.name);
+                }
+            }
+            if (entry.name.endsWith(".class") && !entry.name.endsWith("module-info.class")) {
+                var packageName = ModuleInfos.packageOf(entry.name);
+                if (packageName != null) {
+                    classPackages.add(packageName);
+                }
+            }
+        }
+
+        if (versioned && !isMultiRelease()) {
+            problems.add("versioned entries present, but the manifest does not set Multi-Release: true");
+        }
+
+        manifest.map(m -> m.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS))
+                .filter(mainClass -> !names.contains(mainClass.replace('.', '/') + ".class"))
+                .ifPresent(mainClass -> problems.add("Main-Class " + mainClass + " is not in the jar"));
+
+        moduleDescriptor.filter(descriptor -> !descriptor.isAutomatic()).ifPresent(descriptor -> {
+            for (var packageName : classPackages) {
+                if (!descriptor.packages().contains(packageName)) {
+                    problems.add("package " + packageName + " is not in the module descriptor of " + descriptor.name());
+                }
+            }
+            descriptor.mainClass()
+                    .filter(mainClass -> !names.contains(mainClass.replace('.', '/') + ".class"))
+                    .ifPresent(mainClass -> problems.add("module main class " + mainClass + " is not in the jar"));
+        });
+
+        return problems;
+    }
+
+    /**
+     * @return The {@code module-info.class} the running JVM would use, or {@code null}.
+     */
+    private static ZipArchiveReader.Entry moduleInfo(ZipArchiveReader archive, Manifest manifest) {
+        if (multiRelease(manifest)) {
+            for (int version = Runtime.version().feature(); version >= 9; version--) {
+                var versioned = archive.entry(VERSIONS + version + "/module-info.class");
+                if (versioned != null) {
+                    return versioned;
+                }
+            }
+        }
+        return archive.entry("module-info.class");
+    }
+
+    private static boolean multiRelease(Manifest manifest) {
+        return manifest != null
+                && "true".equalsIgnoreCase(manifest.getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE));
+    }
+
+    /**
+     * @return The name an entry has for the running JVM: without its
+     * {@code META-INF/versions/<release>/} prefix if it is versioned for this release
+     * or an earlier one, or as it is otherwise.
+     */
+    private static String versionless(String name, boolean multiRelease) {
+        if (!multiRelease || !name.startsWith(VERSIONS)) {
+            return name;
+        }
+        var slash = name.indexOf('/', VERSIONS.length());
+        if (slash == -1) {
+            return name;
+        }
+        try {
+            var release = Integer.parseInt(name.substring(VERSIONS.length(), slash));
+            return release >= 9 && release <= Runtime.version().feature() ? name.substring(slash + 1) : name;
+        } catch (NumberFormatException e) {
+            return name;
+        }
+    }
+
+    /**
+     * Derives the descriptor of an automatic module the same way {@link ModuleFinder} does,
+     * but from the already read central directory. Jars which do not follow the rules
+     * a descriptor is checked against are left to {@link ModuleFinder} itself, which is
+     * more lenient.
+     *
+     * @return The descriptor, or {@code null} if the jar cannot be an automatic module.
+     */
+    private static ModuleDescriptor automaticModule(Path jar, ZipArchiveReader archive, Manifest manifest)
+            throws IOException {
+        try {
+            var descriptor = deriveAutomaticModule(jar, archive, manifest);
+            if (descriptor != null) {
+                return descriptor;
+            }
+        } catch (IllegalArgumentException e) {
+            // Fall through to ModuleFinder
+        }
+
+        try {
+            return ModuleFinder.of(jar)
+                    .findAll()
+                    .stream()
+                    .findFirst()
+                    .map(ModuleReference::descriptor)
+                    .orElse(null);
+        } catch (FindException e) {
+            return null;
+        }
+    }
+
+    private static ModuleDescriptor deriveAutomaticModule(Path jar, ZipArchiveReader archive, Manifest manifest)
+            throws IOException {
+        var attributes = manifest == null ? new Attributes() : manifest.getMainAttributes();
+
+        var name = jar.getFileName().toString();
+        name = name.substring(0, name.length() - ".jar".length());
+        String version = null;
+        var matcher = DASH_VERSION.matcher(name);
+        if (matcher.find()) {
+            version = name.substring(matcher.start() + 1);
+            name = name.substring(0, matcher.start());
+        }
+        var automaticModuleName = attributes.getValue("Automatic-Module-Name");
+        if (automaticModuleName != null) {
+            name = automaticModuleName;
+        }
+        else {
+            name = NON_ALPHANUMERIC.matcher(name).replaceAll(".");
+            name = REPEATING_DOTS.matcher(name).replaceAll(".");
+            name = LEADING_DOTS.matcher(name).replaceAll("");
+            name = TRAILING_DOTS.matcher(name).replaceAll("");
+        }
+
+        var builder = ModuleDescriptor.newAutomaticModule(name);
+        if (version != null) {
+            try {
+                builder.version(version);
+            } catch (IllegalArgumentException e) {
+                // Ignored, as it is by ModuleFinder
+            }
+        }
+
+        // Only packages with classes in them count, and every class must be in a valid package
+        var multiRelease = multiRelease(manifest);
+        var packages = new HashSet<String>();
+        for (var entry : archive.entries()) {
+            var entryName = versionless(entry.name(), multiRelease);
+            if (entryName.endsWith(".class") && !entryName.startsWith("META-INF/")) {
+                var packageName = ModuleInfos.packageOf(entryName);
+                if (packageName == null) {
+                    return null;
+                }
+                packages.add(packageName);
+            }
+        }
+        builder.packages(packages);
+
+        for (var entry : archive.entries()) {
+            if (!entry.name().startsWith(SERVICES) || entry.isDirectory()) {
+                continue;
+            }
+            var service = entry.name().substring(SERVICES.length());
+            if (service.contains("/") || !ModuleInfos.isQualifiedName(service)) {
+                continue;
+            }
+            var providers = new ArrayList<String>();
+            var lines = new String(archive.contents(entry), StandardCharsets.UTF_8).lines().toList();
+            for (var line : lines) {
+                var comment = line.indexOf('#');
+                var provider = (comment == -1 ? line : line.substring(0, comment)).strip();
+                if (provider.isEmpty()) {
+                    continue;
+                }
+                var lastDot = provider.lastIndexOf('.');
+                if (!ModuleInfos.isQualifiedName(provider) || lastDot == -1 || !packages.contains(provider.substring(0, lastDot))) {
+                    return null;
+                }
+                if (!providers.contains(provider)) {
+                    providers.add(provider);
+                }
+            }
+            if (!providers.isEmpty()) {
+                builder.provides(service, providers);
+            }
+        }
+
+        var mainClass = attributes.getValue(Attributes.Name.MAIN_CLASS);
+        if (mainClass != null) {
+            mainClass = mainClass.replace('/', '.');
+            var lastDot = mainClass.lastIndexOf('.');
+            if (ModuleInfos.isQualifiedName(mainClass) && lastDot != -1 && packages.contains(mainClass.substring(0, lastDot))) {
+                builder.mainClass(mainClass);
+            }
+        }
+
+        return builder.build();
+    }
+
+}
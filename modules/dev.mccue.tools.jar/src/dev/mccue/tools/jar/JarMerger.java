@@ -0,0 +1,326 @@
+package dev.mccue.tools.jar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * Merges jars into one, as for an uber jar.
+ *
+ * <p>Entries are copied exactly as they are compressed in the source jars, so
+ * merging costs little more than copying the bytes. Only entries which are
+ * merged from several jars are inflated and compressed again.
+ *
+ * <p>When jars share an entry name, the first matching {@linkplain #onConflict rule}
+ * decides what happens. {@code META-INF/services} files are always merged unless a
+ * rule says otherwise. Everything else falls back to the
+ * {@linkplain #defaultConflictStrategy default strategy}, which keeps the first.
+ * The main attributes of the manifest, like {@code Main-Class} and {@code Class-Path},
+ * come from the first jar only, since those of the others describe jars which no
+ * longer exist. The per-entry sections of every manifest are merged, with earlier
+ * jars winning each attribute. Signature files and {@code INDEX.LIST} are left out,
+ * since they would no longer be valid.
+ *
+ * <pre>{@code
+ * JarMerger.of(Path.of("build", "app-all.jar"))
+ *         .add(Path.of("build", "app.jar"))
+ *         .addAll(dependencies)
+ *         .exclude(name -> name.endsWith("module-info.class"))
+ *         .onConflict(name -> name.equals("META-INF/LICENSE"), ConflictStrategy.concatenate())
+ *         .mainClass("com.example.Main")
+ *         .merge();
+ * }</pre>
+ */
+public final class JarMerger {
+    private static final String SERVICES = "META-INF/services/";
+
+    private record Rule(Predicate<String> names, ConflictStrategy strategy) {
+    }
+
+    private record Source(ZipArchiveReader archive, ZipArchiveReader.Entry entry) {
+    }
+
+    private final Path file;
+    private final List<Path> jars;
+    private final List<Rule> rules;
+    private final List<Predicate<String>> exclusions;
+    private ConflictStrategy defaultStrategy;
+    private Manifest manifest;
+    private String mainClass;
+    private LocalDateTime date;
+
+    private JarMerger(Path file) {
+        this.file = file;
+        this.jars = new ArrayList<>();
+        this.rules = new ArrayList<>();
+        this.exclusions = new ArrayList<>();
+        this.defaultStrategy = ConflictStrategy.firstWins();
+        this.manifest = null;
+        this.mainClass = null;
+        this.date = null;
+    }
+
+    /**
+     * @param file The jar to write. Missing parent directories are created.
+     * @return A merger writing that jar.
+     */
+    public static JarMerger of(Path file) {
+        return new JarMerger(Objects.requireNonNull(file, "file"));
+    }
+
+    public JarMerger add(Path jar) {
+        jars.add(Objects.requireNonNull(jar, "jar"));
+        return this;
+    }
+
+    public JarMerger addAll(List<Path> jars) {
+        jars.forEach(this::add);
+        return this;
+    }
+
+    /**
+     * Decides conflicts between entries whose names match, ahead of any rule added later.
+     */
+    public JarMerger onConflict(Predicate<String> names, ConflictStrategy strategy) {
+        rules.add(new Rule(Objects.requireNonNull(names, "names"), Objects.requireNonNull(strategy, "strategy")));
+        return this;
+    }
+
+    /**
+     * Decides conflicts no rule matches. Defaults to {@link ConflictStrategy#firstWins()}.
+     */
+    public JarMerger defaultConflictStrategy(ConflictStrategy strategy) {
+        this.defaultStrategy = Objects.requireNonNull(strategy, "strategy");
+        return this;
+    }
+
+    /**
+     * Leaves out every entry whose name matches.
+     */
+    public JarMerger exclude(Predicate<String> names) {
+        exclusions.add(Objects.requireNonNull(names, "names"));
+        return this;
+    }
+
+    /**
+     * Sets the main class in the merged manifest.
+     */
+    public JarMerger mainClass(String mainClass) {
+        this.mainClass = mainClass;
+        return this;
+    }
+
+    /**
+     * Attributes from this manifest take precedence over those from any of the jars.
+     */
+    public JarMerger manifest(Manifest manifest) {
+        this.manifest = new Manifest(manifest);
+        return this;
+    }
+
+    /**
+     * Dates every entry, as {@code jar --date} does. Otherwise entries keep the
+     * times they had and merged entries are dated {@code 1980-01-01T00:00:02}.
+     */
+    public JarMerger date(String timestamp) {
+        return date(ZonedDateTime.parse(timestamp, DateTimeFormatter.ISO_ZONED_DATE_TIME));
+    }
+
+    public JarMerger date(ZonedDateTime timestamp) {
+        this.date = JarWriter.entryTime(timestamp);
+        return this;
+    }
+
+    /**
+     * Writes the merged jar.
+     */
+    public void merge() throws IOException {
+        var archives = new ArrayList<ZipArchiveReader>(jars.size());
+        try {
+            for (var jar : jars) {
+                archives.add(ZipArchiveReader.open(jar, true));
+            }
+
+            // Every entry by name, with the jars that have it in the order they were added
+            var entries = new TreeMap<String, List<Source>>();
+            var manifests = new ArrayList<Manifest>();
+            Manifest primary = null;
+            for (var archive : archives) {
+                for (var entry : archive.entries()) {
+                    var name = entry.name();
+                    if (name.equals(JarFile.MANIFEST_NAME)) {
+                        var jarManifest = new Manifest(new ByteArrayInputStream(archive.contents(entry)));
+                        manifests.add(jarManifest);
+                        if (archive == archives.get(0)) {
+                            primary = jarManifest;
+                        }
+                    }
+                    else if (name.equals("META-INF/") || isExcluded(name)) {
+                        continue;
+                    }
+                    else {
+                        var sources = entries.computeIfAbsent(name, __ -> new ArrayList<>(1));
+                        if (sources.isEmpty() || !sources.get(sources.size() - 1).archive.equals(archive)) {
+                            sources.add(new Source(archive, entry));
+                        }
+                    }
+                }
+            }
+
+            var manifestBytes = new ByteArrayOutputStream();
+            mergeManifests(primary, manifests, entries).write(manifestBytes);
+
+            ZipArchiveWriter.replace(file, out -> {
+                writeGenerated(out, "META-INF/", new byte[0], JarWriter.JAR_MAGIC);
+                writeGenerated(out, JarFile.MANIFEST_NAME, manifestBytes.toByteArray(), new byte[0]);
+                for (var entry : entries.entrySet()) {
+                    write(out, entry.getKey(), entry.getValue());
+                }
+            });
+        } finally {
+            for (var archive : archives) {
+                archive.close();
+            }
+        }
+    }
+
+    private boolean isExcluded(String name) {
+        if (name.startsWith("META-INF/") && name.indexOf('/', "META-INF/".length()) == -1) {
+            var upper = name.toUpperCase(Locale.ROOT);
+            if (upper.endsWith(".SF") || upper.endsWith(".RSA") || upper.endsWith(".DSA")
+                    || upper.endsWith(".EC") || upper.startsWith("META-INF/SIG-")
+                    || upper.equals("META-INF/INDEX.LIST")) {
+                return true;
+            }
+        }
+        for (var exclusion : exclusions) {
+            if (exclusion.test(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ConflictStrategy strategyFor(String name) {
+        for (var rule : rules) {
+            if (rule.names.test(name)) {
+                return rule.strategy;
+            }
+        }
+        if (name.startsWith(SERVICES) && name.indexOf('/', SERVICES.length()) == -1) {
+            return ConflictStrategy.mergeServices();
+        }
+        return defaultStrategy;
+    }
+
+    private void write(ZipArchiveWriter out, String name, List<Source> sources) throws IOException {
+        var first = sources.get(0);
+        if (sources.size() == 1 || first.entry.isDirectory()) {
+            copy(out, first);
+            return;
+        }
+
+        switch (strategyFor(name)) {
+            case ConflictStrategy.FirstWins firstWins -> copy(out, first);
+            case ConflictStrategy.Fail fail -> {
+                var paths = new ArrayList<String>();
+                for (var source : sources) {
+                    paths.add(source.archive.path().toString());
+                }
+                throw new ZipException("duplicate entry: " + name + " in " + String.join(", ", paths));
+            }
+            case ConflictStrategy.Merge(ConflictStrategy.Merger merger) -> {
+                var contents = new ArrayList<byte[]>(sources.size());
+                for (var source : sources) {
+                    contents.add(source.archive.contents(source.entry));
+                }
+                writeGenerated(out, name, merger.merge(name, contents), new byte[0]);
+            }
+        }
+    }
+
+    private void copy(ZipArchiveWriter out, Source source) throws IOException {
+        var dosTime = date != null ? ZipArchiveWriter.dosTime(date) : source.entry.dosTime();
+        out.write(source.entry.toWritable(dosTime), source.archive.rawData(source.entry));
+    }
+
+    private void writeGenerated(ZipArchiveWriter out, String name, byte[] contents, byte[] extra) throws IOException {
+        var crc = new CRC32();
+        crc.update(contents);
+        var dosTime = ZipArchiveWriter.dosTime(date != null ? date : JarWriter.MINIMUM_DATE);
+        if (name.endsWith("/")) {
+            out.write(
+                    new ZipArchiveWriter.Entry(name, ZipArchiveWriter.STORED, crc.getValue(), 0, 0, dosTime, extra, 0, 0),
+                    ByteBuffer.wrap(contents)
+            );
+        }
+        else {
+            var deflated = ZipArchiveWriter.deflate(contents);
+            out.write(
+                    new ZipArchiveWriter.Entry(name, ZipArchiveWriter.DEFLATED, crc.getValue(), deflated.length, contents.length, dosTime, extra, 0, 0),
+                    ByteBuffer.wrap(deflated)
+            );
+        }
+    }
+
+    /**
+     * @param primary The manifest of the first jar, if it has one.
+     */
+    private Manifest mergeManifests(Manifest primary, List<Manifest> manifests, Map<String, List<Source>> entries) {
+        var merged = new Manifest();
+        var main = merged.getMainAttributes();
+        if (primary != null) {
+            main.putAll(primary.getMainAttributes());
+        }
+        var sections = new LinkedHashMap<String, Attributes>();
+        for (var jarManifest : manifests) {
+            jarManifest.getEntries().forEach((name, attributes) -> {
+                var section = sections.computeIfAbsent(name, __ -> new Attributes());
+                attributes.forEach((key, value) -> {
+                    // Digests belong to signatures, which are dropped
+                    if (!key.toString().endsWith("-Digest")) {
+                        section.putIfAbsent(key, value);
+                    }
+                });
+            });
+        }
+        sections.forEach((name, attributes) -> {
+            if (!attributes.isEmpty()) {
+                merged.getEntries().put(name, attributes);
+            }
+        });
+
+        if (manifest != null) {
+            main.putAll(manifest.getMainAttributes());
+            manifest.getEntries().forEach((name, attributes) ->
+                    merged.getEntries().computeIfAbsent(name, __ -> new Attributes()).putAll(attributes));
+        }
+
+        main.putIfAbsent(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (mainClass != null) {
+            main.put(Attributes.Name.MAIN_CLASS, mainClass);
+        }
+        if (entries.keySet().stream().anyMatch(name -> name.startsWith("META-INF/versions/"))) {
+            main.put(Attributes.Name.MULTI_RELEASE, "true");
+        }
+        return merged;
+    }
+}
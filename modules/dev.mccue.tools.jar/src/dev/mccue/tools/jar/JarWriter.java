@@ -0,0 +1,534 @@
+package dev.mccue.tools.jar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a jar directly, without going through the jar tool.
+ *
+ * <p>Entries can come from memory - for instance the output of
+ * {@code dev.mccue.tools.javac.InMemoryJavac} - or from directories, the same
+ * as {@code jar --create -C dir .}. The manifest, {@code --main-class},
+ * {@code --module-version}, {@code --no-compress} and {@code --date} options
+ * behave as they do for the jar tool, including recording the module's packages,
+ * main class and version in {@code module-info.class}.
+ *
+ * <p>Entries are written sorted by name, with the manifest first. They are
+ * compressed in parallel on a {@link ForkJoinPool} but always written in the
+ * same order, so the same inputs give a byte-identical jar. Without a
+ * {@code --date}, files from disk keep their modification times and every
+ * other entry is dated {@code 1980-01-01T00:00:02}.
+ *
+ * <p>When {@linkplain #reuse(Path) rebuilding} or {@linkplain #update(boolean) updating}
+ * a jar, the compressed data of entries with the same name, compression method,
+ * size and CRC-32 is copied straight from the old jar instead of being compressed
+ * again. Nothing is inflated to compare contents, so a changed entry whose size and
+ * CRC-32 happen to be unchanged, roughly a one in 2<sup>32</sup> chance, would keep
+ * its old contents; don't reuse a jar where that matters. The jar is
+ * written to a temporary file and moved into place once complete.
+ *
+ * <p>For faster startup, classes can be {@linkplain #classLoadOrder(List) ordered}
+ * as they are loaded and {@linkplain #storeClasses(boolean) stored} uncompressed,
+ * and their {@linkplain #stripDebug(boolean) debug attributes} removed.
+ *
+ * <pre>{@code
+ * var classes = InMemoryJavac.compile(arguments);
+ * JarWriter.of(Path.of("build", "jar", "app.jar"))
+ *         .mainClass("com.example.Main")
+ *         .addAll(classes)
+ *         .write();
+ * }</pre>
+ */
+public final class JarWriter {
+    static final LocalDateTime MINIMUM_DATE = LocalDateTime.of(1980, 1, 1, 0, 0, 2);
+    static final LocalDateTime MAXIMUM_DATE = LocalDateTime.of(2099, 12, 31, 23, 59, 59);
+
+    sealed interface Content {
+        byte[] bytes() throws IOException;
+    }
+
+    record InMemory(byte[] bytes) implements Content {
+    }
+
+    record OnDisk(Path path) implements Content {
+        @Override
+        public byte[] bytes() throws IOException {
+            return Files.readAllBytes(path);
+        }
+    }
+
+    record Archived(ZipArchiveReader archive, ZipArchiveReader.Entry entry) implements Content {
+        @Override
+        public byte[] bytes() throws IOException {
+            return archive.contents(entry);
+        }
+    }
+
+    private record Compressed(ZipArchiveWriter.Entry entry, ByteBuffer data) {
+    }
+
+    // Marks the first entry as belonging to a jar, as JarOutputStream does
+    static final byte[] JAR_MAGIC = { (byte) 0xFE, (byte) 0xCA, 0, 0 };
+
+    private final Path file;
+    private final TreeMap<String, Content> entries;
+    private Manifest manifest;
+    private String mainClass;
+    private String moduleVersion;
+    private LocalDateTime date;
+    private boolean compress;
+    private ForkJoinPool pool;
+    private Path reuse;
+    private boolean update;
+    private List<String> classLoadOrder;
+    private boolean storeClasses;
+    private boolean stripDebug;
+
+    private JarWriter(Path file) {
+        this.file = file;
+        this.entries = new TreeMap<>();
+        this.manifest = null;
+        this.mainClass = null;
+        this.moduleVersion = null;
+        this.date = null;
+        this.compress = true;
+        this.pool = ForkJoinPool.commonPool();
+        this.reuse = null;
+        this.update = false;
+        this.classLoadOrder = List.of();
+        this.storeClasses = false;
+        this.stripDebug = false;
+    }
+
+    /**
+     * @param file The jar to write. Missing parent directories are created.
+     * @return A writer for that jar.
+     */
+    public static JarWriter of(Path file) {
+        return new JarWriter(Objects.requireNonNull(file, "file"));
+    }
+
+    /**
+     * Equivalent to {@code --main-class}.
+     */
+    public JarWriter mainClass(String mainClass) {
+        this.mainClass = mainClass;
+        return this;
+    }
+
+    /**
+     * Equivalent to {@code --module-version}.
+     */
+    public JarWriter moduleVersion(String moduleVersion) {
+        this.moduleVersion = moduleVersion;
+        return this;
+    }
+
+    /**
+     * Equivalent to {@code --date}.
+     *
+     * @param timestamp An ISO-8601 extended offset date-time with optional time-zone,
+     *                  like {@code 2022-02-12T12:30:00-05:00}.
+     */
+    public JarWriter date(String timestamp) {
+        return date(ZonedDateTime.parse(timestamp, DateTimeFormatter.ISO_ZONED_DATE_TIME));
+    }
+
+    /**
+     * Equivalent to {@code --date}.
+     */
+    public JarWriter date(ZonedDateTime timestamp) {
+        this.date = entryTime(timestamp);
+        return this;
+    }
+
+    /**
+     * @return The time to record in entries for a {@code --date}, which is in UTC.
+     */
+    static LocalDateTime entryTime(ZonedDateTime timestamp) {
+        var local = timestamp.withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime();
+        if (local.isBefore(MINIMUM_DATE) || local.isAfter(MAXIMUM_DATE)) {
+            throw new IllegalArgumentException(
+                    "date must be between " + MINIMUM_DATE + " and " + MAXIMUM_DATE + ": " + timestamp
+            );
+        }
+        return local;
+    }
+
+    /**
+     * Equivalent to {@code --no-compress} when {@code false}.
+     */
+    public JarWriter compress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    /**
+     * Equivalent to {@code --manifest}.
+     */
+    public JarWriter manifest(Path manifest) {
+        try (var in = Files.newInputStream(manifest)) {
+            return manifest(new Manifest(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public JarWriter manifest(Manifest manifest) {
+        this.manifest = new Manifest(manifest);
+        return this;
+    }
+
+    /**
+     * Sets the pool entries are compressed on. Defaults to {@link ForkJoinPool#commonPool()}.
+     */
+    public JarWriter pool(ForkJoinPool pool) {
+        this.pool = Objects.requireNonNull(pool, "pool");
+        return this;
+    }
+
+    /**
+     * Copies the compressed data of any entry in {@code previous} with the same name,
+     * size and CRC-32 as one being written, instead of compressing it again. This is
+     * usually the jar being rebuilt, and is ignored if it does not exist.
+     */
+    public JarWriter reuse(Path previous) {
+        this.reuse = previous;
+        return this;
+    }
+
+    /**
+     * Equivalent to {@code --update}. Entries already in the jar are kept unless
+     * an entry with the same name is added, and are copied without being recompressed.
+     * The existing manifest is the base for the new one.
+     */
+    public JarWriter update(boolean update) {
+        this.update = update;
+        return this;
+    }
+
+    /**
+     * Lays the jar out for startup: the listed classes are written first, in the
+     * order given, and stored uncompressed so the class loader can read them
+     * without inflating. Classes which are not in the jar are skipped.
+     *
+     * @param classNames Binary class names in the order they are loaded, as
+     *                   recorded by {@link ClassLoadOrder}.
+     */
+    public JarWriter classLoadOrder(List<String> classNames) {
+        var order = new ArrayList<String>(classNames.size());
+        for (var className : classNames) {
+            order.add(className.replace('.', '/') + ".class");
+        }
+        this.classLoadOrder = List.copyOf(order);
+        return this;
+    }
+
+    /**
+     * Stores every class file uncompressed, which makes the jar bigger but
+     * loading classes from it cheaper.
+     */
+    public JarWriter storeClasses(boolean storeClasses) {
+        this.storeClasses = storeClasses;
+        return this;
+    }
+
+    /**
+     * Removes source file names, line numbers and local variable names from class
+     * files, as compiling with {@code -g:none} would. Stack traces then no longer
+     * have line numbers.
+     */
+    public JarWriter stripDebug(boolean stripDebug) {
+        this.stripDebug = stripDebug;
+        return this;
+    }
+
+    /**
+     * Adds an entry, replacing any earlier entry with the same name.
+     *
+     * @param name The name of the entry, like {@code com/example/Main.class}.
+     * @param contents Its contents.
+     */
+    public JarWriter add(String name, byte[] contents) {
+        entries.put(name, new InMemory(contents));
+        return this;
+    }
+
+    /**
+     * Adds every entry in the map, replacing any earlier entries with the same names.
+     */
+    public JarWriter addAll(Map<String, byte[]> files) {
+        files.forEach(this::add);
+        return this;
+    }
+
+    /**
+     * Adds every file under a directory, named relative to it. Equivalent to {@code -C directory .}
+     */
+    public JarWriter addDirectory(Path directory) {
+        return addFiles(directory, ".", "");
+    }
+
+    /**
+     * Equivalent to {@code -C directory file}, with every entry put under {@code prefix}.
+     */
+    JarWriter addFiles(Path directory, String file, String prefix) {
+        var base = directory.toAbsolutePath().normalize();
+        var root = base.resolve(file).normalize();
+        if (!Files.exists(root)) {
+            throw new IllegalArgumentException(root + " : no such file or directory");
+        }
+        try (var paths = Files.walk(root)) {
+            paths.forEach(path -> {
+                var name = prefix + base.relativize(path).toString().replace('\\', '/');
+                if (Files.isDirectory(path)) {
+                    if (!name.isEmpty()) {
+                        entries.putIfAbsent(name.endsWith("/") ? name : name + "/", null);
+                    }
+                }
+                else {
+                    entries.put(name, new OnDisk(path));
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Writes the jar.
+     */
+    public void write() throws IOException {
+        var previousPath = reuse != null ? reuse : (update ? file : null);
+        if (update && !Files.isRegularFile(file)) {
+            throw new IOException(file + " does not exist");
+        }
+
+        ZipArchiveWriter.replace(file, out -> {
+            try (var previous = previousPath != null && Files.isRegularFile(previousPath)
+                    ? ZipArchiveReader.open(previousPath, false)
+                    : null) {
+                write(out, previous);
+            }
+        });
+    }
+
+    private void write(ZipArchiveWriter out, ZipArchiveReader previous) throws IOException {
+        var all = new TreeMap<>(entries);
+        if (update && previous != null) {
+            for (var entry : previous.entries()) {
+                all.putIfAbsent(entry.name(), entry.isDirectory() ? null : new Archived(previous, entry));
+            }
+        }
+
+        var manifestBytes = new ByteArrayOutputStream();
+        manifest(all).write(manifestBytes);
+        var ordered = new ArrayList<Map.Entry<String, Content>>();
+        ordered.add(Map.entry("META-INF/", new InMemory(new byte[0])));
+        ordered.add(Map.entry(JarFile.MANIFEST_NAME, new InMemory(manifestBytes.toByteArray())));
+        var loadedFirst = new HashSet<String>();
+        for (var name : classLoadOrder) {
+            if (all.get(name) instanceof Content content && loadedFirst.add(name)) {
+                ordered.add(Map.entry(name, content));
+            }
+        }
+        withDirectories(all).forEach((name, content) -> {
+            if (!name.equals("META-INF/") && !name.equals(JarFile.MANIFEST_NAME) && !loadedFirst.contains(name)) {
+                ordered.add(Map.entry(name, content == null ? new InMemory(new byte[0]) : content));
+            }
+        });
+
+        var packages = packages(all);
+        // Compress ahead of the writer, but only so far ahead that memory stays bounded
+        var window = Math.max(2, pool.getParallelism() * 4);
+        var pending = new ArrayDeque<ForkJoinTask<Compressed>>();
+        try {
+            for (int i = 0; i < ordered.size(); i++) {
+                var entry = ordered.get(i);
+                var extra = i == 0 ? JAR_MAGIC : new byte[0];
+                pending.add(pool.submit(() -> compress(entry.getKey(), entry.getValue(), extra, packages, loadedFirst, previous)));
+                if (pending.size() >= window) {
+                    writeNext(out, pending);
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeNext(out, pending);
+            }
+        } finally {
+            pending.forEach(task -> task.cancel(true));
+        }
+    }
+
+    private static void writeNext(ZipArchiveWriter out, ArrayDeque<ForkJoinTask<Compressed>> pending) throws IOException {
+        Compressed compressed;
+        try {
+            compressed = pending.remove().join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.write(compressed.entry, compressed.data);
+    }
+
+    private Compressed compress(
+            String name,
+            Content content,
+            byte[] extra,
+            Set<String> packages,
+            Set<String> loadedFirst,
+            ZipArchiveReader previous
+    ) {
+        try {
+            var isClass = name.endsWith(".class");
+            var method = !compress || name.endsWith("/") || (isClass && (storeClasses || loadedFirst.contains(name)))
+                    ? ZipArchiveWriter.STORED
+                    : ZipArchiveWriter.DEFLATED;
+            var isModuleInfo = name.equals("module-info.class");
+            var strip = stripDebug && isClass && !name.endsWith("module-info.class");
+
+            long dosTime;
+            if (date != null) {
+                dosTime = ZipArchiveWriter.dosTime(date);
+            }
+            else if (content instanceof OnDisk(Path path)) {
+                dosTime = ZipArchiveWriter.dosTime(
+                        LocalDateTime.ofInstant(Files.getLastModifiedTime(path).toInstant(), ZoneId.systemDefault())
+                );
+            }
+            else if (content instanceof Archived archived) {
+                dosTime = archived.entry().dosTime();
+            }
+            else {
+                dosTime = ZipArchiveWriter.dosTime(MINIMUM_DATE);
+            }
+
+            if (content instanceof Archived(ZipArchiveReader archive, ZipArchiveReader.Entry old)
+                    && old.method() == method
+                    && !isModuleInfo
+                    && !strip) {
+                return copy(archive, old, dosTime, extra);
+            }
+
+            var contents = content.bytes();
+            if (isModuleInfo) {
+                contents = ModuleInfos.patch(contents, packages, mainClass, moduleVersion);
+            }
+            else if (strip) {
+                contents = ClassFiles.stripDebug(contents);
+            }
+            var crc = new CRC32();
+            crc.update(contents);
+
+            // Trusted without inflating the old entry, see the class documentation
+            if (previous != null
+                    && previous.entry(name) instanceof ZipArchiveReader.Entry old
+                    && old.method() == method
+                    && old.size() == contents.length
+                    && old.crc() == crc.getValue()) {
+                return copy(previous, old, dosTime, extra);
+            }
+
+            if (method == ZipArchiveWriter.STORED) {
+                return new Compressed(
+                        new ZipArchiveWriter.Entry(name, method, crc.getValue(), contents.length, contents.length, dosTime, extra, 0, 0),
+                        ByteBuffer.wrap(contents)
+                );
+            }
+
+            var deflated = ZipArchiveWriter.deflate(contents);
+            return new Compressed(
+                    new ZipArchiveWriter.Entry(name, method, crc.getValue(), deflated.length, contents.length, dosTime, extra, 0, 0),
+                    ByteBuffer.wrap(deflated)
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Compressed copy(ZipArchiveReader archive, ZipArchiveReader.Entry old, long dosTime, byte[] extra)
+            throws IOException {
+        return new Compressed(
+                new ZipArchiveWriter.Entry(old.name(), old.method(), old.crc(), old.compressedSize(), old.size(), dosTime, extra, 0, 0),
+                archive.rawData(old)
+        );
+    }
+
+    Manifest manifest(Map<String, Content> entries) throws IOException {
+        Manifest result;
+        if (manifest != null) {
+            result = new Manifest(manifest);
+        }
+        else if (entries.get(JarFile.MANIFEST_NAME) instanceof Content content) {
+            try (InputStream in = new ByteArrayInputStream(content.bytes())) {
+                result = new Manifest(in);
+            }
+        }
+        else {
+            result = new Manifest();
+        }
+
+        var attributes = result.getMainAttributes();
+        attributes.putIfAbsent(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putIfAbsent(
+                new Attributes.Name("Created-By"),
+                System.getProperty("java.version") + " (" + System.getProperty("java.vendor") + ")"
+        );
+        if (mainClass != null) {
+            attributes.put(Attributes.Name.MAIN_CLASS, mainClass);
+        }
+        if (entries.keySet().stream().anyMatch(name -> name.startsWith("META-INF/versions/"))) {
+            attributes.put(Attributes.Name.MULTI_RELEASE, "true");
+        }
+        return result;
+    }
+
+    /**
+     * @return Every entry along with an entry for each directory containing one, sorted by name.
+     * Directories map to {@code null}.
+     */
+    static TreeMap<String, Content> withDirectories(Map<String, Content> entries) {
+        var all = new TreeMap<String, Content>(entries);
+        for (var name : entries.keySet()) {
+            for (int slash = name.indexOf('/'); slash != -1 && slash < name.length() - 1; slash = name.indexOf('/', slash + 1)) {
+                all.putIfAbsent(name.substring(0, slash + 1), null);
+            }
+        }
+        return all;
+    }
+
+    static HashSet<String> packages(Map<String, Content> entries) {
+        var packages = new HashSet<String>();
+        for (var name : entries.keySet()) {
+            var packageName = ModuleInfos.packageOf(name);
+            if (packageName != null) {
+                packages.add(packageName);
+            }
+        }
+        return packages;
+    }
+}
@@ -0,0 +1,180 @@
+package dev.mccue.tools.jar;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.spi.ToolProvider;
+
+/**
+ * A {@code jar} which only creates, updates and extracts archives, using a
+ * {@link JarWriter} or {@link ZipExtractor}.
+ *
+ * <p>When the archive already exists, entries which have not changed are copied
+ * from it rather than compressed again, whether creating or updating.
+ *
+ * <p>Understands {@code --create}, {@code --update}, {@code --file}, {@code -C}, {@code --release},
+ * {@code --main-class}, {@code --manifest}, {@code --module-version},
+ * {@code --no-compress} and {@code --date}, in both their short and
+ * {@code --option=value} forms. Anything else is rejected rather than ignored.
+ *
+ * <p>{@code --extract} understands {@code --file}, {@code --dir} and the names of
+ * entries or directories to extract. Unlike the jar tool, it also restores Unix
+ * permissions recorded in the archive.
+ */
+final class JarWriterToolProvider implements ToolProvider {
+    private final ForkJoinPool pool;
+
+    JarWriterToolProvider(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public String name() {
+        return "jar";
+    }
+
+    @Override
+    public int run(PrintWriter out, PrintWriter err, String... args) {
+        try {
+            var arguments = List.of(args);
+            if (arguments.contains("-x") || arguments.contains("--extract")) {
+                extract(arguments);
+            }
+            else {
+                parse(arguments).write();
+            }
+            return 0;
+        } catch (IllegalArgumentException | DateTimeException e) {
+            err.println("jar: " + e.getMessage());
+            return 1;
+        } catch (IOException e) {
+            err.println("jar: " + e);
+            return 1;
+        } catch (UncheckedIOException e) {
+            err.println("jar: " + e.getCause());
+            return 1;
+        }
+    }
+
+    private JarWriter parse(List<String> args) {
+        var create = false;
+        var update = false;
+        Path file = null;
+        var steps = new ArrayList<Consumer<JarWriter>>();
+        var prefix = "";
+
+        for (int i = 0; i < args.size(); i++) {
+            var arg = args.get(i);
+            String inlineValue = null;
+            if (arg.startsWith("--") && arg.contains("=")) {
+                inlineValue = arg.substring(arg.indexOf('=') + 1);
+                arg = arg.substring(0, arg.indexOf('='));
+            }
+
+            switch (arg) {
+                case "-c", "--create" -> create = true;
+                case "-u", "--update" -> update = true;
+                case "-f", "--file" -> file = Path.of(inlineValue != null ? inlineValue : value(args, ++i, arg));
+                case "-e", "--main-class" -> {
+                    var mainClass = inlineValue != null ? inlineValue : value(args, ++i, arg);
+                    steps.add(writer -> writer.mainClass(mainClass));
+                }
+                case "-m", "--manifest" -> {
+                    var manifest = Path.of(inlineValue != null ? inlineValue : value(args, ++i, arg));
+                    steps.add(writer -> writer.manifest(manifest));
+                }
+                case "--module-version" -> {
+                    var version = inlineValue != null ? inlineValue : value(args, ++i, arg);
+                    steps.add(writer -> writer.moduleVersion(version));
+                }
+                case "-0", "--no-compress" -> steps.add(writer -> writer.compress(false));
+                case "--date" -> {
+                    var date = inlineValue != null ? inlineValue : value(args, ++i, arg);
+                    steps.add(writer -> writer.date(date));
+                }
+                case "--release" -> {
+                    var release = inlineValue != null ? inlineValue : value(args, ++i, arg);
+                    prefix = "META-INF/versions/" + Integer.parseInt(release) + "/";
+                }
+                case "-C" -> {
+                    var directory = Path.of(value(args, ++i, arg));
+                    var included = value(args, ++i, arg);
+                    var entryPrefix = prefix;
+                    steps.add(writer -> writer.addFiles(directory, included, entryPrefix));
+                }
+                default -> {
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("unsupported option " + arg);
+                    }
+                    var included = arg;
+                    var entryPrefix = prefix;
+                    steps.add(writer -> writer.addFiles(Path.of(""), included, entryPrefix));
+                }
+            }
+        }
+
+        if (create == update) {
+            throw new IllegalArgumentException("exactly one of --create or --update is required");
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("--file is required");
+        }
+
+        var writer = JarWriter.of(file)
+                .pool(pool)
+                .reuse(file)
+                .update(update);
+        steps.forEach(step -> step.accept(writer));
+        return writer;
+    }
+
+    private void extract(List<String> args) throws IOException {
+        Path file = null;
+        var directory = Path.of("");
+        var names = new ArrayList<String>();
+
+        for (int i = 0; i < args.size(); i++) {
+            var arg = args.get(i);
+            String inlineValue = null;
+            if (arg.startsWith("--") && arg.contains("=")) {
+                inlineValue = arg.substring(arg.indexOf('=') + 1);
+                arg = arg.substring(0, arg.indexOf('='));
+            }
+
+            switch (arg) {
+                case "-x", "--extract" -> {}
+                case "-f", "--file" -> file = Path.of(inlineValue != null ? inlineValue : value(args, ++i, arg));
+                case "--dir" -> directory = Path.of(inlineValue != null ? inlineValue : value(args, ++i, arg));
+                default -> {
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("unsupported option " + arg);
+                    }
+                    names.add(arg.endsWith("/") ? arg.substring(0, arg.length() - 1) : arg);
+                }
+            }
+        }
+
+        if (file == null) {
+            throw new IllegalArgumentException("--file is required");
+        }
+
+        var extractor = ZipExtractor.of(file).pool(pool);
+        for (var name : names) {
+            extractor.include(entry -> entry.equals(name) || entry.startsWith(name + "/"));
+        }
+        extractor.extract(directory);
+    }
+
+    private static String value(List<String> args, int i, String option) {
+        if (i >= args.size()) {
+            throw new IllegalArgumentException("option " + option + " requires an argument");
+        }
+        return args.get(i);
+    }
+}
@@ -0,0 +1,173 @@
+package dev.mccue.tools.jar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Adds the attributes the jar tool adds to {@code module-info.class} when it
+ * packages a modular jar: {@code ModulePackages}, {@code ModuleMainClass}
+ * and a module version.
+ *
+ * <p>New constant pool entries are always appended rather than deduplicated
+ * against existing ones, which the class file format allows.
+ */
+final class ModuleInfos {
+    private static final Set<String> KEYWORDS = Set.of(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super",
+            "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while",
+            "true", "false", "null", "_"
+    );
+
+    private ModuleInfos() {}
+
+    /**
+     * @param moduleInfo The original class file.
+     * @param packages Every package in the module, in binary form with dots.
+     * @param mainClass The binary name of the main class, or {@code null} to leave it as is.
+     * @param version The module version, or {@code null} to leave it as is.
+     * @return The patched class file.
+     */
+    static byte[] patch(byte[] moduleInfo, Set<String> packages, String mainClass, String version) {
+        var in = ByteBuffer.wrap(moduleInfo);
+        var constantPool = ClassFiles.constantPool(in);
+        int constantPoolCount = constantPool.count();
+        int constantPoolEnd = constantPool.end();
+        var utf8 = constantPool.utf8();
+
+        in.position(in.position() + 6);
+        int interfaces = Short.toUnsignedInt(in.getShort());
+        in.position(in.position() + 2 * interfaces);
+        for (int members = 0; members < 2; members++) {
+            int count = Short.toUnsignedInt(in.getShort());
+            for (int i = 0; i < count; i++) {
+                in.position(in.position() + 6);
+                ClassFiles.skipAttributes(in);
+            }
+        }
+        int attributesStart = in.position();
+
+        var newConstants = new ByteArrayOutputStream();
+        var constants = new DataOutputStream(newConstants);
+        int[] nextIndex = { constantPoolCount };
+        try {
+            int versionIndex = version == null ? -1 : addUtf8(constants, nextIndex, version);
+
+            var attributes = new ByteArrayOutputStream();
+            var out = new DataOutputStream(attributes);
+            int attributeCount = Short.toUnsignedInt(in.getShort());
+            int keptAttributes = 0;
+            for (int i = 0; i < attributeCount; i++) {
+                int nameIndex = Short.toUnsignedInt(in.getShort());
+                int length = in.getInt();
+                var info = new byte[length];
+                in.get(info);
+                var name = utf8.get(nameIndex);
+                if ("ModulePackages".equals(name) || (mainClass != null && "ModuleMainClass".equals(name))) {
+                    continue;
+                }
+                if ("Module".equals(name) && versionIndex != -1) {
+                    info[4] = (byte) (versionIndex >> 8);
+                    info[5] = (byte) versionIndex;
+                }
+                out.writeShort(nameIndex);
+                out.writeInt(length);
+                out.write(info);
+                keptAttributes++;
+            }
+
+            int newAttributes = 0;
+            if (!packages.isEmpty()) {
+                var packageIndexes = new ArrayList<Integer>();
+                int attributeName = addUtf8(constants, nextIndex, "ModulePackages");
+                for (var packageName : new TreeSet<>(packages)) {
+                    int packageNameIndex = addUtf8(constants, nextIndex, packageName.replace('.', '/'));
+                    constants.writeByte(ClassFiles.CONSTANT_PACKAGE);
+                    constants.writeShort(packageNameIndex);
+                    packageIndexes.add(nextIndex[0]++);
+                }
+                out.writeShort(attributeName);
+                out.writeInt(2 + 2 * packageIndexes.size());
+                out.writeShort(packageIndexes.size());
+                for (var index : packageIndexes) {
+                    out.writeShort(index);
+                }
+                newAttributes++;
+            }
+
+            if (mainClass != null) {
+                int attributeName = addUtf8(constants, nextIndex, "ModuleMainClass");
+                int classNameIndex = addUtf8(constants, nextIndex, mainClass.replace('.', '/'));
+                constants.writeByte(ClassFiles.CONSTANT_CLASS);
+                constants.writeShort(classNameIndex);
+                int classIndex = nextIndex[0]++;
+                out.writeShort(attributeName);
+                out.writeInt(2);
+                out.writeShort(classIndex);
+                newAttributes++;
+            }
+
+            if (nextIndex[0] > 0xFFFF) {
+                throw new IllegalArgumentException("Too many packages to record in module-info.class");
+            }
+
+            var patched = new ByteArrayOutputStream(moduleInfo.length + newConstants.size() + 64);
+            var result = new DataOutputStream(patched);
+            result.write(moduleInfo, 0, 8);
+            result.writeShort(nextIndex[0]);
+            result.write(moduleInfo, 10, constantPoolEnd - 10);
+            result.write(newConstants.toByteArray());
+            result.write(moduleInfo, constantPoolEnd, attributesStart - constantPoolEnd);
+            result.writeShort(keptAttributes + newAttributes);
+            result.write(attributes.toByteArray());
+            return patched.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int addUtf8(DataOutputStream constants, int[] nextIndex, String value) throws IOException {
+        constants.writeByte(ClassFiles.CONSTANT_UTF8);
+        constants.writeUTF(value);
+        return nextIndex[0]++;
+    }
+
+    /**
+     * @param entryName The name of a jar entry.
+     * @return The package it is in, or {@code null} if it is not in a package a module could contain.
+     */
+    static String packageOf(String entryName) {
+        if (entryName.endsWith("/") || entryName.startsWith("META-INF/")) {
+            return null;
+        }
+        var slash = entryName.lastIndexOf('/');
+        if (slash == -1) {
+            return null;
+        }
+        var packageName = entryName.substring(0, slash).replace('/', '.');
+        return isQualifiedName(packageName) ? packageName : null;
+    }
+
+    /**
+     * @return Whether the name is a valid package or class name, like {@code com.example.Main}.
+     */
+    static boolean isQualifiedName(String name) {
+        for (var part : name.split("\\.", -1)) {
+            if (part.isEmpty()
+                    || KEYWORDS.contains(part)
+                    || !Character.isJavaIdentifierStart(part.codePointAt(0))
+                    || !part.codePoints().skip(1).allMatch(Character::isJavaIdentifierPart)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
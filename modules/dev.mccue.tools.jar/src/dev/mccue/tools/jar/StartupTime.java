@@ -0,0 +1,98 @@
+package dev.mccue.tools.jar;
+
+import dev.mccue.tools.ExitStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * How long a program takes to start, for comparing jar layouts.
+ *
+ * <pre>{@code
+ * var before = StartupTime.measure(List.of("java", "-jar", "app.jar"), "com.example.Main", 10);
+ * // ... rewrite app.jar with JarWriter#classLoadOrder ...
+ * var after = StartupTime.measure(List.of("java", "-jar", "app.jar"), "com.example.Main", 10);
+ * System.out.println(after.comparedTo(before));
+ * }</pre>
+ *
+ * @param timeToMain The median JVM uptime when the main class was loaded.
+ * @param total The median time for the whole run, including starting the process.
+ * @param runs The number of runs measured.
+ */
+public record StartupTime(Duration timeToMain, Duration total, int runs) {
+    /**
+     * Runs a program several times, measuring how long it takes to get to its main class.
+     *
+     * @param javaCommand The command to run, starting with the {@code java} launcher.
+     * @param mainClass The binary name of the main class.
+     * @param runs How many times to run it.
+     * @throws ExitStatusException If the program fails.
+     */
+    public static StartupTime measure(List<String> javaCommand, String mainClass, int runs)
+            throws IOException, InterruptedException, ExitStatusException {
+        if (runs < 1) {
+            throw new IllegalArgumentException("runs must be positive: " + runs);
+        }
+
+        var timesToMain = new long[runs];
+        var totals = new long[runs];
+        var log = Files.createTempFile("startup", ".log");
+        try {
+            var command = new ArrayList<String>(javaCommand.size() + 1);
+            command.add(javaCommand.get(0));
+            command.add(ClassLoadOrder.logOption(log) + ":uptimenanos,tags");
+            command.addAll(javaCommand.subList(1, javaCommand.size()));
+            for (int i = 0; i < runs; i++) {
+                var start = System.nanoTime();
+                var process = new ProcessBuilder(command)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.DISCARD)
+                        .start();
+                ExitStatusException.throwOnFailure(process.waitFor());
+                totals[i] = System.nanoTime() - start;
+                timesToMain[i] = timeToMain(log, mainClass);
+            }
+        } finally {
+            Files.deleteIfExists(log);
+        }
+        return new StartupTime(Duration.ofNanos(median(timesToMain)), Duration.ofNanos(median(totals)), runs);
+    }
+
+    private static long timeToMain(Path log, String mainClass) throws IOException {
+        for (var line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            // [123456789ns][class,load] com.example.Main source: ...
+            if (mainClass.equals(ClassLoadOrder.className(line)) && line.startsWith("[")) {
+                return Long.parseLong(line.substring(1, line.indexOf("ns]")));
+            }
+        }
+        throw new IOException(mainClass + " was never loaded");
+    }
+
+    private static long median(long[] values) {
+        var sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * @param before An earlier measurement.
+     * @return A summary of how this measurement differs from it.
+     */
+    public String comparedTo(StartupTime before) {
+        return "time to main " + change(before.timeToMain, timeToMain)
+               + ", total " + change(before.total, total);
+    }
+
+    private static String change(Duration before, Duration after) {
+        var percent = before.isZero()
+                ? 0
+                : (after.toNanos() - before.toNanos()) * 100.0 / before.toNanos();
+        return String.format("%.1f ms -> %.1f ms (%+.1f%%)", before.toNanos() / 1e6, after.toNanos() / 1e6, percent);
+    }
+}
@@ -0,0 +1,359 @@
+package dev.mccue.tools.jar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a zip archive through its central directory.
+ *
+ * <p>Entries can be read either inflated or exactly as they are stored, which
+ * is what lets them be copied into another archive without being recompressed.
+ * Reading is safe from multiple threads.
+ */
+final class ZipArchiveReader implements Closeable {
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /**
+     * An entry as recorded in the central directory.
+     *
+     * @param extra The central directory's extra field, including any zip64 record.
+     */
+    record Entry(
+            String name,
+            int flags,
+            int method,
+            long crc,
+            long compressedSize,
+            long size,
+            long dosTime,
+            byte[] extra,
+            int versionMadeBy,
+            long externalAttributes,
+            long localHeaderOffset
+    ) {
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        /**
+         * @return The same metadata, ready to be written with {@link ZipArchiveWriter}.
+         */
+        ZipArchiveWriter.Entry toWritable(long dosTime) {
+            return new ZipArchiveWriter.Entry(
+                    name, method, crc, compressedSize, size, dosTime, new byte[0], versionMadeBy, externalAttributes
+            );
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer mapped;
+    private final List<Entry> entries;
+    private final Map<String, Entry> byName;
+
+    private ZipArchiveReader(Path path, FileChannel channel, ByteBuffer mapped) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.mapped = mapped;
+        this.entries = Collections.unmodifiableList(readCentralDirectory());
+        var byName = new LinkedHashMap<String, Entry>();
+        for (var entry : entries) {
+            byName.putIfAbsent(entry.name, entry);
+        }
+        this.byName = Collections.unmodifiableMap(byName);
+    }
+
+    /**
+     * @param path The archive.
+     * @param map Whether to memory-map the archive instead of reading it through the channel.
+     *            Archives too large to map in one piece are always read through the channel.
+     */
+    static ZipArchiveReader open(Path path, boolean map) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer mapped = null;
+            if (map && channel.size() <= Integer.MAX_VALUE) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new ZipArchiveReader(path, channel, mapped);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * @return Every entry, in central directory order.
+     */
+    List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * @return The first entry with the given name, or {@code null}.
+     */
+    Entry entry(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * @return Whatever comes before the first entry, like the header of a jmod.
+     */
+    byte[] preamble() throws IOException {
+        var length = entries.stream()
+                .mapToLong(Entry::localHeaderOffset)
+                .min()
+                .orElse(0);
+        var preamble = read(0, (int) Math.min(length, Integer.MAX_VALUE));
+        var bytes = new byte[preamble.remaining()];
+        preamble.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return The entry's data exactly as stored, still compressed if it was.
+     */
+    ByteBuffer rawData(Entry entry) throws IOException {
+        var header = read(entry.localHeaderOffset, 30);
+        if (header.getInt(0) != ZipArchiveWriter.LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Bad local header for " + entry.name + " in " + path);
+        }
+        var dataOffset = entry.localHeaderOffset + 30
+                + Short.toUnsignedInt(header.getShort(26))
+                + Short.toUnsignedInt(header.getShort(28));
+        if (entry.compressedSize > Integer.MAX_VALUE) {
+            throw new ZipException(entry.name + " in " + path + " is too large to read into memory");
+        }
+        return read(dataOffset, (int) entry.compressedSize);
+    }
+
+    /**
+     * @return The entry's contents, inflated and checked against its CRC.
+     */
+    byte[] contents(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE - 8) {
+            throw new ZipException(entry.name + " in " + path + " is too large to read into memory");
+        }
+        var raw = rawData(entry);
+        byte[] contents;
+        switch (entry.method) {
+            case ZipArchiveWriter.STORED -> {
+                contents = new byte[raw.remaining()];
+                raw.get(contents);
+            }
+            case ZipArchiveWriter.DEFLATED -> {
+                var inflater = new Inflater(true);
+                try {
+                    inflater.setInput(raw);
+                    var out = new ByteArrayOutputStream((int) entry.size);
+                    var buffer = new byte[8192];
+                    while (!inflater.finished()) {
+                        var length = inflater.inflate(buffer);
+                        if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new ZipException("Truncated data for " + entry.name + " in " + path);
+                        }
+                        out.write(buffer, 0, length);
+                    }
+                    contents = out.toByteArray();
+                } catch (DataFormatException e) {
+                    throw new ZipException("Invalid data for " + entry.name + " in " + path + ": " + e.getMessage());
+                } finally {
+                    inflater.end();
+                }
+            }
+            default -> throw new ZipException(
+                    "Unsupported compression method " + entry.method + " for " + entry.name + " in " + path
+            );
+        }
+
+        var crc = new CRC32();
+        crc.update(contents);
+        if (contents.length != entry.size || crc.getValue() != entry.crc) {
+            throw new ZipException("Corrupt entry " + entry.name + " in " + path);
+        }
+        return contents;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        if (mapped != null) {
+            if (offset + length > mapped.capacity()) {
+                throw new EOFException(path.toString());
+            }
+            return mapped.slice((int) offset, length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        var buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException(path.toString());
+            }
+        }
+        return buffer.flip();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        var size = channel.size();
+        if (size < END_OF_CENTRAL_DIRECTORY_SIZE) {
+            throw new ZipException("Not a zip archive: " + path);
+        }
+
+        var tailLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        var tail = read(size - tailLength, tailLength);
+        int end = -1;
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == ZipArchiveWriter.END_OF_CENTRAL_DIRECTORY_SIGNATURE
+                    && i + END_OF_CENTRAL_DIRECTORY_SIZE + Short.toUnsignedInt(tail.getShort(i + 20)) == tailLength) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new ZipException("No end of central directory in " + path);
+        }
+
+        long count = Short.toUnsignedInt(tail.getShort(end + 10));
+        long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+
+        var endOffset = size - tailLength + end;
+        // Offsets are relative to the start of the archive, which may follow a preamble like a jmod's header
+        long start = 0;
+        if (endOffset >= ZIP64_LOCATOR_SIZE) {
+            var locator = read(endOffset - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+            if (locator.getInt(0) == ZipArchiveWriter.ZIP64_LOCATOR_SIGNATURE) {
+                var zip64End = read(locator.getLong(8), 56);
+                if (zip64End.getInt(0) != ZipArchiveWriter.ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                    throw new ZipException("Bad zip64 end of central directory in " + path);
+                }
+                count = zip64End.getLong(32);
+                directorySize = zip64End.getLong(40);
+                directoryOffset = zip64End.getLong(48);
+            }
+            else {
+                start = endOffset - directorySize - directoryOffset;
+            }
+        }
+        else {
+            start = endOffset - directorySize - directoryOffset;
+        }
+
+        if (directorySize > Integer.MAX_VALUE || start < 0 || start + directoryOffset + directorySize > size) {
+            throw new ZipException("Bad central directory in " + path);
+        }
+        var directory = read(start + directoryOffset, (int) directorySize);
+        var entries = new ArrayList<Entry>((int) Math.min(count, 1 << 16));
+        int position = 0;
+        for (long i = 0; i < count; i++) {
+            if (position + 46 > directory.limit()
+                    || directory.getInt(position) != ZipArchiveWriter.CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Bad central directory header in " + path);
+            }
+            int versionMadeBy = Short.toUnsignedInt(directory.getShort(position + 4));
+            int flags = Short.toUnsignedInt(directory.getShort(position + 8));
+            int method = Short.toUnsignedInt(directory.getShort(position + 10));
+            long dosTime = Integer.toUnsignedLong(directory.getInt(position + 12));
+            long crc = Integer.toUnsignedLong(directory.getInt(position + 16));
+            long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+            long uncompressedSize = Integer.toUnsignedLong(directory.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+            long externalAttributes = Integer.toUnsignedLong(directory.getInt(position + 38));
+            long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+
+            var nameBytes = new byte[nameLength];
+            directory.get(position + 46, nameBytes);
+            var extra = new byte[extraLength];
+            directory.get(position + 46 + nameLength, extra);
+
+            // Zip64 values appear in the extra field in this order, and only for fields which overflowed
+            var extraBuffer = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+            while (extraBuffer.remaining() >= 4) {
+                int id = Short.toUnsignedInt(extraBuffer.getShort());
+                int length = Short.toUnsignedInt(extraBuffer.getShort());
+                var next = extraBuffer.position() + length;
+                if (id == ZipArchiveWriter.ZIP64_EXTRA_ID) {
+                    if (uncompressedSize == ZIP64_MAGIC && extraBuffer.position() + 8 <= next) {
+                        uncompressedSize = extraBuffer.getLong();
+                    }
+                    if (compressedSize == ZIP64_MAGIC && extraBuffer.position() + 8 <= next) {
+                        compressedSize = extraBuffer.getLong();
+                    }
+                    if (localHeaderOffset == ZIP64_MAGIC && extraBuffer.position() + 8 <= next) {
+                        localHeaderOffset = extraBuffer.getLong();
+                    }
+                }
+                if (next > extraBuffer.limit()) {
+                    break;
+                }
+                extraBuffer.position(next);
+            }
+
+            entries.add(new Entry(
+                    new String(nameBytes, StandardCharsets.UTF_8),
+                    flags,
+                    method,
+                    crc,
+                    compressedSize,
+                    uncompressedSize,
+                    dosTime,
+                    extra,
+                    versionMadeBy,
+                    externalAttributes,
+                    start + localHeaderOffset
+            ));
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * @return The time represented by an MS-DOS format time, or the earliest time a jar can
+     * hold if it is not a valid one.
+     */
+    static LocalDateTime localDateTime(long dosTime) {
+        try {
+            return LocalDateTime.of(
+                    (int) ((dosTime >> 25) & 0x7f) + 1980,
+                    (int) ((dosTime >> 21) & 0x0f),
+                    (int) ((dosTime >> 16) & 0x1f),
+                    (int) ((dosTime >> 11) & 0x1f),
+                    (int) ((dosTime >> 5) & 0x3f),
+                    (int) ((dosTime << 1) & 0x3e)
+            );
+        } catch (RuntimeException e) {
+            return JarWriter.MINIMUM_DATE;
+        }
+    }
+}
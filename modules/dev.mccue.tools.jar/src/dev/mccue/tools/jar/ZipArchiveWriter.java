@@ -0,0 +1,327 @@
+package dev.mccue.tools.jar;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a zip archive from entries whose compressed form is already known.
+ *
+ * <p>Unlike {@link java.util.zip.ZipOutputStream} this never compresses anything
+ * itself, which is what lets entries be compressed in parallel or copied
+ * verbatim out of another archive. Zip64 records are written only when an
+ * archive is too large to do without them.
+ */
+final class ZipArchiveWriter implements Closeable {
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    static final int ZIP64_EXTRA_ID = 0x0001;
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    // Bit 11 marks the entry name as UTF-8
+    private static final int UTF8_FLAG = 0x800;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /**
+     * The metadata of one entry.
+     *
+     * @param name The entry name.
+     * @param method {@link #STORED} or {@link #DEFLATED}.
+     * @param crc The CRC-32 of the uncompressed contents.
+     * @param compressedSize The size of the data as stored in the archive.
+     * @param size The uncompressed size.
+     * @param dosTime The modification time in MS-DOS format.
+     * @param extra The extra field for the local header, without any zip64 record.
+     * @param versionMadeBy The "version made by" field, whose upper byte says how to read {@code externalAttributes}.
+     * @param externalAttributes Host specific attributes, like unix permissions.
+     */
+    record Entry(
+            String name,
+            int method,
+            long crc,
+            long compressedSize,
+            long size,
+            long dosTime,
+            byte[] extra,
+            int versionMadeBy,
+            long externalAttributes
+    ) {
+        Entry(String name, int method, long crc, long compressedSize, long size, long dosTime) {
+            this(name, method, crc, compressedSize, size, dosTime, new byte[0], 0, 0);
+        }
+    }
+
+    @FunctionalInterface
+    interface Body {
+        void write(ZipArchiveWriter out) throws IOException;
+    }
+
+    private record Written(Entry entry, byte[] name, long offset) {
+    }
+
+    private final OutputStream out;
+    private final List<Written> written;
+    private long position;
+
+    ZipArchiveWriter(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+        this.written = new ArrayList<>();
+        this.position = 0;
+    }
+
+    /**
+     * Writes an entry.
+     *
+     * @param entry Its metadata.
+     * @param data Its data, already compressed according to {@link Entry#method()}.
+     */
+    void write(Entry entry, ByteBuffer data) throws IOException {
+        if (data.remaining() != entry.compressedSize) {
+            throw new IllegalArgumentException(
+                    "Expected " + entry.compressedSize + " bytes of data for " + entry.name + ", got " + data.remaining()
+            );
+        }
+
+        var name = entry.name.getBytes(StandardCharsets.UTF_8);
+        var offset = position;
+        var zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+        var zip64Extra = zip64 ? zip64Extra(entry.size, entry.compressedSize, -1) : new byte[0];
+
+        var header = buffer(30 + name.length + entry.extra.length + zip64Extra.length);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) versionNeeded(entry, zip64));
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.method);
+        header.putInt((int) entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.compressedSize));
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.size));
+        header.putShort((short) name.length);
+        header.putShort((short) (entry.extra.length + zip64Extra.length));
+        header.put(name);
+        header.put(entry.extra);
+        header.put(zip64Extra);
+        write(header);
+
+        if (data.hasArray()) {
+            out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            position += data.remaining();
+        }
+        else {
+            var chunk = new byte[Math.min(64 * 1024, Math.max(1, data.remaining()))];
+            var remaining = data.duplicate();
+            while (remaining.hasRemaining()) {
+                var length = Math.min(chunk.length, remaining.remaining());
+                remaining.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+                position += length;
+            }
+        }
+
+        written.add(new Written(entry, name, offset));
+    }
+
+    /**
+     * Writes the central directory and flushes, without closing the underlying stream.
+     */
+    void finish() throws IOException {
+        var centralDirectoryOffset = position;
+        for (var entry : written) {
+            var e = entry.entry;
+            var sizesZip64 = e.size >= ZIP64_MAGIC || e.compressedSize >= ZIP64_MAGIC;
+            var offsetZip64 = entry.offset >= ZIP64_MAGIC;
+            var zip64Extra = sizesZip64 || offsetZip64
+                    ? zip64Extra(sizesZip64 ? e.size : -1, sizesZip64 ? e.compressedSize : -1, offsetZip64 ? entry.offset : -1)
+                    : new byte[0];
+
+            var header = buffer(46 + entry.name.length + e.extra.length + zip64Extra.length);
+            header.putInt(CENTRAL_HEADER_SIGNATURE);
+            var versionNeeded = versionNeeded(e, sizesZip64 || offsetZip64);
+            header.putShort((short) (e.versionMadeBy == 0 ? versionNeeded : e.versionMadeBy));
+            header.putShort((short) versionNeeded);
+            header.putShort((short) UTF8_FLAG);
+            header.putShort((short) e.method);
+            header.putInt((int) e.dosTime);
+            header.putInt((int) e.crc);
+            header.putInt((int) (sizesZip64 ? ZIP64_MAGIC : e.compressedSize));
+            header.putInt((int) (sizesZip64 ? ZIP64_MAGIC : e.size));
+            header.putShort((short) entry.name.length);
+            header.putShort((short) (e.extra.length + zip64Extra.length));
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt((int) e.externalAttributes);
+            header.putInt((int) (offsetZip64 ? ZIP64_MAGIC : entry.offset));
+            header.put(entry.name);
+            header.put(e.extra);
+            header.put(zip64Extra);
+            write(header);
+        }
+        var centralDirectorySize = position - centralDirectoryOffset;
+
+        var zip64 = written.size() >= 0xFFFF
+                || centralDirectoryOffset >= ZIP64_MAGIC
+                || centralDirectorySize >= ZIP64_MAGIC;
+        if (zip64) {
+            var zip64EndOffset = position;
+            var end = buffer(56 + 20);
+            end.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            end.putLong(44);
+            end.putShort((short) 45);
+            end.putShort((short) 45);
+            end.putInt(0);
+            end.putInt(0);
+            end.putLong(written.size());
+            end.putLong(written.size());
+            end.putLong(centralDirectorySize);
+            end.putLong(centralDirectoryOffset);
+
+            end.putInt(ZIP64_LOCATOR_SIGNATURE);
+            end.putInt(0);
+            end.putLong(zip64EndOffset);
+            end.putInt(1);
+            write(end);
+        }
+
+        var end = buffer(22);
+        end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) (zip64 ? 0xFFFF : written.size()));
+        end.putShort((short) (zip64 ? 0xFFFF : written.size()));
+        end.putInt((int) (zip64 ? ZIP64_MAGIC : centralDirectorySize));
+        end.putInt((int) (zip64 ? ZIP64_MAGIC : centralDirectoryOffset));
+        end.putShort((short) 0);
+        write(end);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * Writes an archive to a temporary file next to {@code target} and then moves it into
+     * place. A failed write never leaves a truncated archive behind, and the archive being
+     * replaced can be read while the new one is written.
+     */
+    static void replace(Path target, Body body) throws IOException {
+        replace(target, new byte[0], body);
+    }
+
+    /**
+     * Same as {@link #replace(Path, Body)}, but with the archive following a preamble
+     * such as a jmod's header. Offsets stay relative to the start of the archive.
+     */
+    static void replace(Path target, byte[] preamble, Body body) throws IOException {
+        target = target.toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        var temporary = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            var file = Files.newOutputStream(temporary);
+            try (var out = new ZipArchiveWriter(file)) {
+                file.write(preamble);
+                body.write(out);
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return The contents as raw deflate data, at the default compression level.
+     */
+    static byte[] deflate(byte[] contents) {
+        var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(contents);
+            deflater.finish();
+            var deflated = new ByteArrayOutputStream(Math.max(64, contents.length / 2));
+            var buffer = new byte[8192];
+            while (!deflater.finished()) {
+                var length = deflater.deflate(buffer);
+                deflated.write(buffer, 0, length);
+            }
+            return deflated.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int versionNeeded(Entry entry, boolean zip64) {
+        if (zip64) {
+            return 45;
+        }
+        return entry.method == DEFLATED ? 20 : 10;
+    }
+
+    private static byte[] zip64Extra(long size, long compressedSize, long offset) {
+        int length = (size >= 0 ? 8 : 0) + (compressedSize >= 0 ? 8 : 0) + (offset >= 0 ? 8 : 0);
+        var extra = buffer(4 + length);
+        extra.putShort((short) ZIP64_EXTRA_ID);
+        extra.putShort((short) length);
+        if (size >= 0) {
+            extra.putLong(size);
+        }
+        if (compressedSize >= 0) {
+            extra.putLong(compressedSize);
+        }
+        if (offset >= 0) {
+            extra.putLong(offset);
+        }
+        return extra.array();
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        position += buffer.position();
+    }
+
+    /**
+     * @return The time in the MS-DOS format used by zip headers, clamped to the range it can represent.
+     */
+    static long dosTime(LocalDateTime time) {
+        if (time.getYear() < 1980) {
+            time = JarWriter.MINIMUM_DATE;
+        }
+        else if (time.getYear() > 2107) {
+            time = LocalDateTime.of(2107, 12, 31, 23, 59, 58);
+        }
+        return ((long) (time.getYear() - 1980) << 25)
+                | ((long) time.getMonthValue() << 21)
+                | ((long) time.getDayOfMonth() << 16)
+                | ((long) time.getHour() << 11)
+                | ((long) time.getMinute() << 5)
+                | ((long) time.getSecond() >> 1);
+    }
+}
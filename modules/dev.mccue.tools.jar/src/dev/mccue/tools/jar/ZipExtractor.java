@@ -0,0 +1,211 @@
+package dev.mccue.tools.jar;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.zip.ZipException;
+
+/**
+ * Extracts a zip archive, such as a jar or a tool's distribution.
+ *
+ * <p>Entries are found through the central directory and extracted in parallel
+ * on a {@link ForkJoinPool}. Files keep their modification times and, where the
+ * archive recorded them and the file system supports them, their Unix permissions.
+ * Entries which would end up outside the destination are rejected.
+ *
+ * <pre>{@code
+ * ZipExtractor.of(Path.of("pmd.zip"))
+ *         .rename(name -> name.replaceFirst("^pmd-bin-[^/]+/", ""))
+ *         .extract(Path.of("tools", "pmd"));
+ * }</pre>
+ */
+public final class ZipExtractor {
+    private static final int UNIX = 3;
+    private static final PosixFilePermission[] PERMISSIONS = {
+            PosixFilePermission.OTHERS_EXECUTE,
+            PosixFilePermission.OTHERS_WRITE,
+            PosixFilePermission.OTHERS_READ,
+            PosixFilePermission.GROUP_EXECUTE,
+            PosixFilePermission.GROUP_WRITE,
+            PosixFilePermission.GROUP_READ,
+            PosixFilePermission.OWNER_EXECUTE,
+            PosixFilePermission.OWNER_WRITE,
+            PosixFilePermission.OWNER_READ
+    };
+
+    private record Extraction(ZipArchiveReader.Entry entry, Path target) {
+    }
+
+    private final Path file;
+    private final List<Predicate<String>> inclusions;
+    private UnaryOperator<String> rename;
+    private ForkJoinPool pool;
+    private boolean permissions;
+
+    private ZipExtractor(Path file) {
+        this.file = file;
+        this.inclusions = new ArrayList<>();
+        this.rename = UnaryOperator.identity();
+        this.pool = ForkJoinPool.commonPool();
+        this.permissions = true;
+    }
+
+    /**
+     * @param file The archive to extract.
+     * @return An extractor for that archive.
+     */
+    public static ZipExtractor of(Path file) {
+        return new ZipExtractor(Objects.requireNonNull(file, "file"));
+    }
+
+    /**
+     * Only extracts entries whose names match one of these. Everything is extracted
+     * if none are given.
+     */
+    public ZipExtractor include(Predicate<String> names) {
+        inclusions.add(Objects.requireNonNull(names, "names"));
+        return this;
+    }
+
+    /**
+     * Changes where entries are extracted to, relative to the destination. Entries
+     * renamed to {@code null} or an empty name are skipped.
+     */
+    public ZipExtractor rename(UnaryOperator<String> rename) {
+        this.rename = Objects.requireNonNull(rename, "rename");
+        return this;
+    }
+
+    /**
+     * Sets the pool entries are extracted on. Defaults to {@link ForkJoinPool#commonPool()}.
+     */
+    public ZipExtractor pool(ForkJoinPool pool) {
+        this.pool = Objects.requireNonNull(pool, "pool");
+        return this;
+    }
+
+    /**
+     * Whether to give files the Unix permissions recorded in the archive. Defaults to {@code true}.
+     */
+    public ZipExtractor permissions(boolean permissions) {
+        this.permissions = permissions;
+        return this;
+    }
+
+    /**
+     * Extracts the archive, replacing any files already there.
+     *
+     * @param destination The directory to extract into. It is created if missing.
+     */
+    public void extract(Path destination) throws IOException {
+        var root = destination.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        var posix = permissions && Files.getFileStore(root).supportsFileAttributeView(PosixFileAttributeView.class);
+
+        try (var archive = ZipArchiveReader.open(file, true)) {
+            // Later entries with the same name replace earlier ones, as they would extracting in order
+            var extractions = new LinkedHashMap<Path, Extraction>();
+            for (var entry : archive.entries()) {
+                if (!isIncluded(entry.name())) {
+                    continue;
+                }
+                var name = rename.apply(entry.name());
+                if (name == null || name.isEmpty()) {
+                    continue;
+                }
+                var target = root.resolve(name).normalize();
+                if (!target.startsWith(root)) {
+                    throw new ZipException("Entry " + entry.name() + " in " + file + " is outside of " + destination);
+                }
+                extractions.remove(target);
+                extractions.put(target, new Extraction(entry, target));
+            }
+
+            var files = new ArrayList<Extraction>();
+            var directories = new ArrayList<Extraction>();
+            for (var extraction : extractions.values()) {
+                if (extraction.entry.isDirectory()) {
+                    Files.createDirectories(extraction.target);
+                    directories.add(extraction);
+                }
+                else {
+                    files.add(extraction);
+                }
+            }
+
+            try {
+                pool.submit(() -> files.parallelStream().forEach(extraction -> {
+                    try {
+                        Files.createDirectories(extraction.target.getParent());
+                        Files.write(extraction.target, archive.contents(extraction.entry));
+                        finish(extraction, posix);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted extracting " + file, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException unchecked) {
+                    throw unchecked.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+
+            // Deepest first, so setting a directory's time isn't undone by what is extracted into it
+            for (var extraction : directories.reversed()) {
+                finish(extraction, posix);
+            }
+        }
+    }
+
+    private boolean isIncluded(String name) {
+        if (inclusions.isEmpty()) {
+            return true;
+        }
+        for (var inclusion : inclusions) {
+            if (inclusion.test(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void finish(Extraction extraction, boolean posix) throws IOException {
+        var entry = extraction.entry;
+        if (posix && entry.versionMadeBy() >> 8 == UNIX) {
+            var mode = (int) (entry.externalAttributes() >> 16) & 0777;
+            if (mode != 0) {
+                Files.setPosixFilePermissions(extraction.target, permissions(mode));
+            }
+        }
+        var time = ZipArchiveReader.localDateTime(entry.dosTime()).atZone(ZoneId.systemDefault()).toInstant();
+        Files.setLastModifiedTime(extraction.target, FileTime.from(time));
+    }
+
+    static Set<PosixFilePermission> permissions(int mode) {
+        var permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (int bit = 0; bit < PERMISSIONS.length; bit++) {
+            if ((mode & (1 << bit)) != 0) {
+                permissions.add(PERMISSIONS[bit]);
+            }
+        }
+        return permissions;
+    }
+}
@@ -0,0 +1,300 @@
+package dev.mccue.tools.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.Configuration;
+import java.lang.module.FindException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReader;
+import java.lang.module.ModuleReference;
+import java.lang.module.ResolutionException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Cuts a module path down to the modules which will actually be resolved.
+ *
+ * <p>{@code java} and {@code javac} look at everything on the module path, opening every
+ * jar to read its descriptor, even though only the modules their root modules require,
+ * directly or not, are used. Resolving those ahead of time, the same way the JDK does,
+ * lets the module path given to the tool list only them.
+ *
+ * <pre>{@code
+ * Java.run(ModulePathPruner.prune(new JavaArguments()
+ *         .__module_path(Path.of("libs"))
+ *         ._m("app/app.Main")));
+ * }</pre>
+ *
+ * <p>Module descriptors are remembered for as long as the jar they came from keeps the
+ * same size and modification time, so that pruning the same module path again doesn't
+ * open any jars. If the modules can't be resolved, like when one is missing, the module
+ * path is left as it is so that the tool can report the problem itself.
+ */
+public final class ModulePathPruner {
+    private static final Map<Path, CachedDescriptor> DESCRIPTORS = new ConcurrentHashMap<>();
+
+    // Options to java which take the next argument as their value
+    private static final Set<String> OPTIONS_WITH_VALUES = Set.of(
+            "-cp", "-classpath", "--class-path",
+            "-p", "--module-path",
+            "-m", "--module",
+            "--upgrade-module-path",
+            "--add-modules",
+            "--limit-modules",
+            "--enable-native-access",
+            "--add-reads", "--add-exports", "--add-opens",
+            "--patch-module",
+            "--source"
+    );
+
+    // Options which change which modules can be seen, or what is done with them
+    private static final Set<String> UNPRUNABLE_OPTIONS = Set.of(
+            "--upgrade-module-path",
+            "--limit-modules",
+            "-d", "--describe-module",
+            "--list-modules",
+            "--validate-modules"
+    );
+
+    private record CachedDescriptor(long size, long lastModified, ModuleDescriptor descriptor) {
+    }
+
+    private ModulePathPruner() {}
+
+    /**
+     * @param arguments Arguments to {@code java}.
+     * @return The same arguments, with only the modules needed by the module given with
+     * {@code -m} and those given with {@code --add-modules}, and any services they use,
+     * left on the module path. The arguments are returned unchanged if they add every
+     * module on the module path, or none of them.
+     */
+    public static JavaArguments prune(JavaArguments arguments) {
+        var roots = new ArrayList<String>();
+        int modulePathIndex = -1;
+        for (int i = 0; i < arguments.size(); i++) {
+            var argument = arguments.get(i);
+            var equals = argument.indexOf('=');
+            var option = argument.startsWith("--") && equals != -1 ? argument.substring(0, equals) : argument;
+            String value = null;
+            if (option.equals(argument) && OPTIONS_WITH_VALUES.contains(option) && i + 1 < arguments.size()) {
+                value = arguments.get(i + 1);
+            }
+            else if (!option.equals(argument)) {
+                value = argument.substring(equals + 1);
+            }
+
+            if (argument.startsWith("@") || UNPRUNABLE_OPTIONS.contains(option)) {
+                return arguments;
+            }
+            else if (option.equals("-p") || option.equals("--module-path")) {
+                if (modulePathIndex != -1 || value == null) {
+                    return arguments;
+                }
+                modulePathIndex = i;
+            }
+            else if (option.equals("--add-modules") && value != null) {
+                for (var module : value.split(",")) {
+                    if (module.equals("ALL-MODULE-PATH")) {
+                        return arguments;
+                    }
+                    else if (!module.isBlank() && !module.startsWith("ALL-")) {
+                        roots.add(module);
+                    }
+                }
+            }
+            else if ((option.equals("-m") || option.equals("--module")) && value != null) {
+                roots.add(value.split("/", 2)[0]);
+                break;
+            }
+            else if (option.equals("-jar") || !argument.startsWith("-")) {
+                break;
+            }
+
+            if (value != null && option.equals(argument)) {
+                i++;
+            }
+        }
+
+        if (modulePathIndex == -1 || roots.isEmpty()) {
+            return arguments;
+        }
+        var pruned = new JavaArguments(arguments);
+        var argument = pruned.get(modulePathIndex);
+        var separate = !argument.contains("=");
+        var modulePath = prune(
+                separate ? pruned.get(modulePathIndex + 1) : argument.substring(argument.indexOf('=') + 1),
+                roots,
+                true
+        );
+        if (modulePath.isEmpty()) {
+            pruned.remove(modulePathIndex);
+            if (separate) {
+                pruned.remove(modulePathIndex);
+            }
+        }
+        else if (separate) {
+            pruned.set(modulePathIndex + 1, modulePath);
+        }
+        else {
+            pruned.set(modulePathIndex, argument.substring(0, argument.indexOf('=') + 1) + modulePath);
+        }
+        return pruned;
+    }
+
+    /**
+     * Like {@link #prune(List, Collection, boolean)}, for a module path given the way
+     * {@code --module-path} takes it.
+     */
+    public static String prune(String modulePath, Collection<String> roots, boolean bindServices) {
+        var entries = Arrays.stream(modulePath.split(File.pathSeparator))
+                .filter(entry -> !entry.isEmpty())
+                .map(Path::of)
+                .toList();
+        var pruned = prune(entries, roots, bindServices);
+        if (pruned.equals(entries)) {
+            return modulePath;
+        }
+        return pruned.stream()
+                .map(Path::toString)
+                .collect(Collectors.joining(File.pathSeparator));
+    }
+
+    /**
+     * @param modulePath The entries of the module path: modular or automatic jars, exploded
+     *                   modules, and directories of those.
+     * @param roots The modules to resolve. Modules in the JDK are resolved from the JDK.
+     * @param bindServices Whether to also keep the modules which provide services that the
+     *                     resolved modules use, like {@code java} does. {@code javac} doesn't
+     *                     need them.
+     * @return The entries with the modules which would be resolved, in the same order. A
+     * directory of modules is replaced by the modules in it which are needed, unless all of
+     * them are. If resolution fails, the module path is returned as it was.
+     */
+    public static List<Path> prune(List<Path> modulePath, Collection<String> roots, boolean bindServices) {
+        var references = new LinkedHashMap<String, ModuleReference>();
+        var entries = new LinkedHashMap<Path, List<Path>>();
+        try {
+            for (var entry : modulePath) {
+                var modules = modules(entry);
+                entries.put(entry, modules);
+                var inEntry = new HashSet<String>();
+                for (var module : modules) {
+                    var descriptor = descriptor(module);
+                    if (!inEntry.add(descriptor.name())) {
+                        // The same module twice in one directory is an error
+                        return modulePath;
+                    }
+                    references.putIfAbsent(descriptor.name(), new Reference(descriptor, module));
+                }
+            }
+        } catch (IOException | UncheckedIOException | FindException e) {
+            return modulePath;
+        }
+
+        var finder = new ModuleFinder() {
+            @Override
+            public Optional<ModuleReference> find(String name) {
+                return Optional.ofNullable(references.get(name));
+            }
+
+            @Override
+            public Set<ModuleReference> findAll() {
+                return Set.copyOf(references.values());
+            }
+        };
+
+        Configuration configuration;
+        try {
+            // Modules in the JDK come first, since they can't be replaced from the module path
+            configuration = bindServices
+                    ? Configuration.empty().resolveAndBind(ModuleFinder.ofSystem(), finder, roots)
+                    : Configuration.empty().resolve(ModuleFinder.ofSystem(), finder, roots);
+        } catch (FindException | ResolutionException e) {
+            return modulePath;
+        }
+
+        var used = new HashSet<Path>();
+        for (var module : configuration.modules()) {
+            if (module.reference() instanceof Reference reference) {
+                used.add(reference.path);
+            }
+        }
+
+        var pruned = new ArrayList<Path>();
+        entries.forEach((entry, modules) -> {
+            var needed = modules.stream().filter(used::contains).toList();
+            if (!needed.isEmpty() && needed.size() == modules.size()) {
+                pruned.add(entry);
+            }
+            else {
+                pruned.addAll(needed);
+            }
+        });
+        return pruned;
+    }
+
+    /**
+     * @return The modules an entry on the module path holds: itself if it is a jar or an
+     * exploded module, or what is in it if it is a directory of those.
+     */
+    private static List<Path> modules(Path entry) throws IOException {
+        if (!Files.isDirectory(entry) || Files.exists(entry.resolve("module-info.class"))) {
+            return Files.exists(entry) ? List.of(entry) : List.of();
+        }
+        try (var children = Files.list(entry)) {
+            return children
+                    .filter(child -> Files.isDirectory(child)
+                            ? Files.exists(child.resolve("module-info.class"))
+                            : child.getFileName().toString().endsWith(".jar"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static ModuleDescriptor descriptor(Path module) throws IOException {
+        var file = Files.isDirectory(module) ? module.resolve("module-info.class") : module;
+        var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        var size = attributes.size();
+        var lastModified = attributes.lastModifiedTime().toMillis();
+        var cached = DESCRIPTORS.get(module);
+        if (cached != null && cached.size() == size && cached.lastModified() == lastModified) {
+            return cached.descriptor();
+        }
+
+        var descriptor = ModuleFinder.of(module).findAll().stream()
+                .findFirst()
+                .orElseThrow(() -> new FindException("Not a module: " + module))
+                .descriptor();
+        DESCRIPTORS.put(module, new CachedDescriptor(size, lastModified, descriptor));
+        return descriptor;
+    }
+
+    // Only ever resolved, never read
+    private static final class Reference extends ModuleReference {
+        private final Path path;
+
+        Reference(ModuleDescriptor descriptor, Path path) {
+            super(descriptor, path.toUri());
+            this.path = path;
+        }
+
+        @Override
+        public ModuleReader open() throws IOException {
+            throw new IOException("Module path pruning doesn't read modules: " + path);
+        }
+    }
+}
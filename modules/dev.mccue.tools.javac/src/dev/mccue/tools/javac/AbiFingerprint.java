@@ -0,0 +1,229 @@
+package dev.mccue.tools.javac;
+
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+
+/**
+ * A digest of what code compiled against a directory of classes or a jar can see
+ * of it: the signatures of its classes and their members, and the values of their
+ * constants. Method bodies, private members and resources don't affect it, so
+ * a downstream module whose sources haven't changed doesn't need compiling again
+ * until the fingerprint of something it depends on does.
+ *
+ * <p>When there is a module descriptor, it is included, and only the public and
+ * protected parts of the packages the module exports count, along with those of
+ * any supertypes of their classes in packages it doesn't export.
+ *
+ * <pre>{@code
+ * var fingerprint = AbiFingerprint.of(Path.of("build", "core", "classes"));
+ * if (!fingerprint.equals(lastFingerprint)) {
+ *     Javac.run(arguments -> arguments
+ *             .__module_path("build/core/classes")
+ *             ._d("build/app/classes")
+ *             .sourceFiles(sources));
+ * }
+ * }</pre>
+ *
+ * <p>{@link IncrementalJavac} checks the fingerprints of everything on the class and
+ * module paths this way on its own.
+ */
+public final class AbiFingerprint {
+    private static final String VERSIONS = "META-INF/versions/";
+
+    /**
+     * A jar as it was when it was fingerprinted, so its fingerprint is kept until
+     * it changes.
+     *
+     * @param contents A digest of the name, CRC-32 and size of every entry, from the
+     *                 jar's central directory. That notices a jar rewritten with the same
+     *                 size and modification time without reading any of its classes.
+     */
+    record Jar(Path path, long size, String contents, boolean asModule) {
+        static Jar of(Path path, boolean asModule) throws IOException {
+            var entries = new ArrayList<String>();
+            try (var zip = new ZipFile(path.toFile())) {
+                for (var entry : zip.stream().toList()) {
+                    entries.add(entry.getName() + " " + entry.getCrc() + " " + entry.getSize());
+                }
+            }
+            return new Jar(
+                    path.toAbsolutePath().normalize(),
+                    Files.size(path),
+                    ClassFileInfo.sha256(entries),
+                    asModule
+            );
+        }
+    }
+
+    private static final Map<Jar, String> JARS = new ConcurrentHashMap<>();
+
+    private AbiFingerprint() {}
+
+    /**
+     * @param output A directory of class files or a jar, as a module if it has a descriptor.
+     * @return The fingerprint of its ABI.
+     */
+    public static String of(Path output) throws IOException {
+        return of(output, true, Map.of(), new HashMap<>());
+    }
+
+    /**
+     * @param asModule Whether to read the output as a module, if it has a descriptor,
+     *                 rather than as part of the class path.
+     * @param known Jars fingerprinted before, like by an earlier build.
+     * @param used Where to put the fingerprint of the output if it is a jar.
+     */
+    static String of(Path output, boolean asModule, Map<Jar, String> known, Map<Jar, String> used) throws IOException {
+        if (Files.isDirectory(output)) {
+            var classes = new TreeMap<String, byte[]>();
+            try (var paths = Files.walk(output)) {
+                for (var path : paths.filter(Files::isRegularFile).toList()) {
+                    var name = output.relativize(path).toString().replace('\\', '/');
+                    if (name.endsWith(".class")) {
+                        classes.put(name, Files.readAllBytes(path));
+                    }
+                }
+            }
+            return fingerprint(classes, asModule);
+        }
+
+        var jar = Jar.of(output, asModule);
+        var cached = known.containsKey(jar) ? known.get(jar) : JARS.get(jar);
+        if (cached != null) {
+            used.put(jar, cached);
+            return cached;
+        }
+        var classes = new TreeMap<String, byte[]>();
+        try (var zip = new ZipFile(output.toFile())) {
+            for (var entry : zip.stream().toList()) {
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    try (var in = zip.getInputStream(entry)) {
+                        classes.put(entry.getName(), in.readAllBytes());
+                    }
+                }
+            }
+        }
+        var fingerprint = fingerprint(classes, asModule);
+        JARS.put(jar, fingerprint);
+        used.put(jar, fingerprint);
+        return fingerprint;
+    }
+
+    private static String fingerprint(TreeMap<String, byte[]> classes, boolean asModule) {
+        Set<String> exported = null;
+        var descriptor = classes.get("module-info.class");
+        if (asModule && descriptor != null) {
+            exported = ModuleDescriptor.read(ByteBuffer.wrap(descriptor)).exports().stream()
+                    .map(export -> export.source().replace('.', '/'))
+                    .collect(Collectors.toSet());
+        }
+
+        var infos = new TreeMap<String, ClassFileInfo>();
+        var entries = new HashMap<String, List<String>>();
+        for (var entry : classes.entrySet()) {
+            var name = entry.getKey();
+            if (name.equals("module-info.class")) {
+                continue;
+            }
+            var info = ClassFileInfo.read(entry.getValue(), exported != null);
+            infos.put(name, info);
+            entries.computeIfAbsent(info.name(), __ -> new ArrayList<>()).add(name);
+        }
+
+        var included = new TreeSet<String>();
+        if (exported == null) {
+            included.addAll(infos.keySet());
+        }
+        else {
+            // The public and protected members of a supertype in a package which isn't
+            // exported can still be used through the exported classes which extend it
+            var pending = new ArrayDeque<String>();
+            for (var name : infos.keySet()) {
+                if (exported.contains(packageName(name))) {
+                    included.add(name);
+                    pending.add(name);
+                }
+            }
+            while (!pending.isEmpty()) {
+                for (var supertype : infos.get(pending.poll()).supertypes()) {
+                    for (var name : entries.getOrDefault(supertype, List.of())) {
+                        if (included.add(name)) {
+                            pending.add(name);
+                        }
+                    }
+                }
+            }
+        }
+
+        var lines = new ArrayList<String>();
+        if (asModule && descriptor != null) {
+            lines.add("module-info.class " + ClassFileInfo.read(descriptor, true).abi());
+        }
+        for (var name : included) {
+            lines.add(name + " " + infos.get(name).abi());
+        }
+        return ClassFileInfo.sha256(lines);
+    }
+
+    // Versioned entries of a multi-release jar are in the same package as the rest
+    private static String packageName(String entry) {
+        if (entry.startsWith(VERSIONS)) {
+            var slash = entry.indexOf('/', VERSIONS.length());
+            entry = slash == -1 ? entry : entry.substring(slash + 1);
+        }
+        var lastSlash = entry.lastIndexOf('/');
+        return lastSlash == -1 ? "" : entry.substring(0, lastSlash);
+    }
+
+    /**
+     * @return The fingerprint of each entry of a module path, which are either
+     * modules or directories of them.
+     */
+    static List<String> ofModulePath(Path entry, Map<Jar, String> known, Map<Jar, String> used) throws IOException {
+        if (Files.isDirectory(entry) && !Files.exists(entry.resolve("module-info.class"))) {
+            var fingerprints = new ArrayList<String>();
+            try (var children = Files.list(entry)) {
+                for (var child : children.sorted().toList()) {
+                    if (Files.isDirectory(child) || child.getFileName().toString().endsWith(".jar")) {
+                        fingerprints.add(child.getFileName() + " " + of(child, true, known, used));
+                    }
+                }
+            }
+            return fingerprints;
+        }
+        return List.of(of(entry, true, known, used));
+    }
+
+    /**
+     * @return A digest of the contents of a file, or of every file in a directory.
+     */
+    static String ofContents(Path entry) throws IOException {
+        var lines = new ArrayList<String>();
+        if (Files.isDirectory(entry)) {
+            try (var paths = Files.walk(entry)) {
+                for (var path : paths.filter(Files::isRegularFile).sorted().toList()) {
+                    lines.add(entry.relativize(path) + " " + HexFormat.of().formatHex(ClassFileInfo.sha256(Files.readAllBytes(path))));
+                }
+            }
+        }
+        else {
+            lines.add(HexFormat.of().formatHex(ClassFileInfo.sha256(Files.readAllBytes(entry))));
+        }
+        return ClassFileInfo.sha256(lines);
+    }
+}
@@ -0,0 +1,214 @@
+package dev.mccue.tools.javac;
+
+import com.sun.source.util.JavacTask;
+import dev.mccue.tools.ExitStatusException;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Checks that source files compile, without writing any class files.
+ *
+ * <p>javac stops once it has attributed the source files and analyzed their flow, which
+ * is where every error comes from, and skips turning them into class files. Anything
+ * annotation processors generate is kept in memory, unless they were told to write
+ * it somewhere with {@code -s}.
+ *
+ * <pre>{@code
+ * CheckJavac.checkChanged(new JavacArguments()
+ *         ._d("build/classes")
+ *         .sourceFiles(sources));
+ * }</pre>
+ *
+ * <p>{@link #checkChanged(JavacArguments, Writer)} only checks the source files which
+ * changed since {@link IncrementalJavac} last compiled to the {@code -d} directory, and
+ * those which use what changed, against the class files already there.
+ */
+public final class CheckJavac {
+    private CheckJavac() {}
+
+    /**
+     * @param full Whether every source file was checked.
+     * @param checked The source files which were checked.
+     */
+    public record Result(boolean full, List<Path> checked) {
+    }
+
+    public static Result check(JavacArguments arguments) throws ExitStatusException {
+        return check(arguments, new PrintWriter(System.err, true));
+    }
+
+    /**
+     * @param arguments The arguments to javac. Nothing is written to {@code -d}.
+     * @param diagnostics Where to write warnings and errors.
+     * @return What was checked.
+     * @throws ExitStatusException If any source file doesn't compile.
+     */
+    public static Result check(JavacArguments arguments, Writer diagnostics) throws ExitStatusException {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        JavacTaskArguments taskArguments;
+        try (var fileManager = compiler.getStandardFileManager(null, null, null)) {
+            taskArguments = JavacTaskArguments.parse(compiler, fileManager, arguments);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return check(taskArguments, taskArguments.sourceFiles(), false, diagnostics);
+    }
+
+    public static Result checkChanged(JavacArguments arguments) throws ExitStatusException {
+        return checkChanged(arguments, new PrintWriter(System.err, true));
+    }
+
+    /**
+     * Checks everything if there is no record of an incremental compilation to
+     * {@code -d}, if a source file was removed, or if {@code module-info.java} changed.
+     *
+     * <p>Only the source files are compared to the last compilation. If the options or
+     * what is on the class path changed since then, use {@link #check(JavacArguments, Writer)}.
+     *
+     * @param arguments The arguments to javac. {@code -d} is required, and is where
+     *                  the last compilation was written. Nothing is written there.
+     * @param diagnostics Where to write warnings and errors.
+     * @return What was checked.
+     * @throws ExitStatusException If any source file checked doesn't compile.
+     */
+    public static Result checkChanged(JavacArguments arguments, Writer diagnostics) throws ExitStatusException {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        try {
+            JavacTaskArguments taskArguments;
+            try (var fileManager = compiler.getStandardFileManager(null, null, null)) {
+                taskArguments = JavacTaskArguments.parse(compiler, fileManager, arguments);
+            }
+            if (taskArguments.classOutput() == null) {
+                throw new IllegalArgumentException("Checking changed files needs the class output directory (-d) of the last compilation");
+            }
+
+            var previous = DependencyGraph.read(IncrementalJavac.stateFile(taskArguments.classOutput()));
+            if (previous == null) {
+                return check(taskArguments, taskArguments.sourceFiles(), false, diagnostics);
+            }
+
+            var paths = new TreeMap<Path, Path>();
+            var hashes = new TreeMap<Path, String>();
+            for (var source : taskArguments.sourceFiles()) {
+                var normalized = source.toAbsolutePath().normalize();
+                paths.put(normalized, source);
+                hashes.put(normalized, IncrementalJavac.hash(Files.readAllBytes(source)));
+            }
+            if (!hashes.keySet().containsAll(previous.sources().keySet())) {
+                // The class files of removed source files would still be found
+                return check(taskArguments, taskArguments.sourceFiles(), false, diagnostics);
+            }
+
+            var changed = new TreeSet<Path>();
+            var changedClasses = new HashSet<String>();
+            hashes.forEach((source, hash) -> {
+                var node = previous.sources().get(source);
+                if (node == null || !node.hash().equals(hash)) {
+                    changed.add(source);
+                    if (node != null) {
+                        node.classes().forEach(c -> changedClasses.add(c.name()));
+                    }
+                }
+            });
+            if (changed.stream().anyMatch(source -> source.getFileName().toString().equals("module-info.java"))) {
+                return check(taskArguments, taskArguments.sourceFiles(), false, diagnostics);
+            }
+            changed.addAll(previous.dependents(previous.withSubtypes(changedClasses)));
+            changed.retainAll(hashes.keySet());
+            if (changed.isEmpty()) {
+                return new Result(false, List.of());
+            }
+
+            var sources = new ArrayList<Path>();
+            changed.forEach(source -> sources.add(paths.get(source)));
+            return check(taskArguments, sources, sources.size() < hashes.size(), diagnostics);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Result check(
+            JavacTaskArguments taskArguments,
+            List<Path> sources,
+            boolean againstClassOutput,
+            Writer diagnostics
+    ) throws ExitStatusException {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        try (var fileManager = new MemoryFileManager(compiler.getStandardFileManager(null, null, null))) {
+            var options = new ArrayList<>(taskArguments.allOptions());
+            boolean moduleMode = taskArguments.sourceFiles().stream()
+                    .anyMatch(source -> source.getFileName().toString().equals("module-info.java"));
+            if (againstClassOutput && moduleMode) {
+                // A module finds the rest of its classes in its class output
+                options.add("-d");
+                options.add(taskArguments.classOutput().toString());
+                if (!sources.contains(moduleInfo(taskArguments))) {
+                    sources = new ArrayList<>(sources);
+                    sources.add(moduleInfo(taskArguments));
+                }
+            }
+
+            var errors = new int[1];
+            var standard = fileManager.standardFileManager();
+            var task = (JavacTask) compiler.getTask(
+                    diagnostics,
+                    fileManager,
+                    diagnostic -> {
+                        if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                            errors[0]++;
+                        }
+                        report(diagnostics, diagnostic);
+                    },
+                    options,
+                    null,
+                    standard.getJavaFileObjectsFromPaths(sources)
+            );
+            if (againstClassOutput && !moduleMode) {
+                var classPath = new ArrayList<Path>();
+                classPath.add(taskArguments.classOutput());
+                standard.getLocationAsPaths(StandardLocation.CLASS_PATH).forEach(classPath::add);
+                standard.setLocationFromPaths(StandardLocation.CLASS_PATH, classPath);
+            }
+
+            task.analyze();
+            if (errors[0] > 0) {
+                throw new ExitStatusException(ExitStatusException.EXIT_FAILURE);
+            }
+            return new Result(!againstClassOutput, List.copyOf(sources));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void report(Writer diagnostics, Diagnostic<? extends JavaFileObject> diagnostic) {
+        try {
+            diagnostics.write(diagnostic + System.lineSeparator());
+            diagnostics.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path moduleInfo(JavacTaskArguments taskArguments) {
+        for (var source : taskArguments.sourceFiles()) {
+            if (source.getFileName().toString().equals("module-info.java")) {
+                return source;
+            }
+        }
+        throw new IllegalStateException("No module-info.java");
+    }
+}
@@ -0,0 +1,46 @@
+package dev.mccue.tools.javac;
+
+import dev.mccue.tools.ExitStatusException;
+
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.spi.ToolProvider;
+
+/**
+ * A {@code javac} which only checks that the source files compile, using {@link CheckJavac}.
+ */
+final class CheckJavacToolProvider implements ToolProvider {
+    private final boolean changed;
+
+    CheckJavacToolProvider(boolean changed) {
+        this.changed = changed;
+    }
+
+    @Override
+    public String name() {
+        return "javac";
+    }
+
+    @Override
+    public int run(PrintWriter out, PrintWriter err, String... args) {
+        try {
+            var arguments = new JavacArguments(List.of(args));
+            if (changed) {
+                CheckJavac.checkChanged(arguments, err);
+            }
+            else {
+                CheckJavac.check(arguments, err);
+            }
+            return 0;
+        } catch (ExitStatusException e) {
+            return e.getExitStatus();
+        } catch (IllegalArgumentException e) {
+            err.println("javac: " + e.getMessage());
+            return 2;
+        } catch (UncheckedIOException e) {
+            err.println("javac: " + e.getCause());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package dev.mccue.tools.javac;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * What incremental compilation needs to know about a class file.
+ *
+ * @param name The internal name of the class, like {@code com/example/Main}.
+ * @param supertypes The internal names of its superclass and interfaces.
+ * @param references The internal names of every class it refers to.
+ * @param abi A digest of everything other classes can see or inline: the class's
+ *            flags, supertypes and signature, its non-private fields and methods,
+ *            the values of its constants, and the annotations on all of them,
+ *            including an annotation's defaults. Method bodies and private members
+ *            do not affect it.
+ */
+record ClassFileInfo(String name, List<String> supertypes, Set<String> references, String abi) {
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_SYNTHETIC = 0x1000;
+    private static final int ACC_MODULE = 0x8000;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+
+    // Class names in descriptors and generic signatures
+    private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([^;<:.\\[]+)[;<]");
+
+    static ClassFileInfo read(byte[] classFile) {
+        return read(classFile, false);
+    }
+
+    /**
+     * @param outsidePackage Whether only what classes in other packages can see should
+     *                       be part of the ABI, meaning public and protected members.
+     */
+    static ClassFileInfo read(byte[] classFile, boolean outsidePackage) {
+        var in = ByteBuffer.wrap(classFile);
+        if (in.getInt() != 0xCAFEBABE) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+        in.position(8);
+        int count = Short.toUnsignedInt(in.getShort());
+        var tags = new int[count];
+        var utf8 = new String[count];
+        var values = new Object[count];
+        var classNames = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = Byte.toUnsignedInt(in.get());
+            tags[i] = tag;
+            switch (tag) {
+                case CONSTANT_UTF8 -> {
+                    int length = Short.toUnsignedInt(in.getShort());
+                    utf8[i] = modifiedUtf8(classFile, in.position(), length);
+                    in.position(in.position() + length);
+                }
+                case CONSTANT_INTEGER -> values[i] = in.getInt();
+                case CONSTANT_FLOAT -> values[i] = in.getFloat();
+                case CONSTANT_LONG -> {
+                    values[i] = in.getLong();
+                    i++;
+                }
+                case CONSTANT_DOUBLE -> {
+                    values[i] = in.getDouble();
+                    i++;
+                }
+                case CONSTANT_CLASS, CONSTANT_STRING -> classNames[i] = Short.toUnsignedInt(in.getShort());
+                case 16, 19, 20 -> in.position(in.position() + 2);
+                case 9, 10, 11, 12, 17, 18 -> in.position(in.position() + 4);
+                case 15 -> in.position(in.position() + 3);
+                default -> throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        var references = new TreeSet<String>();
+        for (int i = 1; i < count; i++) {
+            if (tags[i] == CONSTANT_CLASS) {
+                addClass(references, utf8[classNames[i]]);
+            }
+            else if (tags[i] == CONSTANT_UTF8 && !utf8[i].isEmpty()
+                    && (utf8[i].charAt(0) == '(' || utf8[i].charAt(0) == 'L'
+                        || utf8[i].charAt(0) == '[' || utf8[i].charAt(0) == '<')) {
+                var matcher = DESCRIPTOR_CLASS.matcher(utf8[i]);
+                while (matcher.find()) {
+                    references.add(matcher.group(1));
+                }
+            }
+        }
+
+        var abi = new ArrayList<String>();
+        int access = Short.toUnsignedInt(in.getShort());
+        var name = utf8[classNames[Short.toUnsignedInt(in.getShort())]];
+        var superIndex = Short.toUnsignedInt(in.getShort());
+        var supertypes = new ArrayList<String>();
+        if (superIndex != 0) {
+            supertypes.add(utf8[classNames[superIndex]]);
+        }
+        int interfaces = Short.toUnsignedInt(in.getShort());
+        for (int i = 0; i < interfaces; i++) {
+            supertypes.add(utf8[classNames[Short.toUnsignedInt(in.getShort())]]);
+        }
+        references.remove(name);
+
+        if ((access & ACC_MODULE) != 0) {
+            // Everything in a module descriptor is visible to other modules
+            return new ClassFileInfo(name, List.of(), references, HexFormat.of().formatHex(sha256(classFile)));
+        }
+
+        abi.add("class " + access + " " + name + " " + supertypes);
+        for (var kind : List.of("field", "method")) {
+            int members = Short.toUnsignedInt(in.getShort());
+            var lines = new ArrayList<String>();
+            for (int i = 0; i < members; i++) {
+                int memberAccess = Short.toUnsignedInt(in.getShort());
+                var line = new StringBuilder(kind)
+                        .append(' ').append(memberAccess)
+                        .append(' ').append(utf8[Short.toUnsignedInt(in.getShort())])
+                        .append(' ').append(utf8[Short.toUnsignedInt(in.getShort())]);
+                int attributes = Short.toUnsignedInt(in.getShort());
+                for (int j = 0; j < attributes; j++) {
+                    var attribute = utf8[Short.toUnsignedInt(in.getShort())];
+                    int length = in.getInt();
+                    var end = in.position() + length;
+                    switch (attribute) {
+                        case "ConstantValue" -> {
+                            int index = Short.toUnsignedInt(in.getShort());
+                            var value = tags[index] == CONSTANT_STRING ? utf8[classNames[index]] : values[index];
+                            line.append(" = ").append(value);
+                        }
+                        case "Signature" -> line.append(" signature ").append(utf8[Short.toUnsignedInt(in.getShort())]);
+                        case "Exceptions" -> {
+                            int exceptions = Short.toUnsignedInt(in.getShort());
+                            line.append(" throws");
+                            for (int k = 0; k < exceptions; k++) {
+                                line.append(' ').append(utf8[classNames[Short.toUnsignedInt(in.getShort())]]);
+                            }
+                        }
+                        default -> annotations(attribute, in, utf8, values, line);
+                    }
+                    in.position(end);
+                }
+                var visible = outsidePackage
+                        ? (memberAccess & (ACC_PUBLIC | ACC_PROTECTED)) != 0
+                        : (memberAccess & ACC_PRIVATE) == 0;
+                if (visible && (memberAccess & ACC_SYNTHETIC) == 0) {
+                    lines.add(line.toString());
+                }
+            }
+            lines.sort(null);
+            abi.addAll(lines);
+        }
+
+        int attributes = Short.toUnsignedInt(in.getShort());
+        for (int i = 0; i < attributes; i++) {
+            var attribute = utf8[Short.toUnsignedInt(in.getShort())];
+            int length = in.getInt();
+            var end = in.position() + length;
+            switch (attribute) {
+                case "Signature" -> abi.add("signature " + utf8[Short.toUnsignedInt(in.getShort())]);
+                case "PermittedSubclasses" -> {
+                    int classes = Short.toUnsignedInt(in.getShort());
+                    for (int k = 0; k < classes; k++) {
+                        abi.add("permits " + utf8[classNames[Short.toUnsignedInt(in.getShort())]]);
+                    }
+                }
+                case "InnerClasses" -> {
+                    int classes = Short.toUnsignedInt(in.getShort());
+                    for (int k = 0; k < classes; k++) {
+                        var inner = Short.toUnsignedInt(in.getShort());
+                        var outer = Short.toUnsignedInt(in.getShort());
+                        in.getShort();
+                        var innerAccess = Short.toUnsignedInt(in.getShort());
+                        // Which member classes exist and how they, and this class, can be reached
+                        if ((outer != 0 && utf8[classNames[outer]].equals(name)) || utf8[classNames[inner]].equals(name)) {
+                            abi.add("inner " + innerAccess + " " + utf8[classNames[inner]]);
+                        }
+                    }
+                }
+                case "Record" -> {
+                    int components = Short.toUnsignedInt(in.getShort());
+                    for (int k = 0; k < components; k++) {
+                        var component = new StringBuilder("component")
+                                .append(' ').append(utf8[Short.toUnsignedInt(in.getShort())])
+                                .append(' ').append(utf8[Short.toUnsignedInt(in.getShort())]);
+                        int componentAttributes = Short.toUnsignedInt(in.getShort());
+                        for (int l = 0; l < componentAttributes; l++) {
+                            var componentAttribute = utf8[Short.toUnsignedInt(in.getShort())];
+                            int componentAttributeLength = in.getInt();
+                            var componentEnd = in.position() + componentAttributeLength;
+                            if (componentAttribute.equals("Signature")) {
+                                component.append(" signature ").append(utf8[Short.toUnsignedInt(in.getShort())]);
+                            }
+                            else {
+                                annotations(componentAttribute, in, utf8, values, component);
+                            }
+                            in.position(componentEnd);
+                        }
+                        abi.add(component.toString());
+                    }
+                }
+                default -> {
+                    var annotations = new StringBuilder("class");
+                    if (annotations(attribute, in, utf8, values, annotations)) {
+                        abi.add(annotations.toString());
+                    }
+                }
+            }
+            in.position(end);
+        }
+
+        return new ClassFileInfo(name, List.copyOf(supertypes), references, sha256(abi));
+    }
+
+    /**
+     * Appends the annotations in an attribute, which other classes can see through
+     * reflection or, like an annotation's defaults and meta-annotations, when compiling.
+     *
+     * @return Whether the attribute holds annotations, or marks something deprecated.
+     */
+    private static boolean annotations(String attribute, ByteBuffer in, String[] utf8, Object[] values, StringBuilder out) {
+        switch (attribute) {
+            case "Deprecated" -> out.append(" deprecated");
+            case "AnnotationDefault" -> elementValue(in, utf8, values, out.append(" default "));
+            case "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations" -> {
+                out.append(' ').append(attribute);
+                int annotations = Short.toUnsignedInt(in.getShort());
+                for (int i = 0; i < annotations; i++) {
+                    annotation(in, utf8, values, out.append(' '));
+                }
+            }
+            case "RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations" -> {
+                out.append(' ').append(attribute);
+                int parameters = Byte.toUnsignedInt(in.get());
+                for (int i = 0; i < parameters; i++) {
+                    out.append(" (");
+                    int annotations = Short.toUnsignedInt(in.getShort());
+                    for (int j = 0; j < annotations; j++) {
+                        annotation(in, utf8, values, out.append(' '));
+                    }
+                    out.append(" )");
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void annotation(ByteBuffer in, String[] utf8, Object[] values, StringBuilder out) {
+        out.append('@').append(utf8[Short.toUnsignedInt(in.getShort())]).append('(');
+        int pairs = Short.toUnsignedInt(in.getShort());
+        for (int i = 0; i < pairs; i++) {
+            out.append(i == 0 ? "" : ",").append(utf8[Short.toUnsignedInt(in.getShort())]).append('=');
+            elementValue(in, utf8, values, out);
+        }
+        out.append(')');
+    }
+
+    // Constants are written out by value, since their indices change with the rest of the class
+    private static void elementValue(ByteBuffer in, String[] utf8, Object[] values, StringBuilder out) {
+        var tag = (char) Byte.toUnsignedInt(in.get());
+        out.append(tag);
+        switch (tag) {
+            case 's' -> out.append('"').append(utf8[Short.toUnsignedInt(in.getShort())]).append('"');
+            case 'e' -> out.append(utf8[Short.toUnsignedInt(in.getShort())])
+                    .append('.').append(utf8[Short.toUnsignedInt(in.getShort())]);
+            case 'c' -> out.append(utf8[Short.toUnsignedInt(in.getShort())]);
+            case '@' -> annotation(in, utf8, values, out);
+            case '[' -> {
+                out.append('{');
+                int elements = Short.toUnsignedInt(in.getShort());
+                for (int i = 0; i < elements; i++) {
+                    out.append(i == 0 ? "" : ",");
+                    elementValue(in, utf8, values, out);
+                }
+                out.append('}');
+            }
+            default -> out.append(values[Short.toUnsignedInt(in.getShort())]);
+        }
+    }
+
+    private static void addClass(Set<String> references, String name) {
+        if (name.startsWith("[")) {
+            var matcher = DESCRIPTOR_CLASS.matcher(name);
+            while (matcher.find()) {
+                references.add(matcher.group(1));
+            }
+        }
+        else {
+            references.add(name);
+        }
+    }
+
+    // Class files use a modified UTF-8, which only differs from UTF-8 for
+    // NUL and supplementary characters
+    private static String modifiedUtf8(byte[] bytes, int offset, int length) {
+        var chars = new char[length];
+        int count = 0;
+        int end = offset + length;
+        while (offset < end) {
+            int b = bytes[offset++] & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            }
+            else if ((b & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[offset++] & 0x3F));
+            }
+            else {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((bytes[offset++] & 0x3F) << 6) | (bytes[offset++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String sha256(List<String> lines) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var line : lines) {
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package dev.mccue.tools.javac;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records, while javac runs, which files each source file is compiled to and
+ * which classes it refers to.
+ *
+ * <p>Outputs are attributed to sources through the sibling javac passes when
+ * opening each class file. References come from two places: the attributed trees,
+ * which see constants that are inlined and so leave no trace in the class file, and
+ * the constant pools of the class files, which see the owners javac chose for
+ * every member access. The packages each source file looks simple names up in are
+ * recorded as well, since a class added to one can change what a name refers to.
+ */
+final class CompilationRecorder extends ForwardingJavaFileManager<StandardJavaFileManager> implements TaskListener {
+    private final Map<Path, Set<String>> outputs;
+    private final Map<Path, Set<String>> uses;
+    private final Map<Path, Set<String>> lookups;
+    private Trees trees;
+    private Elements elements;
+    private volatile boolean processedAnnotations;
+
+    CompilationRecorder(StandardJavaFileManager fileManager) {
+        super(fileManager);
+        this.outputs = new ConcurrentHashMap<>();
+        this.uses = new ConcurrentHashMap<>();
+        this.lookups = new ConcurrentHashMap<>();
+        this.trees = null;
+        this.elements = null;
+        this.processedAnnotations = false;
+    }
+
+    StandardJavaFileManager standardFileManager() {
+        return fileManager;
+    }
+
+    void attach(JavacTask task) {
+        this.trees = Trees.instance(task);
+        this.elements = task.getElements();
+        task.addTaskListener(this);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(
+            Location location,
+            String className,
+            JavaFileObject.Kind kind,
+            FileObject sibling
+    ) throws IOException {
+        if (location == StandardLocation.CLASS_OUTPUT && sibling != null) {
+            var source = source(sibling);
+            if (source != null) {
+                outputs.computeIfAbsent(source, __ -> ConcurrentHashMap.newKeySet())
+                        .add(className.replace('.', '/') + kind.extension);
+            }
+        }
+        return super.getJavaFileForOutput(location, className, kind, sibling);
+    }
+
+    /**
+     * @return Whether any annotation processors ran.
+     */
+    boolean processedAnnotations() {
+        return processedAnnotations;
+    }
+
+    /**
+     * @return Every file written to the class output, relative to it.
+     */
+    Set<String> outputs() {
+        var all = new TreeSet<String>();
+        outputs.values().forEach(all::addAll);
+        return all;
+    }
+
+    @Override
+    public void started(TaskEvent e) {
+        if (e.getKind() == TaskEvent.Kind.ANNOTATION_PROCESSING) {
+            processedAnnotations = true;
+        }
+    }
+
+    @Override
+    public void finished(TaskEvent e) {
+        if (e.getKind() != TaskEvent.Kind.ANALYZE || e.getSourceFile() == null) {
+            return;
+        }
+        var source = source(e.getSourceFile());
+        if (source == null) {
+            return;
+        }
+        lookups.computeIfAbsent(source, __ -> lookups(e.getCompilationUnit()));
+        var sourceUses = uses.computeIfAbsent(source, __ -> ConcurrentHashMap.newKeySet());
+        var path = e.getTypeElement() == null ? null : trees.getPath(e.getTypeElement());
+        if (path == null) {
+            new References().scan(e.getCompilationUnit(), sourceUses);
+        }
+        else {
+            new References().scan(path, sourceUses);
+        }
+    }
+
+    /**
+     * @return The packages simple names are looked up in: the source file's own and
+     * those it imports on demand, in internal form.
+     */
+    private static Set<String> lookups(CompilationUnitTree unit) {
+        var packages = new TreeSet<String>();
+        packages.add(unit.getPackageName() == null ? "" : unit.getPackageName().toString().replace('.', '/'));
+        for (var anImport : unit.getImports()) {
+            if (!anImport.isStatic()
+                    && anImport.getQualifiedIdentifier() instanceof MemberSelectTree select
+                    && select.getIdentifier().contentEquals("*")) {
+                packages.add(select.getExpression().toString().replace('.', '/'));
+            }
+        }
+        return packages;
+    }
+
+    private Path source(FileObject fileObject) {
+        try {
+            return fileManager.asPath(fileObject).toAbsolutePath().normalize();
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param classOutput Where the class files were written.
+     * @param hashes The hash of each source file compiled.
+     * @return What each source file compiled to and uses.
+     */
+    Map<Path, DependencyGraph.SourceNode> nodes(Path classOutput, Map<Path, String> hashes) throws IOException {
+        var nodes = new HashMap<Path, DependencyGraph.SourceNode>();
+        for (var entry : hashes.entrySet()) {
+            var source = entry.getKey();
+            var sourceOutputs = new TreeSet<>(outputs.getOrDefault(source, Set.of()));
+            var sourceUses = new TreeSet<>(uses.getOrDefault(source, Set.of()));
+            var classes = new ArrayList<DependencyGraph.ClassNode>();
+            for (var output : sourceOutputs) {
+                if (output.endsWith(".class")) {
+                    var info = ClassFileInfo.read(Files.readAllBytes(classOutput.resolve(output)));
+                    classes.add(new DependencyGraph.ClassNode(info.name(), info.abi(), info.supertypes()));
+                    sourceUses.addAll(info.references());
+                }
+            }
+            for (var node : classes) {
+                sourceUses.remove(node.name());
+            }
+            classes.sort(Comparator.comparing(DependencyGraph.ClassNode::name));
+            nodes.put(source, new DependencyGraph.SourceNode(
+                    source,
+                    entry.getValue(),
+                    classes,
+                    new ArrayList<>(sourceOutputs),
+                    sourceUses,
+                    lookups.getOrDefault(source, Set.of())
+            ));
+        }
+        return nodes;
+    }
+
+    private final class References extends TreePathScanner<Void, Set<String>> {
+        @Override
+        public Void visitIdentifier(IdentifierTree node, Set<String> uses) {
+            add(uses);
+            return super.visitIdentifier(node, uses);
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree node, Set<String> uses) {
+            add(uses);
+            return super.visitMemberSelect(node, uses);
+        }
+
+        @Override
+        public Void visitMemberReference(MemberReferenceTree node, Set<String> uses) {
+            add(uses);
+            return super.visitMemberReference(node, uses);
+        }
+
+        private void add(Set<String> uses) {
+            var owner = owner(trees.getElement(getCurrentPath()));
+            if (owner != null) {
+                uses.add(elements.getBinaryName(owner).toString().replace('.', '/'));
+            }
+        }
+
+        private static TypeElement owner(Element element) {
+            if (element == null) {
+                return null;
+            }
+            return switch (element.getKind()) {
+                case CLASS, INTERFACE, ENUM, RECORD, ANNOTATION_TYPE -> (TypeElement) element;
+                case FIELD, ENUM_CONSTANT, METHOD, CONSTRUCTOR ->
+                        element.getEnclosingElement() instanceof TypeElement type ? type : null;
+                default -> null;
+            };
+        }
+    }
+}
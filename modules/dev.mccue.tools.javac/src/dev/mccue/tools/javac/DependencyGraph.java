@@ -0,0 +1,291 @@
+package dev.mccue.tools.javac;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * What each source file compiled to and which classes it uses, as recorded by the
+ * last compilation.
+ *
+ * <p>It is stored as text, one fact per line:
+ * <pre>
+ * fingerprint  (hash of the options and class path)
+ * jar          (as module)  (size)  (contents digest)  (ABI fingerprint)  (path)
+ * source       (hash)  (path)
+ * class        (internal name)  (ABI hash)  (supertypes, comma separated)
+ * output       (path relative to the class output)
+ * uses         (internal name)
+ * lookup       (package, in internal form)
+ * </pre>
+ * with {@code class}, {@code output}, {@code uses} and {@code lookup} lines belonging to the
+ * {@code source} before them. The {@code jar} lines save fingerprinting every jar
+ * on the class path again when none of them changed.
+ */
+final class DependencyGraph {
+    private static final String HEADER = "# dev.mccue.tools.javac dependency graph 2";
+
+    /**
+     * @param name The internal name of the class.
+     * @param abi See {@link ClassFileInfo#abi()}.
+     * @param supertypes The internal names of its superclass and interfaces.
+     */
+    record ClassNode(String name, String abi, List<String> supertypes) {
+    }
+
+    /**
+     * @param path The absolute path of the source file.
+     * @param hash A hash of its contents.
+     * @param classes The classes compiled from it.
+     * @param outputs Every file compiled from it, relative to the class output.
+     * @param uses The internal names of the classes it refers to.
+     * @param lookups The packages it finds classes in by their simple names: its own,
+     *                and those it imports on demand. A class added to one of them can
+     *                change what those names refer to.
+     */
+    record SourceNode(
+            Path path,
+            String hash,
+            List<ClassNode> classes,
+            List<String> outputs,
+            Set<String> uses,
+            Set<String> lookups
+    ) {
+        SourceNode withHash(String hash) {
+            return new SourceNode(path, hash, classes, outputs, uses, lookups);
+        }
+    }
+
+    private final String fingerprint;
+    private final Map<AbiFingerprint.Jar, String> jars;
+    private final Map<Path, SourceNode> sources;
+
+    DependencyGraph(String fingerprint, Map<AbiFingerprint.Jar, String> jars, Map<Path, SourceNode> sources) {
+        this.fingerprint = fingerprint;
+        this.jars = Map.copyOf(jars);
+        this.sources = Collections.unmodifiableMap(new TreeMap<>(sources));
+    }
+
+    String fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return The ABI fingerprints of the jars on the class and module paths.
+     */
+    Map<AbiFingerprint.Jar, String> jars() {
+        return jars;
+    }
+
+    Map<Path, SourceNode> sources() {
+        return sources;
+    }
+
+    /**
+     * @return The graph stored in the file, or {@code null} if there is none or it can't be read.
+     */
+    static DependencyGraph read(Path file) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+            return null;
+        }
+
+        String fingerprint = null;
+        var jars = new HashMap<AbiFingerprint.Jar, String>();
+        var sources = new HashMap<Path, SourceNode>();
+        SourceNode source = null;
+        try {
+            for (var line : lines.subList(1, lines.size())) {
+                var fields = line.split("\t", -1);
+                switch (fields[0]) {
+                    case "fingerprint" -> fingerprint = fields[1];
+                    case "jar" -> jars.put(
+                            new AbiFingerprint.Jar(
+                                    Path.of(fields[5]),
+                                    Long.parseLong(fields[2]),
+                                    fields[3],
+                                    Boolean.parseBoolean(fields[1])
+                            ),
+                            fields[4]
+                    );
+                    case "source" -> {
+                        source = new SourceNode(
+                                Path.of(fields[2]),
+                                fields[1],
+                                new ArrayList<>(),
+                                new ArrayList<>(),
+                                new TreeSet<>(),
+                                new TreeSet<>()
+                        );
+                        sources.put(source.path(), source);
+                    }
+                    case "class" -> source.classes().add(new ClassNode(
+                            fields[1],
+                            fields[2],
+                            fields[3].isEmpty() ? List.of() : Arrays.asList(fields[3].split(","))
+                    ));
+                    case "output" -> source.outputs().add(fields[1]);
+                    case "uses" -> source.uses().add(fields[1]);
+                    case "lookup" -> source.lookups().add(fields[1]);
+                    default -> {
+                        return null;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // Truncated or edited by hand. Starting over is always safe.
+            return null;
+        }
+        return fingerprint == null ? null : new DependencyGraph(fingerprint, jars, sources);
+    }
+
+    void write(Path file) throws IOException {
+        var text = new StringBuilder(HEADER).append('\n');
+        text.append("fingerprint\t").append(fingerprint).append('\n');
+        var sortedJars = new ArrayList<>(jars.keySet());
+        sortedJars.sort(Comparator.comparing(AbiFingerprint.Jar::path).thenComparing(AbiFingerprint.Jar::asModule));
+        for (var jar : sortedJars) {
+            text.append("jar\t").append(jar.asModule())
+                    .append('\t').append(jar.size())
+                    .append('\t').append(jar.contents())
+                    .append('\t').append(jars.get(jar))
+                    .append('\t').append(jar.path())
+                    .append('\n');
+        }
+        for (var source : sources.values()) {
+            text.append("source\t").append(source.hash()).append('\t').append(source.path()).append('\n');
+            for (var node : source.classes()) {
+                text.append("class\t").append(node.name())
+                        .append('\t').append(node.abi())
+                        .append('\t').append(String.join(",", node.supertypes()))
+                        .append('\n');
+            }
+            for (var output : source.outputs()) {
+                text.append("output\t").append(output).append('\n');
+            }
+            for (var name : source.uses()) {
+                text.append("uses\t").append(name).append('\n');
+            }
+            for (var packageName : source.lookups()) {
+                text.append("lookup\t").append(packageName).append('\n');
+            }
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temporary, text, StandardCharsets.UTF_8);
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return The ABI hash of every class, by internal name.
+     */
+    Map<String, String> abis() {
+        var abis = new HashMap<String, String>();
+        for (var source : sources.values()) {
+            for (var node : source.classes()) {
+                abis.put(node.name(), node.abi());
+            }
+        }
+        return abis;
+    }
+
+    /**
+     * @return The given classes along with every class which extends or implements
+     * one of them, directly or not. Their members are inherited, so a change to
+     * one is a change to the other.
+     */
+    Set<String> withSubtypes(Set<String> classes) {
+        var subtypes = new HashMap<String, List<String>>();
+        for (var source : sources.values()) {
+            for (var node : source.classes()) {
+                for (var supertype : node.supertypes()) {
+                    subtypes.computeIfAbsent(supertype, __ -> new ArrayList<>()).add(node.name());
+                }
+            }
+        }
+
+        var result = new HashSet<>(classes);
+        var pending = new ArrayList<>(classes);
+        while (!pending.isEmpty()) {
+            var name = pending.remove(pending.size() - 1);
+            for (var subtype : subtypes.getOrDefault(name, List.of())) {
+                if (result.add(subtype)) {
+                    pending.add(subtype);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Every source file which uses one of the classes.
+     */
+    Set<Path> dependents(Set<String> classes) {
+        var dependents = new TreeSet<Path>();
+        for (var source : sources.values()) {
+            for (var name : source.uses()) {
+                if (classes.contains(name)) {
+                    dependents.add(source.path());
+                    break;
+                }
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * @return The internal names of the classes in this graph which aren't in the other.
+     */
+    Set<String> addedSince(DependencyGraph other) {
+        var added = new HashSet<>(abis().keySet());
+        added.removeAll(other.abis().keySet());
+        return added;
+    }
+
+    /**
+     * @return Every source file which finds classes by simple name in the package of one
+     * of the classes, and so might now find one of those instead of what it used to.
+     */
+    Set<Path> shadowed(Set<String> classes) {
+        var packages = new HashSet<String>();
+        for (var name : classes) {
+            var slash = name.lastIndexOf('/');
+            packages.add(slash == -1 ? "" : name.substring(0, slash));
+        }
+        var shadowed = new TreeSet<Path>();
+        for (var source : sources.values()) {
+            for (var packageName : source.lookups()) {
+                if (packages.contains(packageName)) {
+                    shadowed.add(source.path());
+                    break;
+                }
+            }
+        }
+        return shadowed;
+    }
+}
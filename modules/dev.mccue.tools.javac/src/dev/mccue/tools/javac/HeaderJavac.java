@@ -0,0 +1,225 @@
+package dev.mccue.tools.javac;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionStatementTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreeScanner;
+import com.sun.source.util.Trees;
+import dev.mccue.tools.ExitStatusException;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles only what other modules need to compile against: class files with every
+ * signature and constant, whose methods all throw instead of doing anything.
+ *
+ * <p>Method bodies are most of the work javac does, so headers take a fraction of the
+ * time of a full compilation. A downstream module can be compiled against them as soon
+ * as they're written, while its upstream modules are still compiling in full.
+ * A deep chain of modules then takes about as long as the headers of the chain plus its
+ * slowest module, rather than every module one after the other.
+ *
+ * <pre>{@code
+ * HeaderJavac.compile(new JavacArguments()
+ *         ._d("build/core/headers")
+ *         .sourceFiles(coreSources));
+ * var core = CompletableFuture.runAsync(() -> Javac.run(arguments -> arguments
+ *         ._d("build/core/classes")
+ *         .sourceFiles(coreSources)));
+ * var app = CompletableFuture.runAsync(() -> Javac.run(arguments -> arguments
+ *         .__module_path("build/core/headers")
+ *         ._d("build/app/classes")
+ *         .sourceFiles(appSources)));
+ * }</pre>
+ *
+ * <p>Headers are only for compiling against, never for running. Annotation processors
+ * are not run, so anything they would generate is missing from the headers.
+ */
+public final class HeaderJavac {
+    private HeaderJavac() {}
+
+    public static void compile(JavacArguments arguments) throws ExitStatusException {
+        compile(arguments, new PrintWriter(System.err, true));
+    }
+
+    /**
+     * @param arguments The arguments to javac. The headers are written to {@code -d}, which is required.
+     * @param diagnostics Where to write errors. Warnings are left to the full compilation.
+     * @throws ExitStatusException If compilation failed.
+     */
+    public static void compile(JavacArguments arguments, Writer diagnostics) throws ExitStatusException {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        try (var fileManager = compiler.getStandardFileManager(null, null, null)) {
+            var taskArguments = JavacTaskArguments.parse(compiler, fileManager, arguments);
+            if (taskArguments.classOutput() == null) {
+                throw new IllegalArgumentException("Header compilation needs a class output directory (-d)");
+            }
+
+            var options = new ArrayList<String>();
+            for (var option : taskArguments.allOptions()) {
+                if (!option.startsWith("-proc:")) {
+                    options.add(option);
+                }
+            }
+            options.add("-proc:none");
+            options.add("-implicit:none");
+            options.add("-nowarn");
+            options.add("-Xlint:none");
+
+            var errors = new int[1];
+            var parse = (JavacTask) compiler.getTask(
+                    diagnostics,
+                    fileManager,
+                    diagnostic -> {
+                        if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                            errors[0]++;
+                            report(diagnostics, diagnostic);
+                        }
+                    },
+                    options,
+                    null,
+                    fileManager.getJavaFileObjectsFromPaths(taskArguments.sourceFiles())
+            );
+            var headers = new ArrayList<JavaFileObject>();
+            var positions = Trees.instance(parse).getSourcePositions();
+            for (var unit : parse.parse()) {
+                headers.add(new Header(unit, stub(unit, positions)));
+            }
+            if (errors[0] > 0) {
+                throw new ExitStatusException(ExitStatusException.EXIT_FAILURE);
+            }
+
+            options.add("-d");
+            options.add(taskArguments.classOutput().toString());
+            var compile = compiler.getTask(
+                    diagnostics,
+                    fileManager,
+                    diagnostic -> {
+                        if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                            report(diagnostics, diagnostic);
+                        }
+                    },
+                    options,
+                    null,
+                    headers
+            );
+            if (!compile.call()) {
+                throw new ExitStatusException(ExitStatusException.EXIT_FAILURE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void report(Writer diagnostics, Diagnostic<? extends JavaFileObject> diagnostic) {
+        try {
+            diagnostics.write(diagnostic + System.lineSeparator());
+            diagnostics.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The source of the compilation unit with every method and constructor body
+     * replaced by {@code throw null;}. Constructors keep any call to {@code this(...)} or
+     * {@code super(...)}, which has to come first. Line breaks are kept as well, so that
+     * errors point to the same lines as in the real source.
+     */
+    static String stub(CompilationUnitTree unit, SourcePositions positions) throws IOException {
+        var source = unit.getSourceFile().getCharContent(true).toString();
+        var bodies = new ArrayList<long[]>();
+        new TreeScanner<Void, Void>() {
+            @Override
+            public Void visitMethod(MethodTree method, Void __) {
+                var body = method.getBody();
+                if (body != null) {
+                    var start = positions.getStartPosition(unit, body) + 1;
+                    var constructorCall = constructorCall(body);
+                    if (constructorCall != null) {
+                        start = positions.getEndPosition(unit, constructorCall);
+                    }
+                    bodies.add(new long[] { start, positions.getEndPosition(unit, body) - 1 });
+                }
+                // Local and anonymous classes go with the body
+                return null;
+            }
+
+            @Override
+            public Void visitVariable(VariableTree variable, Void __) {
+                // Constants have to be kept, and other initializers don't take long
+                return null;
+            }
+
+            @Override
+            public Void visitBlock(BlockTree block, Void __) {
+                // Initializers might assign final fields
+                return null;
+            }
+        }.scan(unit, null);
+
+        var stub = new StringBuilder(source.length());
+        int copied = 0;
+        for (var body : bodies) {
+            int start = (int) body[0];
+            int end = (int) body[1];
+            if (start < copied || end < start) {
+                continue;
+            }
+            stub.append(source, copied, start).append(" throw null; ");
+            for (int i = start; i < end; i++) {
+                if (source.charAt(i) == '\n') {
+                    stub.append('\n');
+                }
+            }
+            copied = end;
+        }
+        stub.append(source, copied, source.length());
+        return stub.toString();
+    }
+
+    private static StatementTree constructorCall(BlockTree body) {
+        if (body.getStatements().isEmpty()
+                || !(body.getStatements().get(0) instanceof ExpressionStatementTree statement)
+                || !(statement.getExpression() instanceof MethodInvocationTree invocation)) {
+            return null;
+        }
+        var name = switch (invocation.getMethodSelect()) {
+            case IdentifierTree identifier -> identifier.getName().toString();
+            case MemberSelectTree select -> select.getIdentifier().toString();
+            default -> "";
+        };
+        return name.equals("this") || name.equals("super") ? statement : null;
+    }
+
+    private static final class Header extends SimpleJavaFileObject {
+        private final String content;
+
+        Header(CompilationUnitTree unit, String content) {
+            super(unit.getSourceFile().toUri(), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+}
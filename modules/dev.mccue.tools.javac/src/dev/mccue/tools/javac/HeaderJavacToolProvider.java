@@ -0,0 +1,34 @@
+package dev.mccue.tools.javac;
+
+import dev.mccue.tools.ExitStatusException;
+
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.spi.ToolProvider;
+
+/**
+ * A {@code javac} which only compiles headers, using {@link HeaderJavac}.
+ */
+final class HeaderJavacToolProvider implements ToolProvider {
+    @Override
+    public String name() {
+        return "javac";
+    }
+
+    @Override
+    public int run(PrintWriter out, PrintWriter err, String... args) {
+        try {
+            HeaderJavac.compile(new JavacArguments(List.of(args)), err);
+            return 0;
+        } catch (ExitStatusException e) {
+            return e.getExitStatus();
+        } catch (IllegalArgumentException e) {
+            err.println("javac: " + e.getMessage());
+            return 2;
+        } catch (UncheckedIOException e) {
+            err.println("javac: " + e.getCause());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package dev.mccue.tools.javac;
+
+import dev.mccue.tools.ExitStatusException;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles with javac in-process, keeping the class files and resources it produces in memory
+ * instead of writing them to the {@code -d} directory.
+ *
+ * <p>The result maps paths relative to the class output, like {@code module-info.class} or
+ * {@code com/example/Main.class}, to their contents. That is also how those files are named
+ * inside of a jar, so the result can be handed directly to
+ * {@code dev.mccue.tools.jar.JarWriter} to package a module without an intermediate directory.
+ *
+ * <p>Only one class output location is supported, so compiling several modules at once
+ * with {@code --module-source-path} is not.
+ */
+public final class InMemoryJavac {
+    private InMemoryJavac() {}
+
+    public static Map<String, byte[]> compile(JavacArguments arguments) throws ExitStatusException {
+        return compile(arguments, new PrintWriter(System.err, true));
+    }
+
+    /**
+     * @param arguments The arguments to javac. {@code -d} is ignored.
+     * @param diagnostics Where to write warnings and errors.
+     * @return The compiled files, sorted by path.
+     * @throws ExitStatusException If compilation failed.
+     */
+    public static Map<String, byte[]> compile(JavacArguments arguments, Writer diagnostics) throws ExitStatusException {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        try (var fileManager = new MemoryFileManager(compiler.getStandardFileManager(null, null, null))) {
+            var taskArguments = JavacTaskArguments.parse(compiler, fileManager, arguments);
+            var task = compiler.getTask(
+                    diagnostics,
+                    fileManager,
+                    null,
+                    taskArguments.allOptions(),
+                    null,
+                    fileManager.standardFileManager().getJavaFileObjectsFromPaths(taskArguments.sourceFiles())
+            );
+            if (!task.call()) {
+                throw new ExitStatusException(ExitStatusException.EXIT_FAILURE);
+            }
+            return Collections.unmodifiableMap(new TreeMap<>(fileManager.files()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
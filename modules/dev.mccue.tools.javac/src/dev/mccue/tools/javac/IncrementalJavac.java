@@ -0,0 +1,512 @@
+package dev.mccue.tools.javac;
+
+import com.sun.source.util.JavacTask;
+import dev.mccue.tools.ExitStatusException;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compiles with javac in-process, recompiling only the source files which changed
+ * since the last time, and those affected by the changes.
+ *
+ * <p>Each compilation records which classes every source file produced, which
+ * classes it refers to, and a digest of what other classes can see of each of
+ * its classes. That is kept next to the {@code -d} directory, in a file named
+ * after it with {@code .javac-state} on the end. On the next run:
+ *
+ * <ul>
+ *     <li>Source files which were removed have their class files deleted.</li>
+ *     <li>Source files which were added or changed are recompiled.</li>
+ *     <li>If that changed the visible parts of a class, like a method's signature
+ *     or a constant's value, the source files which use that class or one of its
+ *     subclasses are recompiled as well, and so on until nothing else changes.</li>
+ *     <li>If a class was added, the source files in its package, and those which
+ *     import its package on demand, are recompiled too, since a simple name they
+ *     use might now mean that class.</li>
+ * </ul>
+ *
+ * <p>Everything is compiled if there is no record of the last compilation, or if
+ * anything else changed: the options, the JDK, or the {@link AbiFingerprint ABI} of
+ * something on the class or module path. When nothing changed, javac doesn't run.
+ * Annotation processors can generate code from any source file, so using them also
+ * compiles everything every time.
+ *
+ * <p>Like {@link InMemoryJavac}, compiling several modules at once with
+ * {@code --module-source-path} is not supported.
+ */
+public final class IncrementalJavac {
+    private static final int MAX_ROUNDS = 10;
+
+    private static final Set<String> PATH_OPTIONS = Set.of(
+            "--class-path", "-classpath", "-cp",
+            "--module-path", "-p",
+            "--upgrade-module-path",
+            "--processor-path", "-processorpath",
+            "--processor-module-path"
+    );
+
+    private static final Set<String> MODULE_PATH_OPTIONS = Set.of(
+            "--module-path", "-p",
+            "--upgrade-module-path"
+    );
+
+    private static final Set<String> PROCESSOR_OPTIONS = Set.of(
+            "-processor",
+            "--processor-path", "-processorpath",
+            "--processor-module-path"
+    );
+
+    private IncrementalJavac() {}
+
+    /**
+     * @param full Whether everything was compiled.
+     * @param compiled The source files which were compiled.
+     * @param removed The source files which were removed since the last compilation.
+     * @param rounds How many times javac ran. Zero if nothing had changed.
+     */
+    public record Result(boolean full, List<Path> compiled, List<Path> removed, int rounds) {
+    }
+
+    public static Result compile(JavacArguments arguments) throws ExitStatusException {
+        return compile(arguments, new PrintWriter(System.err, true));
+    }
+
+    /**
+     * @param arguments The arguments to javac. {@code -d} is required.
+     * @param diagnostics Where to write warnings and errors.
+     * @return What was compiled.
+     * @throws ExitStatusException If compilation failed.
+     */
+    public static Result compile(JavacArguments arguments, Writer diagnostics) throws ExitStatusException {
+        return compile(arguments, diagnostics, null);
+    }
+
+    /**
+     * When everything has to be compiled, like after changing the class path, the source
+     * files are split into partitions that don't depend on each other, using what the
+     * last compilation recorded, and those are compiled at the same time on the pool.
+     * The class files are the same as when compiling everything at once.
+     *
+     * <p>Only the class path is partitioned, not a module, and not when annotation
+     * processors are used.
+     *
+     * @param arguments The arguments to javac. {@code -d} is required.
+     * @param diagnostics Where to write warnings and errors.
+     * @param pool Where to compile partitions, or {@code null} to compile everything at once.
+     * @return What was compiled.
+     * @throws ExitStatusException If compilation failed.
+     */
+    public static Result compile(
+            JavacArguments arguments,
+            Writer diagnostics,
+            ForkJoinPool pool
+    ) throws ExitStatusException {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        try {
+            JavacTaskArguments taskArguments;
+            try (var fileManager = compiler.getStandardFileManager(null, null, null)) {
+                taskArguments = JavacTaskArguments.parse(compiler, fileManager, arguments);
+            }
+            if (taskArguments.classOutput() == null) {
+                throw new IllegalArgumentException("Incremental compilation needs a class output directory (-d)");
+            }
+            if (taskArguments.allOptions().contains("--module-source-path")) {
+                throw new IllegalArgumentException("Incremental compilation of several modules at once is not supported");
+            }
+            return new Compilation(compiler, taskArguments, diagnostics, pool).run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return Where the record of compiling to a class output directory is kept.
+     */
+    static Path stateFile(Path classOutput) {
+        var absolute = classOutput.toAbsolutePath().normalize();
+        return absolute.resolveSibling(absolute.getFileName() + ".javac-state");
+    }
+
+    private static final class Compilation {
+        private final JavaCompiler compiler;
+        private final JavacTaskArguments taskArguments;
+        private final Writer diagnostics;
+        private final ForkJoinPool pool;
+        private final Path classOutput;
+        private final Path stateFile;
+        private final Map<Path, String> hashes;
+        private final boolean moduleMode;
+        private final boolean processors;
+        private final Map<AbiFingerprint.Jar, String> jars;
+        private String fingerprint;
+
+        Compilation(
+                JavaCompiler compiler,
+                JavacTaskArguments taskArguments,
+                Writer diagnostics,
+                ForkJoinPool pool
+        ) throws IOException {
+            this.compiler = compiler;
+            this.taskArguments = taskArguments;
+            this.diagnostics = diagnostics;
+            this.pool = pool;
+            this.classOutput = taskArguments.classOutput().toAbsolutePath().normalize();
+            this.stateFile = stateFile(classOutput);
+            this.hashes = new TreeMap<>();
+            for (var source : taskArguments.sourceFiles()) {
+                hashes.put(source.toAbsolutePath().normalize(), hash(Files.readAllBytes(source)));
+            }
+            this.moduleMode = hashes.keySet().stream()
+                    .anyMatch(source -> source.getFileName().toString().equals("module-info.java"));
+            this.processors = taskArguments.allOptions().stream().anyMatch(option ->
+                    PROCESSOR_OPTIONS.contains(option)
+                    || (option.startsWith("-proc:") && !option.equals("-proc:none"))
+            );
+            this.jars = new HashMap<>();
+            this.fingerprint = null;
+        }
+
+        Result run() throws IOException, ExitStatusException {
+            var previous = DependencyGraph.read(stateFile);
+            this.fingerprint = fingerprint(previous == null ? Map.of() : previous.jars());
+            if (previous == null || !previous.fingerprint().equals(fingerprint) || processors) {
+                return full(previous);
+            }
+
+            var nodes = new HashMap<>(previous.sources());
+            var removed = new TreeSet<Path>();
+            var removedClasses = new HashSet<String>();
+            for (var source : previous.sources().values()) {
+                if (!hashes.containsKey(source.path())) {
+                    removed.add(source.path());
+                    source.classes().forEach(node -> removedClasses.add(node.name()));
+                    deleteOutputs(source);
+                    nodes.remove(source.path());
+                }
+            }
+
+            var toCompile = new TreeSet<Path>();
+            hashes.forEach((source, hash) -> {
+                var node = nodes.get(source);
+                if (node == null || !node.hash().equals(hash) || missingOutputs(node)) {
+                    toCompile.add(source);
+                }
+            });
+            if (toCompile.stream().anyMatch(source -> source.getFileName().toString().equals("module-info.java"))) {
+                // What a module reads and exports matters to every class in it
+                return full(previous);
+            }
+            if (toCompile.size() == hashes.size()) {
+                return full(previous);
+            }
+            toCompile.addAll(previous.dependents(previous.withSubtypes(removedClasses)));
+            toCompile.retainAll(hashes.keySet());
+
+            if (toCompile.isEmpty()) {
+                if (!removed.isEmpty()) {
+                    graph(nodes).write(stateFile);
+                }
+                return new Result(false, List.of(), List.copyOf(removed), 0);
+            }
+
+            var compiled = new TreeSet<Path>();
+            int rounds = 0;
+            while (!toCompile.isEmpty()) {
+                if (++rounds > MAX_ROUNDS) {
+                    return full(graph(nodes));
+                }
+
+                var before = graph(nodes);
+                var oldAbis = new HashMap<String, String>();
+                for (var source : toCompile) {
+                    var node = nodes.get(source);
+                    if (node != null) {
+                        node.classes().forEach(c -> oldAbis.put(c.name(), c.abi()));
+                        deleteOutputs(node);
+                    }
+                }
+
+                try (var recorder = new CompilationRecorder(compiler.getStandardFileManager(null, null, null))) {
+                    if (!compile(recorder, toCompile, diagnostics)) {
+                        fail(nodes, toCompile);
+                    }
+                    var sourceHashes = new HashMap<Path, String>();
+                    toCompile.forEach(source -> sourceHashes.put(source, hashes.get(source)));
+                    nodes.putAll(recorder.nodes(classOutput, sourceHashes));
+                    if (recorder.processedAnnotations()) {
+                        Files.deleteIfExists(stateFile);
+                        return full(null);
+                    }
+                }
+                compiled.addAll(toCompile);
+
+                var changedApi = new HashSet<String>(oldAbis.keySet());
+                for (var source : toCompile) {
+                    for (var node : nodes.get(source).classes()) {
+                        if (node.abi().equals(oldAbis.get(node.name()))) {
+                            changedApi.remove(node.name());
+                        }
+                        else {
+                            changedApi.add(node.name());
+                        }
+                    }
+                }
+
+                var after = graph(nodes);
+                var next = new TreeSet<Path>(before.dependents(before.withSubtypes(changedApi)));
+                next.addAll(after.dependents(after.withSubtypes(changedApi)));
+                // A new class can hide one that a simple name used to mean, which no
+                // recorded use would show
+                next.addAll(after.shadowed(after.addedSince(before)));
+                next.removeAll(toCompile);
+                next.retainAll(hashes.keySet());
+                toCompile.clear();
+                toCompile.addAll(next);
+            }
+
+            graph(nodes).write(stateFile);
+            return new Result(false, List.copyOf(compiled), List.copyOf(removed), rounds);
+        }
+
+        private Result full(DependencyGraph previous) throws IOException, ExitStatusException {
+            if (previous != null) {
+                for (var source : previous.sources().values()) {
+                    deleteOutputs(source);
+                }
+            }
+
+            var removed = new TreeSet<Path>();
+            if (previous != null) {
+                removed.addAll(previous.sources().keySet());
+                removed.removeAll(hashes.keySet());
+            }
+
+            var waves = pool == null || previous == null || moduleMode || processors
+                    ? null
+                    : SourcePartitions.plan(previous, hashes, pool.getParallelism());
+            if (waves != null) {
+                var nodes = compile(waves);
+                if (nodes != null) {
+                    graph(nodes).write(stateFile);
+                    var tasks = waves.stream().mapToInt(List::size).sum();
+                    return new Result(true, List.copyOf(hashes.keySet()), List.copyOf(removed), tasks);
+                }
+            }
+
+            try (var recorder = new CompilationRecorder(compiler.getStandardFileManager(null, null, null))) {
+                if (!compile(recorder, hashes.keySet(), diagnostics)) {
+                    fail(new HashMap<>(), hashes.keySet());
+                }
+                if (recorder.processedAnnotations()) {
+                    Files.deleteIfExists(stateFile);
+                }
+                else {
+                    graph(recorder.nodes(classOutput, hashes)).write(stateFile);
+                }
+            }
+            return new Result(true, List.copyOf(hashes.keySet()), List.copyOf(removed), 1);
+        }
+
+        private record Partition(boolean success, String diagnostics, Map<Path, DependencyGraph.SourceNode> nodes) {
+        }
+
+        /**
+         * Compiles each wave of partitions in turn, with the partitions in a wave at the same time.
+         *
+         * @return What each source file compiled to, or {@code null} if a partition failed.
+         * Everything compiled is deleted then, so that compiling everything at once can
+         * report the errors the usual way.
+         */
+        private Map<Path, DependencyGraph.SourceNode> compile(List<List<List<Path>>> waves) throws IOException {
+            var nodes = new HashMap<Path, DependencyGraph.SourceNode>();
+            for (var wave : waves) {
+                List<Partition> partitions;
+                try {
+                    partitions = pool.submit(() -> wave.parallelStream().map(sources -> {
+                        var output = new StringWriter();
+                        try (var recorder = new CompilationRecorder(compiler.getStandardFileManager(null, null, null))) {
+                            var sourceHashes = new HashMap<Path, String>();
+                            sources.forEach(source -> sourceHashes.put(source, hashes.get(source)));
+                            if (!compile(recorder, sources, output)) {
+                                for (var written : recorder.outputs()) {
+                                    Files.deleteIfExists(classOutput.resolve(written));
+                                }
+                                return new Partition(false, output.toString(), Map.of());
+                            }
+                            return new Partition(true, output.toString(), recorder.nodes(classOutput, sourceHashes));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }).toList()).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted compiling " + classOutput, e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof UncheckedIOException unchecked) {
+                        throw unchecked.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+
+                for (var partition : partitions) {
+                    nodes.putAll(partition.nodes());
+                }
+                if (partitions.stream().anyMatch(partition -> !partition.success())) {
+                    for (var node : nodes.values()) {
+                        deleteOutputs(node);
+                    }
+                    return null;
+                }
+                for (var partition : partitions) {
+                    diagnostics.write(partition.diagnostics());
+                }
+                diagnostics.flush();
+            }
+            return nodes;
+        }
+
+        private boolean compile(
+                CompilationRecorder recorder,
+                Collection<Path> sources,
+                Writer diagnostics
+        ) throws IOException {
+            var options = new ArrayList<>(taskArguments.allOptions());
+            options.add("-d");
+            options.add(classOutput.toString());
+            if (sources.size() < hashes.size() && options.stream().noneMatch(option -> option.startsWith("-implicit:"))) {
+                // Anything else javac finds on the source path is already compiled
+                options.add("-implicit:none");
+            }
+
+            var standard = recorder.standardFileManager();
+            var task = (JavacTask) compiler.getTask(
+                    diagnostics,
+                    recorder,
+                    null,
+                    options,
+                    null,
+                    standard.getJavaFileObjectsFromPaths(sources)
+            );
+            if (!moduleMode) {
+                // The classes which weren't recompiled are found where they were left
+                var classPath = new ArrayList<Path>();
+                classPath.add(classOutput);
+                standard.getLocationAsPaths(StandardLocation.CLASS_PATH).forEach(classPath::add);
+                standard.setLocationFromPaths(StandardLocation.CLASS_PATH, classPath);
+            }
+            recorder.attach(task);
+            return task.call();
+        }
+
+        // Keeps what was known about the sources which failed to compile, with a hash
+        // that won't match, so they are tried again along with anything else that
+        // depended on what they used to be.
+        private void fail(Map<Path, DependencyGraph.SourceNode> nodes, Collection<Path> sources)
+                throws IOException, ExitStatusException {
+            for (var source : sources) {
+                var node = nodes.get(source);
+                nodes.put(source, node == null
+                        ? new DependencyGraph.SourceNode(source, "", List.of(), List.of(), Set.of(), Set.of())
+                        : node.withHash(""));
+            }
+            graph(nodes).write(stateFile);
+            throw new ExitStatusException(ExitStatusException.EXIT_FAILURE);
+        }
+
+        private DependencyGraph graph(Map<Path, DependencyGraph.SourceNode> nodes) {
+            return new DependencyGraph(fingerprint, jars, nodes);
+        }
+
+        // Like when the class output was cleaned but this wasn't
+        private boolean missingOutputs(DependencyGraph.SourceNode source) {
+            for (var output : source.outputs()) {
+                if (!Files.exists(classOutput.resolve(output))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void deleteOutputs(DependencyGraph.SourceNode source) throws IOException {
+            for (var output : source.outputs()) {
+                Files.deleteIfExists(classOutput.resolve(output));
+            }
+        }
+
+        // Changing any of these could change what every source file compiles to. What is
+        // compiled against only matters as far as its ABI, so that a change to the body of a
+        // method in an upstream module doesn't compile everything downstream again.
+        private String fingerprint(Map<AbiFingerprint.Jar, String> known) throws IOException {
+            var lines = new ArrayList<String>();
+            lines.add("java " + Runtime.version());
+            lines.add("output " + classOutput);
+            var options = taskArguments.allOptions();
+            for (int i = 0; i < options.size(); i++) {
+                var option = options.get(i);
+                lines.add("option " + option);
+                if (PATH_OPTIONS.contains(option) && i + 1 < options.size()) {
+                    for (var entry : options.get(i + 1).split(File.pathSeparator)) {
+                        if (!entry.isEmpty()) {
+                            fingerprint(option, Path.of(entry).toAbsolutePath().normalize(), known, lines);
+                        }
+                    }
+                }
+            }
+            return ClassFileInfo.sha256(lines);
+        }
+
+        private void fingerprint(
+                String option,
+                Path entry,
+                Map<AbiFingerprint.Jar, String> known,
+                List<String> lines
+        ) throws IOException {
+            if (entry.equals(classOutput)) {
+                return;
+            }
+            if (!Files.exists(entry)) {
+                lines.add("missing " + entry);
+            }
+            else if (PROCESSOR_OPTIONS.contains(option)) {
+                lines.add("contents " + entry + " " + AbiFingerprint.ofContents(entry));
+            }
+            else if (MODULE_PATH_OPTIONS.contains(option)) {
+                for (var fingerprint : AbiFingerprint.ofModulePath(entry, known, jars)) {
+                    lines.add("modules " + entry + " " + fingerprint);
+                }
+            }
+            else {
+                lines.add("abi " + entry + " " + AbiFingerprint.of(entry, false, known, jars));
+            }
+        }
+    }
+
+    /**
+     * @return How the contents of a source file are told apart in the state file.
+     */
+    static String hash(byte[] contents) {
+        return HexFormat.of().formatHex(ClassFileInfo.sha256(contents));
+    }
+}
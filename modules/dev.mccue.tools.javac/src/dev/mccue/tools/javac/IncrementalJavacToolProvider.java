@@ -0,0 +1,41 @@
+package dev.mccue.tools.javac;
+
+import dev.mccue.tools.ExitStatusException;
+
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.spi.ToolProvider;
+
+/**
+ * A {@code javac} which only recompiles what changed, using {@link IncrementalJavac}.
+ */
+final class IncrementalJavacToolProvider implements ToolProvider {
+    private final ForkJoinPool pool;
+
+    IncrementalJavacToolProvider(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public String name() {
+        return "javac";
+    }
+
+    @Override
+    public int run(PrintWriter out, PrintWriter err, String... args) {
+        try {
+            IncrementalJavac.compile(new JavacArguments(List.of(args)), err, pool);
+            return 0;
+        } catch (ExitStatusException e) {
+            return e.getExitStatus();
+        } catch (IllegalArgumentException e) {
+            err.println("javac: " + e.getMessage());
+            return 2;
+        } catch (UncheckedIOException e) {
+            err.println("javac: " + e.getCause());
+            return 1;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import dev.mccue.tools.AbstractToolRunner;
 import dev.mccue.tools.ExitStatusException;
 import dev.mccue.tools.Tool;
 
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.spi.ToolProvider;
 
@@ -19,6 +20,96 @@ public final class Javac extends AbstractToolRunner<Javac, JavacArguments> {
         );
     }
 
+    /**
+     * A {@code javac} which only recompiles the source files which changed since it
+     * last compiled to the same {@code -d} directory, and those affected by the changes.
+     *
+     * <pre>{@code
+     * Javac.run(Javac.incrementalTool(), arguments -> arguments
+     *         ._d("build/classes")
+     *         .sourceFiles(sources));
+     * }</pre>
+     *
+     * @see IncrementalJavac
+     */
+    public static Tool incrementalTool() {
+        return Tool.ofToolProvider(new IncrementalJavacToolProvider(null));
+    }
+
+    /**
+     * An {@link #incrementalTool()} which, when it has to compile everything, compiles
+     * independent partitions of the source files at the same time on the given pool.
+     *
+     * @see IncrementalJavac#compile(JavacArguments, java.io.Writer, ForkJoinPool)
+     */
+    public static Tool incrementalTool(ForkJoinPool pool) {
+        return Tool.ofToolProvider(new IncrementalJavacToolProvider(pool));
+    }
+
+    /**
+     * A {@code javac} which only compiles headers: class files other modules can compile
+     * against, without any method bodies.
+     *
+     * @see HeaderJavac
+     */
+    public static Tool headerTool() {
+        return Tool.ofToolProvider(new HeaderJavacToolProvider());
+    }
+
+    /**
+     * A {@code javac} which only checks that the source files compile, without writing
+     * any class files.
+     *
+     * @see CheckJavac#check(JavacArguments, java.io.Writer)
+     */
+    public static Tool checkTool() {
+        return Tool.ofToolProvider(new CheckJavacToolProvider(false));
+    }
+
+    /**
+     * A {@link #checkTool()} which only checks the source files which changed since
+     * {@link #incrementalTool()} last compiled to {@code -d}, and those which use them.
+     *
+     * @see CheckJavac#checkChanged(JavacArguments, java.io.Writer)
+     */
+    public static Tool checkChangedTool() {
+        return Tool.ofToolProvider(new CheckJavacToolProvider(true));
+    }
+
+    /**
+     * A {@code javac} which records where each compilation spent its time and hands
+     * the profile to the given consumer, whether or not compilation succeeded.
+     *
+     * <pre>{@code
+     * Javac.run(Javac.profilingTool(profile -> System.out.print(profile.report())), arguments -> arguments
+     *         ._d("build/classes")
+     *         .sourceFiles(sources));
+     * }</pre>
+     *
+     * @see JavacProfiler
+     */
+    public static Tool profilingTool(Consumer<? super JavacProfile> profiles) {
+        return Tool.ofToolProvider(new ProfilingJavacToolProvider(profiles));
+    }
+
+    /**
+     * A {@code javac} which hands each diagnostic to the given consumer as it is reported,
+     * instead of printing it.
+     *
+     * @see StreamingJavac
+     */
+    public static Tool streamingTool(Consumer<? super JavacDiagnostic> diagnostics) {
+        return Tool.ofToolProvider(new StreamingJavacToolProvider(diagnostics, Integer.MAX_VALUE));
+    }
+
+    /**
+     * A {@link #streamingTool(Consumer)} which stops compiling once it has reported
+     * {@code maxErrors} errors.
+     */
+    public static Tool streamingTool(Consumer<? super JavacDiagnostic> diagnostics, int maxErrors) {
+        return Tool.ofToolProvider(new StreamingJavacToolProvider(diagnostics, maxErrors));
+    }
+
     public static Javac runner() {
         return new Javac();
     }
@@ -0,0 +1,58 @@
+package dev.mccue.tools.javac;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.util.Locale;
+
+/**
+ * A warning, error or note from javac.
+ *
+ * @param kind What sort of diagnostic it is.
+ * @param code javac's code for the message, like {@code compiler.err.cant.resolve.location},
+ *             or {@code null} if there isn't one.
+ * @param file The file it is about, or {@code null} if it isn't about one.
+ * @param line The line it is about, starting from 1, or -1 if it isn't about one.
+ * @param column The column it is about, starting from 1, or -1 if it isn't about one.
+ * @param message The message, in the default locale.
+ */
+public record JavacDiagnostic(
+        Diagnostic.Kind kind,
+        String code,
+        String file,
+        long line,
+        long column,
+        String message
+) {
+    static JavacDiagnostic of(Diagnostic<? extends JavaFileObject> diagnostic) {
+        var source = diagnostic.getSource();
+        return new JavacDiagnostic(
+                diagnostic.getKind(),
+                diagnostic.getCode(),
+                source == null ? null : source.getName(),
+                diagnostic.getLineNumber() == Diagnostic.NOPOS ? -1 : diagnostic.getLineNumber(),
+                diagnostic.getColumnNumber() == Diagnostic.NOPOS ? -1 : diagnostic.getColumnNumber(),
+                diagnostic.getMessage(Locale.getDefault())
+        );
+    }
+
+    /**
+     * @return The diagnostic the way javac would print it, without the source line.
+     */
+    @Override
+    public String toString() {
+        var prefix = switch (kind) {
+            case ERROR -> "error: ";
+            case WARNING, MANDATORY_WARNING -> "warning: ";
+            case NOTE, OTHER -> "";
+        };
+        if (file == null) {
+            return prefix + message;
+        }
+        else if (line == -1) {
+            return file + ": " + prefix + message;
+        }
+        else {
+            return file + ":" + line + ": " + prefix + message;
+        }
+    }
+}
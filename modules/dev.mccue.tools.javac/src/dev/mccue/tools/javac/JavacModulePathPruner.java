@@ -0,0 +1,134 @@
+package dev.mccue.tools.javac;
+
+import dev.mccue.tools.java.ModulePathPruner;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Cuts the module path given to javac down to the modules the code being compiled
+ * needs, using {@link ModulePathPruner}.
+ *
+ * <pre>{@code
+ * Javac.run(JavacModulePathPruner.prune(new JavacArguments()
+ *         .__module_path(Path.of("libs"))
+ *         ._d("build/classes")
+ *         .sourceFiles(sources)));
+ * }</pre>
+ *
+ * <p>The modules needed are what the modules being compiled require, and whatever is
+ * given with {@code --add-modules}.
+ */
+public final class JavacModulePathPruner {
+    private JavacModulePathPruner() {}
+
+    /**
+     * @param arguments Arguments to javac.
+     * @return The same arguments, with only the modules which would be resolved left on
+     * the module path. They are returned unchanged if they add every module on the module
+     * path, if no module is being compiled and none are added, or if some of the modules
+     * being compiled are only found by javac while compiling.
+     */
+    public static JavacArguments prune(JavacArguments arguments) {
+        if (arguments.stream().anyMatch(argument -> argument.startsWith("@"))) {
+            return arguments;
+        }
+
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        try (var fileManager = compiler.getStandardFileManager(null, null, null)) {
+            var taskArguments = JavacTaskArguments.parse(compiler, fileManager, arguments);
+            var options = taskArguments.allOptions();
+            if (ModuleCompilationPlan.values(options, "--module-path", "-p").size() != 1) {
+                return arguments;
+            }
+
+            var roots = new LinkedHashSet<String>();
+            for (var value : ModuleCompilationPlan.values(options, "--add-modules")) {
+                for (var module : value.split(",")) {
+                    if (module.equals("ALL-MODULE-PATH")) {
+                        return arguments;
+                    }
+                    else if (!module.isBlank() && !module.startsWith("ALL-")) {
+                        roots.add(module);
+                    }
+                }
+            }
+
+            var moduleSourcePaths = ModuleCompilationPlan.values(options, "--module-source-path");
+            if (moduleSourcePaths.isEmpty()) {
+                for (var source : taskArguments.sourceFiles()) {
+                    if (source.getFileName().toString().equals("module-info.java")) {
+                        roots.addAll(ModuleCompilationPlan.requires(compiler, fileManager, source));
+                    }
+                }
+            }
+            else {
+                var modules = new ArrayList<String>();
+                for (var value : ModuleCompilationPlan.values(options, "--module", "-m")) {
+                    for (var module : value.split(",")) {
+                        if (!module.isBlank()) {
+                            modules.add(module.trim());
+                        }
+                    }
+                }
+                if (modules.isEmpty()) {
+                    return arguments;
+                }
+                for (var module : modules) {
+                    var descriptor = ModuleCompilationPlan.directories(moduleSourcePaths, module).stream()
+                            .map(directory -> directory.resolve("module-info.java"))
+                            .filter(Files::isRegularFile)
+                            .findFirst();
+                    if (descriptor.isEmpty()) {
+                        return arguments;
+                    }
+                    roots.addAll(ModuleCompilationPlan.requires(compiler, fileManager, descriptor.get()));
+                }
+                roots.removeAll(modules);
+                for (var required : roots) {
+                    // javac would compile it from source, along with whatever it requires
+                    if (ModuleCompilationPlan.directories(moduleSourcePaths, required).stream()
+                            .anyMatch(directory -> Files.isRegularFile(directory.resolve("module-info.java")))) {
+                        return arguments;
+                    }
+                }
+            }
+            if (roots.isEmpty()) {
+                return arguments;
+            }
+
+            var pruned = new JavacArguments(arguments);
+            for (int i = 0; i < pruned.size(); i++) {
+                var argument = pruned.get(i);
+                if ((argument.equals("--module-path") || argument.equals("-p")) && i + 1 < pruned.size()) {
+                    var modulePath = ModulePathPruner.prune(pruned.get(i + 1), roots, false);
+                    if (modulePath.isEmpty()) {
+                        pruned.subList(i, i + 2).clear();
+                    }
+                    else {
+                        pruned.set(i + 1, modulePath);
+                    }
+                    break;
+                }
+                else if (argument.startsWith("--module-path=")) {
+                    var modulePath = ModulePathPruner.prune(argument.substring("--module-path=".length()), roots, false);
+                    if (modulePath.isEmpty()) {
+                        pruned.remove(i);
+                    }
+                    else {
+                        pruned.set(i, "--module-path=" + modulePath);
+                    }
+                    break;
+                }
+            }
+            return pruned;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
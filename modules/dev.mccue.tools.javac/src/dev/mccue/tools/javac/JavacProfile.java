@@ -0,0 +1,96 @@
+package dev.mccue.tools.javac;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Where javac spent its time, as recorded by {@link JavacProfiler}.
+ *
+ * <p>Phases overlap: annotation processing includes parsing and entering the files
+ * processors generate, so the phases can add up to more than the total.
+ *
+ * @param success Whether compilation succeeded.
+ * @param total How long compilation took, from start to finish.
+ * @param phases How long was spent in each phase, like {@code PARSE} or {@code ANALYZE}.
+ * @param files How long each source file took to parse, analyze and generate.
+ * @param processors How long each annotation processor took in each round.
+ * @param rounds How many rounds of annotation processing there were.
+ */
+public record JavacProfile(
+        boolean success,
+        Duration total,
+        Map<String, Duration> phases,
+        Map<String, Duration> files,
+        List<ProcessorTime> processors,
+        int rounds
+) {
+    private static final int SLOWEST_FILES = 10;
+
+    /**
+     * @param processor The class name of the processor.
+     * @param round The round, starting from 1, or 0 for initializing the processor.
+     * @param time How long it took.
+     */
+    public record ProcessorTime(String processor, int round, Duration time) {
+    }
+
+    /**
+     * @return The time each processor took over every round.
+     */
+    public Map<String, Duration> processorTotals() {
+        var totals = new TreeMap<String, Duration>();
+        for (var time : processors) {
+            totals.merge(time.processor(), time.time(), Duration::plus);
+        }
+        return totals;
+    }
+
+    /**
+     * @return The phases, processors and the slowest files, each slowest first.
+     */
+    public String report() {
+        var report = new StringBuilder()
+                .append("javac: ").append(total.toMillis()).append(" ms")
+                .append(success ? "" : " (failed)")
+                .append(", ").append(rounds).append(rounds == 1 ? " round" : " rounds")
+                .append(System.lineSeparator());
+
+        report.append("phases:").append(System.lineSeparator());
+        for (var phase : slowestFirst(phases)) {
+            line(report, phase.getKey(), phase.getValue());
+        }
+
+        var processorTotals = processorTotals();
+        if (!processorTotals.isEmpty()) {
+            report.append("annotation processors:").append(System.lineSeparator());
+            for (var processor : slowestFirst(processorTotals)) {
+                line(report, processor.getKey(), processor.getValue());
+            }
+        }
+
+        if (!files.isEmpty()) {
+            report.append("slowest files:").append(System.lineSeparator());
+            var slowest = slowestFirst(files);
+            for (var file : slowest.subList(0, Math.min(SLOWEST_FILES, slowest.size()))) {
+                line(report, file.getKey(), file.getValue());
+            }
+        }
+        return report.toString();
+    }
+
+    private void line(StringBuilder report, String name, Duration time) {
+        var percent = total.isZero() ? 0 : 100.0 * time.toNanos() / total.toNanos();
+        report.append(String.format("  %8d ms %5.1f%%  %s%n", time.toMillis(), percent, name));
+    }
+
+    private static List<Map.Entry<String, Duration>> slowestFirst(Map<String, Duration> times) {
+        var entries = new ArrayList<>(times.entrySet());
+        entries.sort(Map.Entry.<String, Duration>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        return entries;
+    }
+}
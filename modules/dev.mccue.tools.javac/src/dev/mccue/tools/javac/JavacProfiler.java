@@ -0,0 +1,345 @@
+package dev.mccue.tools.javac;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import dev.mccue.tools.ExitStatusException;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Runs javac in-process and records where it spends its time: in each phase, on each
+ * source file, and in each annotation processor for each round.
+ *
+ * <pre>{@code
+ * var profile = JavacProfiler.compile(new JavacArguments()
+ *         ._d("build/classes")
+ *         .sourceFiles(sources));
+ * System.out.print(profile.report());
+ * }</pre>
+ *
+ * <p>Annotation processors are found the same way javac would find them and wrapped
+ * so that they can be timed. Other than that, compilation is the same as with the
+ * {@code javac} tool. Timing only happens between phases and around calls to processors,
+ * so it costs little enough to leave on in a real build.
+ */
+public final class JavacProfiler {
+    private static final List<TaskEvent.Kind> PHASES = List.of(
+            TaskEvent.Kind.PARSE,
+            TaskEvent.Kind.ENTER,
+            TaskEvent.Kind.ANALYZE,
+            TaskEvent.Kind.GENERATE,
+            TaskEvent.Kind.ANNOTATION_PROCESSING
+    );
+
+    // Entering is started for every file before it is finished for any of them,
+    // so only the phase as a whole can be timed.
+    private static final Set<TaskEvent.Kind> PER_FILE = Set.of(
+            TaskEvent.Kind.PARSE,
+            TaskEvent.Kind.ANALYZE,
+            TaskEvent.Kind.GENERATE
+    );
+
+    private final Map<TaskEvent.Kind, Integer> depths;
+    private final Map<TaskEvent.Kind, Long> phaseStarts;
+    private final Map<TaskEvent.Kind, Long> phaseNanos;
+    private final Map<List<Object>, Long> fileStarts;
+    private final Map<String, Long> fileNanos;
+    private final List<JavacProfile.ProcessorTime> processorTimes;
+    private int rounds;
+
+    private JavacProfiler() {
+        this.depths = new EnumMap<>(TaskEvent.Kind.class);
+        this.phaseStarts = new EnumMap<>(TaskEvent.Kind.class);
+        this.phaseNanos = new EnumMap<>(TaskEvent.Kind.class);
+        this.fileStarts = new HashMap<>();
+        this.fileNanos = new LinkedHashMap<>();
+        this.processorTimes = new ArrayList<>();
+        this.rounds = 0;
+    }
+
+    public static JavacProfile compile(JavacArguments arguments) throws ExitStatusException {
+        return compile(arguments, new PrintWriter(System.err, true));
+    }
+
+    /**
+     * @param arguments The arguments to javac.
+     * @param diagnostics Where to write warnings and errors.
+     * @return Where the time went.
+     * @throws ExitStatusException If compilation failed.
+     */
+    public static JavacProfile compile(JavacArguments arguments, Writer diagnostics) throws ExitStatusException {
+        var profile = profile(arguments, diagnostics);
+        if (!profile.success()) {
+            throw new ExitStatusException(ExitStatusException.EXIT_FAILURE);
+        }
+        return profile;
+    }
+
+    /**
+     * Like {@link #compile(JavacArguments, Writer)}, but returns the profile even if
+     * compilation failed.
+     */
+    static JavacProfile profile(JavacArguments arguments, Writer diagnostics) {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        try (var fileManager = compiler.getStandardFileManager(null, null, null)) {
+            var taskArguments = JavacTaskArguments.parse(compiler, fileManager, arguments);
+            var options = new ArrayList<>(taskArguments.allOptions());
+            if (taskArguments.classOutput() != null) {
+                options.add("-d");
+                options.add(taskArguments.classOutput().toString());
+            }
+
+            var task = (JavacTask) compiler.getTask(
+                    diagnostics,
+                    fileManager,
+                    null,
+                    options,
+                    null,
+                    fileManager.getJavaFileObjectsFromPaths(taskArguments.sourceFiles())
+            );
+            var profiler = new JavacProfiler();
+            task.addTaskListener(profiler.new Listener());
+
+            var processors = new ArrayList<Processor>();
+            var loader = processors(fileManager, options, processors);
+            try {
+                if (!processors.isEmpty()) {
+                    task.setProcessors(processors.stream()
+                            .map(processor -> (Processor) profiler.new TimedProcessor(processor))
+                            .toList());
+                }
+
+                long start = System.nanoTime();
+                boolean success = task.call();
+                return profiler.profile(success, System.nanoTime() - start);
+            } finally {
+                if (loader instanceof Closeable closeable) {
+                    closeable.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Finds the annotation processors javac would have found on its own.
+     *
+     * @return The class loader the processors were loaded with, if there is one to close.
+     */
+    private static ClassLoader processors(
+            StandardJavaFileManager fileManager,
+            List<String> options,
+            List<Processor> processors
+    ) throws IOException {
+        if (options.contains("-proc:none")) {
+            return null;
+        }
+        List<String> names = null;
+        int named = options.indexOf("-processor");
+        if (named != -1 && named + 1 < options.size()) {
+            names = Arrays.asList(options.get(named + 1).split(","));
+        }
+
+        try {
+            if (fileManager.hasLocation(StandardLocation.ANNOTATION_PROCESSOR_MODULE_PATH)) {
+                var found = fileManager.getServiceLoader(
+                        StandardLocation.ANNOTATION_PROCESSOR_MODULE_PATH,
+                        Processor.class
+                );
+                for (var processor : found) {
+                    if (names == null || names.stream().anyMatch(name ->
+                            name.equals(processor.getClass().getName())
+                            || name.equals(processor.getClass().getModule().getName() + "/" + processor.getClass().getName()))) {
+                        processors.add(processor);
+                    }
+                }
+                return null;
+            }
+
+            boolean processorPath = fileManager.hasLocation(StandardLocation.ANNOTATION_PROCESSOR_PATH);
+            // Since JDK 23 javac only looks on the class path for processors when asked to
+            if (!processorPath && names == null
+                    && Runtime.version().feature() >= 23
+                    && !options.contains("-proc:full")
+                    && !options.contains("-proc:only")) {
+                return null;
+            }
+            var loader = fileManager.getClassLoader(processorPath
+                    ? StandardLocation.ANNOTATION_PROCESSOR_PATH
+                    : StandardLocation.CLASS_PATH);
+            if (names == null) {
+                ServiceLoader.load(Processor.class, loader).forEach(processors::add);
+            }
+            else {
+                for (var name : names) {
+                    processors.add((Processor) loader.loadClass(name).getConstructor().newInstance());
+                }
+            }
+            return loader;
+        } catch (ServiceConfigurationError | ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Could not load annotation processors: " + e, e);
+        }
+    }
+
+    private JavacProfile profile(boolean success, long nanos) {
+        var phases = new LinkedHashMap<String, Duration>();
+        for (var phase : PHASES) {
+            var time = phaseNanos.get(phase);
+            if (time != null) {
+                phases.put(name(phase), Duration.ofNanos(time));
+            }
+        }
+        var files = new LinkedHashMap<String, Duration>();
+        fileNanos.forEach((file, time) -> files.put(file, Duration.ofNanos(time)));
+        return new JavacProfile(
+                success,
+                Duration.ofNanos(nanos),
+                phases,
+                files,
+                List.copyOf(processorTimes),
+                rounds
+        );
+    }
+
+    private static String name(TaskEvent.Kind phase) {
+        return phase.name().toLowerCase().replace('_', ' ');
+    }
+
+    private final class Listener implements TaskListener {
+        @Override
+        public void started(TaskEvent e) {
+            long now = System.nanoTime();
+            var kind = e.getKind();
+            if (kind == TaskEvent.Kind.ANNOTATION_PROCESSING_ROUND) {
+                rounds++;
+            }
+            if (!PHASES.contains(kind)) {
+                return;
+            }
+            // A phase can start again inside itself, like parsing the files a processor generates
+            if (depths.merge(kind, 1, Integer::sum) == 1) {
+                phaseStarts.put(kind, now);
+            }
+            if (PER_FILE.contains(kind) && e.getSourceFile() != null) {
+                fileStarts.put(key(e), now);
+            }
+        }
+
+        @Override
+        public void finished(TaskEvent e) {
+            long now = System.nanoTime();
+            var kind = e.getKind();
+            if (!PHASES.contains(kind) || depths.getOrDefault(kind, 0) == 0) {
+                return;
+            }
+            if (depths.merge(kind, -1, Integer::sum) == 0) {
+                phaseNanos.merge(kind, now - phaseStarts.get(kind), Long::sum);
+            }
+            if (PER_FILE.contains(kind) && e.getSourceFile() != null) {
+                var start = fileStarts.remove(key(e));
+                if (start != null) {
+                    fileNanos.merge(e.getSourceFile().getName(), now - start, Long::sum);
+                }
+            }
+        }
+
+        private static List<Object> key(TaskEvent e) {
+            var typeElement = e.getTypeElement();
+            return List.of(
+                    e.getKind(),
+                    e.getSourceFile().toUri(),
+                    typeElement == null ? "" : typeElement.getQualifiedName().toString()
+            );
+        }
+    }
+
+    private final class TimedProcessor implements Processor {
+        private final Processor delegate;
+
+        TimedProcessor(Processor delegate) {
+            this.delegate = delegate;
+        }
+
+        private void record(int round, long start) {
+            processorTimes.add(new JavacProfile.ProcessorTime(
+                    delegate.getClass().getName(),
+                    round,
+                    Duration.ofNanos(System.nanoTime() - start)
+            ));
+        }
+
+        @Override
+        public Set<String> getSupportedOptions() {
+            return delegate.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return delegate.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return delegate.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment processingEnv) {
+            long start = System.nanoTime();
+            try {
+                delegate.init(processingEnv);
+            } finally {
+                record(0, start);
+            }
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            long start = System.nanoTime();
+            try {
+                return delegate.process(annotations, roundEnv);
+            } finally {
+                record(rounds, start);
+            }
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(
+                Element element,
+                AnnotationMirror annotation,
+                ExecutableElement member,
+                String userText
+        ) {
+            return delegate.getCompletions(element, annotation, member, userText);
+        }
+    }
+}
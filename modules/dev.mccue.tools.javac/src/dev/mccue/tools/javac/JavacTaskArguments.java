@@ -0,0 +1,155 @@
+package dev.mccue.tools.javac;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line javac arguments, split up the way {@link JavaCompiler#getTask} wants them.
+ *
+ * @param options Options for the compiler, without {@code -d}.
+ * @param fileManagerOptions Options for the file manager, like {@code --class-path}.
+ * @param sourceFiles The source files to compile.
+ * @param classOutput The directory given with {@code -d}, if any.
+ */
+record JavacTaskArguments(
+        List<String> options,
+        List<String> fileManagerOptions,
+        List<Path> sourceFiles,
+        Path classOutput
+) {
+    static JavacTaskArguments parse(
+            JavaCompiler compiler,
+            JavaFileManager fileManager,
+            List<String> arguments
+    ) {
+        var expanded = new ArrayList<String>();
+        expand(arguments, expanded);
+
+        var options = new ArrayList<String>();
+        var fileManagerOptions = new ArrayList<String>();
+        var sourceFiles = new ArrayList<Path>();
+        Path classOutput = null;
+        for (int i = 0; i < expanded.size(); i++) {
+            var argument = expanded.get(i);
+            if (argument.equals("-d")) {
+                classOutput = Path.of(value(expanded, ++i, argument));
+            }
+            else if (argument.startsWith("-J")) {
+                // Flags for the launcher's JVM have no meaning in-process
+            }
+            else if (argument.startsWith("-")) {
+                int arity = compiler.isSupportedOption(argument);
+                var target = options;
+                if (arity == -1) {
+                    arity = fileManager.isSupportedOption(argument);
+                    target = fileManagerOptions;
+                }
+                if (arity == -1) {
+                    throw new IllegalArgumentException(
+                            "Option not supported when running javac in-process: " + argument
+                    );
+                }
+                target.add(argument);
+                for (int j = 0; j < arity; j++) {
+                    target.add(value(expanded, ++i, argument));
+                }
+            }
+            else {
+                sourceFiles.add(Path.of(argument));
+            }
+        }
+
+        return new JavacTaskArguments(
+                List.copyOf(options),
+                List.copyOf(fileManagerOptions),
+                List.copyOf(sourceFiles),
+                classOutput
+        );
+    }
+
+    /**
+     * @return Every option, including those for the file manager, minus {@code -d}.
+     */
+    List<String> allOptions() {
+        var all = new ArrayList<String>(fileManagerOptions);
+        all.addAll(options);
+        return all;
+    }
+
+    private static String value(List<String> arguments, int i, String option) {
+        if (i >= arguments.size()) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return arguments.get(i);
+    }
+
+    private static void expand(List<String> arguments, List<String> into) {
+        for (var argument : arguments) {
+            if (argument.startsWith("@") && !argument.startsWith("@@")) {
+                String contents;
+                try {
+                    contents = Files.readString(Path.of(argument.substring(1)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                expand(tokenize(contents), into);
+            }
+            else {
+                into.add(argument);
+            }
+        }
+    }
+
+    // Follows the rules javac uses for argument files: whitespace separates
+    // arguments, quotes group them, and # starts a comment.
+    private static List<String> tokenize(String contents) {
+        var tokens = new ArrayList<String>();
+        var current = new StringBuilder();
+        var inToken = false;
+        char quote = 0;
+        for (int i = 0; i < contents.length(); i++) {
+            var c = contents.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+                else if (c == '\\' && i + 1 < contents.length()) {
+                    current.append(contents.charAt(++i));
+                }
+                else {
+                    current.append(c);
+                }
+            }
+            else if (c == '"' || c == '\'') {
+                quote = c;
+                inToken = true;
+            }
+            else if (c == '#' && !inToken) {
+                while (i < contents.length() && contents.charAt(i) != '\n') {
+                    i++;
+                }
+            }
+            else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            }
+            else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+        if (inToken) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+}
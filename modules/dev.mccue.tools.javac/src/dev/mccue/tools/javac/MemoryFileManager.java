@@ -0,0 +1,125 @@
+package dev.mccue.tools.javac;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A file manager which keeps everything javac writes to the class output
+ * location in memory, keyed by its path relative to that location.
+ */
+final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    private final ConcurrentSkipListMap<String, byte[]> files;
+
+    MemoryFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+        this.files = new ConcurrentSkipListMap<>();
+    }
+
+    StandardJavaFileManager standardFileManager() {
+        return fileManager;
+    }
+
+    /**
+     * @return Everything written so far, sorted by path.
+     */
+    Map<String, byte[]> files() {
+        return files;
+    }
+
+    @Override
+    public boolean hasLocation(Location location) {
+        return location == StandardLocation.CLASS_OUTPUT || super.hasLocation(location);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(
+            Location location,
+            String className,
+            JavaFileObject.Kind kind,
+            FileObject sibling
+    ) throws IOException {
+        if (location != StandardLocation.CLASS_OUTPUT) {
+            return super.getJavaFileForOutput(location, className, kind, sibling);
+        }
+        return new MemoryFile(className.replace('.', '/') + kind.extension, kind);
+    }
+
+    @Override
+    public FileObject getFileForOutput(
+            Location location,
+            String packageName,
+            String relativeName,
+            FileObject sibling
+    ) throws IOException {
+        if (location != StandardLocation.CLASS_OUTPUT) {
+            return super.getFileForOutput(location, packageName, relativeName, sibling);
+        }
+        return new MemoryFile(path(packageName, relativeName), JavaFileObject.Kind.OTHER);
+    }
+
+    @Override
+    public FileObject getFileForInput(
+            Location location,
+            String packageName,
+            String relativeName
+    ) throws IOException {
+        if (location != StandardLocation.CLASS_OUTPUT) {
+            return super.getFileForInput(location, packageName, relativeName);
+        }
+        var path = path(packageName, relativeName);
+        return files.containsKey(path) ? new MemoryFile(path, JavaFileObject.Kind.OTHER) : null;
+    }
+
+    private static String path(String packageName, String relativeName) {
+        return packageName.isEmpty()
+                ? relativeName
+                : packageName.replace('.', '/') + "/" + relativeName;
+    }
+
+    private final class MemoryFile extends SimpleJavaFileObject {
+        private final String path;
+
+        MemoryFile(String path, Kind kind) {
+            super(URI.create("memory:///" + path), kind);
+            this.path = path;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    files.put(path, toByteArray());
+                }
+            };
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            var contents = files.get(path);
+            if (contents == null) {
+                throw new IOException("Not written yet: " + path);
+            }
+            return new ByteArrayInputStream(contents);
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+            try (var in = openInputStream()) {
+                return new String(in.readAllBytes());
+            }
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package dev.mccue.tools.javac;
+
+import com.sun.source.tree.DirectiveTree;
+import com.sun.source.tree.RequiresTree;
+import com.sun.source.util.JavacTask;
+import dev.mccue.tools.ExitStatusException;
+import dev.mccue.tools.Tool;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decides how to compile several modules given with {@code --module-source-path} and
+ * {@code --module}: all at once, the way javac would, or one module at a time with
+ * modules that don't depend on each other compiling at the same time.
+ *
+ * <p>javac compiles every module in one invocation on one thread. That is the
+ * cheapest way when there are few cores or the modules form a chain, since each
+ * extra invocation has to start up and read the modules it depends on. When there are
+ * modules of some size which don't depend on each other, compiling them separately
+ * finishes sooner.
+ *
+ * <p>The descriptors of the modules are read to find what each one requires, and
+ * the size of each module's sources stands in for how long it will take to compile.
+ * Each module compiled separately is written to the same place it would have been,
+ * {@code <-d>/<module>}, with the modules it requires on the module path.
+ *
+ * <pre>{@code
+ * var plan = ModuleCompilationPlan.of(new JavacArguments()
+ *         .__module_source_path(moduleSourcePath)
+ *         ._d("build/javac")
+ *         .__module("dev.mccue.tools", "dev.mccue.tools.jar", "dev.mccue.tools.javac"));
+ * System.out.println(plan);
+ * plan.run();
+ * }</pre>
+ */
+public final class ModuleCompilationPlan {
+    // Starting an invocation and reading the modules it requires costs about as much
+    // as compiling this much source
+    private static final long INVOCATION_COST = 64 * 1024;
+
+    /**
+     * @param modules The modules it compiles.
+     * @param requires The modules which have to be compiled before it.
+     * @param size The total size of the source files it compiles.
+     * @param arguments The arguments to javac.
+     */
+    public record Invocation(List<String> modules, List<String> requires, long size, JavacArguments arguments) {
+    }
+
+    private final boolean batched;
+    private final List<Invocation> invocations;
+    private final int cores;
+    private final long batchedCost;
+    private final long separateCost;
+
+    private ModuleCompilationPlan(
+            boolean batched,
+            List<Invocation> invocations,
+            int cores,
+            long batchedCost,
+            long separateCost
+    ) {
+        this.batched = batched;
+        this.invocations = invocations;
+        this.cores = cores;
+        this.batchedCost = batchedCost;
+        this.separateCost = separateCost;
+    }
+
+    public static ModuleCompilationPlan of(JavacArguments arguments) {
+        return of(arguments, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param arguments The arguments to javac, compiling modules with {@code --module-source-path}
+     *                  and {@code --module}.
+     * @param cores How many invocations of javac can run at once.
+     * @return The plan.
+     */
+    public static ModuleCompilationPlan of(JavacArguments arguments, int cores) {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        try (var fileManager = compiler.getStandardFileManager(null, null, null)) {
+            var taskArguments = JavacTaskArguments.parse(compiler, fileManager, arguments);
+            var options = taskArguments.allOptions();
+            var moduleSourcePaths = values(options, "--module-source-path");
+            var modules = new ArrayList<String>();
+            for (var value : values(options, "--module", "-m")) {
+                for (var module : value.split(",")) {
+                    if (!module.isBlank()) {
+                        modules.add(module.trim());
+                    }
+                }
+            }
+            var batch = new ModuleCompilationPlan(
+                    true,
+                    List.of(new Invocation(modules, List.of(), 0, arguments)),
+                    cores,
+                    0,
+                    0
+            );
+            if (modules.size() < 2 || moduleSourcePaths.isEmpty()
+                    || taskArguments.classOutput() == null || !taskArguments.sourceFiles().isEmpty()) {
+                return batch;
+            }
+
+            var directories = new LinkedHashMap<String, List<Path>>();
+            var requires = new HashMap<String, List<String>>();
+            var sizes = new HashMap<String, Long>();
+            for (var module : modules) {
+                var moduleDirectories = directories(moduleSourcePaths, module);
+                var descriptor = moduleDirectories.stream()
+                        .map(directory -> directory.resolve("module-info.java"))
+                        .filter(Files::isRegularFile)
+                        .findFirst();
+                if (descriptor.isEmpty()) {
+                    return batch;
+                }
+                directories.put(module, moduleDirectories);
+                requires.put(module, requires(compiler, fileManager, descriptor.get()));
+                sizes.put(module, size(moduleDirectories));
+            }
+
+            // Anything else on the module source path would be compiled along with the
+            // modules that need it, which only javac knows how to do
+            for (var module : modules) {
+                for (var required : requires.get(module)) {
+                    if (!directories.containsKey(required)
+                            && directories(moduleSourcePaths, required).stream()
+                            .anyMatch(directory -> Files.isRegularFile(directory.resolve("module-info.java")))) {
+                        return batch;
+                    }
+                }
+            }
+
+            var order = order(modules, requires);
+            if (order == null) {
+                return batch;
+            }
+
+            long total = sizes.values().stream().mapToLong(Long::longValue).sum();
+            long batchedCost = INVOCATION_COST + total;
+            long separateCost = schedule(order, requires, sizes, cores);
+            var separate = new ArrayList<Invocation>();
+            for (var module : order) {
+                var closure = closure(module, requires);
+                separate.add(new Invocation(
+                        List.of(module),
+                        List.copyOf(closure),
+                        sizes.get(module),
+                        separateArguments(taskArguments, module, closure, directories.get(module))
+                ));
+            }
+            if (cores < 2 || separateCost >= batchedCost) {
+                var invocation = new Invocation(modules, List.of(), total, arguments);
+                return new ModuleCompilationPlan(true, List.of(invocation), cores, batchedCost, separateCost);
+            }
+            return new ModuleCompilationPlan(false, List.copyOf(separate), cores, batchedCost, separateCost);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return Whether to compile everything in one invocation.
+     */
+    public boolean batched() {
+        return batched;
+    }
+
+    /**
+     * @return The invocations of javac, each after the ones it requires.
+     */
+    public List<Invocation> invocations() {
+        return invocations;
+    }
+
+    public void run() throws ExitStatusException {
+        run(Tool.ofToolProvider("javac"), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs each invocation once those it requires have finished. If one fails, those
+     * which require it don't run, but the rest do.
+     *
+     * @param tool The javac to run.
+     * @param pool Where to run invocations which don't depend on each other.
+     * @throws ExitStatusException If any invocation failed.
+     */
+    public void run(Tool tool, ForkJoinPool pool) throws ExitStatusException {
+        if (batched) {
+            Javac.run(tool, invocations.get(0).arguments());
+            return;
+        }
+
+        var finished = new HashMap<String, CompletableFuture<Void>>();
+        for (var invocation : invocations) {
+            var required = invocation.requires().stream()
+                    .map(finished::get)
+                    .toArray(CompletableFuture[]::new);
+            var future = CompletableFuture.allOf(required).thenRunAsync(() -> {
+                try {
+                    Javac.run(tool, invocation.arguments());
+                } catch (ExitStatusException e) {
+                    throw new CompletionException(e);
+                }
+            }, pool);
+            invocation.modules().forEach(module -> finished.put(module, future));
+        }
+
+        try {
+            CompletableFuture.allOf(finished.values().toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ExitStatusException exitStatusException) {
+                throw exitStatusException;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (batchedCost == 0) {
+            return "one invocation: " + String.join(",", invocations.get(0).modules());
+        }
+        var description = new StringBuilder()
+                .append(batched ? "one invocation" : "separate invocations")
+                .append(" (estimated cost ").append(batchedCost / 1024).append(" KiB at once, ")
+                .append(separateCost / 1024).append(" KiB separately on ").append(cores).append(" cores)");
+        for (var invocation : invocations) {
+            description.append(System.lineSeparator()).append("  ").append(String.join(",", invocation.modules()));
+            if (!invocation.requires().isEmpty()) {
+                description.append(" after ").append(String.join(",", invocation.requires()));
+            }
+        }
+        return description.toString();
+    }
+
+    static List<String> values(List<String> options, String... names) {
+        var values = new ArrayList<String>();
+        for (int i = 0; i < options.size(); i++) {
+            for (var name : names) {
+                if (options.get(i).equals(name) && i + 1 < options.size()) {
+                    values.add(options.get(i + 1));
+                }
+                else if (options.get(i).startsWith(name + "=")) {
+                    values.add(options.get(i).substring(name.length() + 1));
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Where javac would look for a module's sources. The module source path is either a
+     * list of patterns, where {@code *} stands for the module's name and {@code {a,b}}
+     * for either {@code a} or {@code b}, or given separately for each module as
+     * {@code module=path}.
+     */
+    static List<Path> directories(List<String> moduleSourcePaths, String module) {
+        var directories = new ArrayList<Path>();
+        for (var moduleSourcePath : moduleSourcePaths) {
+            var equals = moduleSourcePath.indexOf('=');
+            if (equals != -1 && !moduleSourcePath.substring(0, equals).contains(File.separator)) {
+                if (moduleSourcePath.substring(0, equals).equals(module)) {
+                    for (var entry : moduleSourcePath.substring(equals + 1).split(File.pathSeparator)) {
+                        directories.add(Path.of(entry));
+                    }
+                }
+                continue;
+            }
+            for (var entry : moduleSourcePath.split(File.pathSeparator)) {
+                for (var expanded : expandBraces(entry)) {
+                    directories.add(expanded.contains("*")
+                            ? Path.of(expanded.replace("*", module))
+                            : Path.of(expanded, module));
+                }
+            }
+        }
+        return directories;
+    }
+
+    private static List<String> expandBraces(String entry) {
+        var open = entry.indexOf('{');
+        var close = open == -1 ? -1 : entry.indexOf('}', open);
+        if (close == -1) {
+            return List.of(entry);
+        }
+        var expanded = new ArrayList<String>();
+        for (var alternative : entry.substring(open + 1, close).split(",", -1)) {
+            expanded.addAll(expandBraces(entry.substring(0, open) + alternative + entry.substring(close + 1)));
+        }
+        return expanded;
+    }
+
+    static List<String> requires(
+            JavaCompiler compiler,
+            StandardJavaFileManager fileManager,
+            Path descriptor
+    ) throws IOException {
+        var task = (JavacTask) compiler.getTask(
+                null,
+                fileManager,
+                __ -> {},
+                List.of(),
+                null,
+                fileManager.getJavaFileObjects(descriptor)
+        );
+        var requires = new ArrayList<String>();
+        for (var unit : task.parse()) {
+            if (unit.getModule() == null) {
+                continue;
+            }
+            for (DirectiveTree directive : unit.getModule().getDirectives()) {
+                if (directive instanceof RequiresTree require) {
+                    requires.add(require.getModuleName().toString());
+                }
+            }
+        }
+        return requires;
+    }
+
+    private static long size(List<Path> directories) throws IOException {
+        long size = 0;
+        for (var directory : directories) {
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            try (var paths = Files.walk(directory)) {
+                for (var path : paths.filter(path -> path.toString().endsWith(".java")).toList()) {
+                    size += Files.size(path);
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The modules, each after those it requires, or {@code null} if they require each other.
+     */
+    private static List<String> order(List<String> modules, Map<String, List<String>> requires) {
+        var order = new LinkedHashSet<String>();
+        var visiting = new LinkedHashSet<String>();
+        for (var module : modules) {
+            if (!visit(module, requires, visiting, order)) {
+                return null;
+            }
+        }
+        return List.copyOf(order);
+    }
+
+    private static boolean visit(
+            String module,
+            Map<String, List<String>> requires,
+            Set<String> visiting,
+            Set<String> order
+    ) {
+        if (order.contains(module)) {
+            return true;
+        }
+        if (!visiting.add(module)) {
+            return false;
+        }
+        for (var required : requires.get(module)) {
+            if (requires.containsKey(required) && !visit(required, requires, visiting, order)) {
+                return false;
+            }
+        }
+        visiting.remove(module);
+        order.add(module);
+        return true;
+    }
+
+    /**
+     * @return Every module being compiled which the module reads, directly or not.
+     */
+    private static Set<String> closure(String module, Map<String, List<String>> requires) {
+        var closure = new TreeSet<String>();
+        var pending = new ArrayList<>(requires.get(module));
+        while (!pending.isEmpty()) {
+            var required = pending.remove(pending.size() - 1);
+            if (requires.containsKey(required) && closure.add(required)) {
+                pending.addAll(requires.get(required));
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * Simulates compiling each module separately, starting whichever ready module has
+     * the most work after it whenever a core is free.
+     *
+     * @return How long that would take, in the same units as the sizes.
+     */
+    private static long schedule(
+            List<String> order,
+            Map<String, List<String>> requires,
+            Map<String, Long> sizes,
+            int cores
+    ) {
+        var dependents = new HashMap<String, List<String>>();
+        for (var module : order) {
+            for (var required : requires.get(module)) {
+                if (sizes.containsKey(required)) {
+                    dependents.computeIfAbsent(required, __ -> new ArrayList<>()).add(module);
+                }
+            }
+        }
+        var remaining = new HashMap<String, Long>();
+        for (var module : order.reversed()) {
+            long after = 0;
+            for (var dependent : dependents.getOrDefault(module, List.of())) {
+                after = Math.max(after, remaining.get(dependent));
+            }
+            remaining.put(module, INVOCATION_COST + sizes.get(module) + after);
+        }
+
+        var waiting = new HashMap<String, Integer>();
+        var ready = new PriorityQueue<String>(Comparator.comparingLong((String module) -> remaining.get(module)).reversed());
+        for (var module : order) {
+            int count = (int) requires.get(module).stream().filter(sizes::containsKey).count();
+            waiting.put(module, count);
+            if (count == 0) {
+                ready.add(module);
+            }
+        }
+
+        record Running(String module, long finishes) {}
+        var running = new PriorityQueue<Running>(Comparator.comparingLong(Running::finishes));
+        long now = 0;
+        while (!ready.isEmpty() || !running.isEmpty()) {
+            while (running.size() < cores && !ready.isEmpty()) {
+                var module = ready.poll();
+                running.add(new Running(module, now + INVOCATION_COST + sizes.get(module)));
+            }
+            var done = running.poll();
+            now = done.finishes();
+            for (var dependent : dependents.getOrDefault(done.module(), List.of())) {
+                if (waiting.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        return now;
+    }
+
+    private static JavacArguments separateArguments(
+            JavacTaskArguments taskArguments,
+            String module,
+            Collection<String> requires,
+            List<Path> directories
+    ) throws IOException {
+        var arguments = new JavacArguments();
+        var modulePath = new ArrayList<String>();
+        for (var required : requires) {
+            modulePath.add(taskArguments.classOutput().resolve(required).toString());
+        }
+
+        var options = taskArguments.allOptions();
+        for (int i = 0; i < options.size(); i++) {
+            var option = options.get(i);
+            switch (option) {
+                case "--module-source-path", "--module", "-m" -> i++;
+                case "--module-path", "-p" -> modulePath.add(options.get(++i));
+                default -> {
+                    if (option.startsWith("--module-source-path=") || option.startsWith("--module=")) {
+                        continue;
+                    }
+                    if (option.startsWith("--module-path=")) {
+                        modulePath.add(option.substring("--module-path=".length()));
+                        continue;
+                    }
+                    arguments.add(option);
+                }
+            }
+        }
+        if (!modulePath.isEmpty()) {
+            arguments.add("--module-path");
+            arguments.add(String.join(File.pathSeparator, modulePath));
+        }
+        arguments._d(taskArguments.classOutput().resolve(module));
+
+        var sources = new TreeSet<String>();
+        for (var directory : directories) {
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            try (var paths = Files.walk(directory)) {
+                paths.filter(path -> path.toString().endsWith(".java"))
+                        .forEach(path -> sources.add(path.toString()));
+            }
+        }
+        arguments.sourceFiles(List.copyOf(sources));
+        return arguments;
+    }
+}
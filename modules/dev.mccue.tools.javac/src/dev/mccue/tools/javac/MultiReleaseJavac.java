@@ -0,0 +1,362 @@
+package dev.mccue.tools.javac;
+
+import com.sun.source.util.JavacTask;
+import dev.mccue.tools.ExitStatusException;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compiles the classes of a multi-release jar: the base sources for one release, and
+ * the sources which replace some of them for each later release, all at the same time.
+ *
+ * <p>The sources for later releases are compiled against the base classes. Rather than
+ * waiting for those, they are compiled against {@linkplain HeaderJavac headers} of the
+ * base sources while the base sources compile in full, so that compiling for every
+ * release takes about as long as compiling the base sources once.
+ *
+ * <p>The result is laid out the way it goes in the jar, with the classes for each later
+ * release under {@code META-INF/versions/<release>/}, so it can be written in one pass.
+ * {@code dev.mccue.tools.jar.JarWriter} marks the jar {@code Multi-Release} when it has
+ * versioned entries.
+ *
+ * <pre>{@code
+ * var classes = MultiReleaseJavac.of(new JavacArguments()
+ *                 .__release(11)
+ *                 .sourceFiles(baseSources))
+ *         .release(17, new JavacArguments().sourceFiles(java17Sources))
+ *         .release(21, new JavacArguments().sourceFiles(java21Sources))
+ *         .compile();
+ * JarWriter.of(Path.of("build", "jar", "lib.jar"))
+ *         .addAll(classes)
+ *         .write();
+ * }</pre>
+ *
+ * <p>The sources for a later release are compiled with the same options as the base
+ * sources, other than {@code --release}, plus any given for that release. If the base
+ * sources are a module, those for later releases are compiled as part of it, and can't
+ * have a {@code module-info.java} of their own.
+ */
+public final class MultiReleaseJavac {
+    private static final String VERSIONS = "META-INF/versions/";
+
+    // Options which are replaced when compiling for a later release
+    private static final Set<String> REPLACED_OPTIONS = Set.of(
+            "--release",
+            "--source", "-source",
+            "--target", "-target",
+            "--class-path", "-classpath", "-cp",
+            "--module-path", "-p",
+            "--source-path", "-sourcepath"
+    );
+
+    private final JavacArguments base;
+    private final TreeMap<Integer, JavacArguments> releases;
+    private ForkJoinPool pool;
+
+    private MultiReleaseJavac(JavacArguments base) {
+        this.base = base;
+        this.releases = new TreeMap<>();
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    /**
+     * @param base The arguments to javac for the base sources. {@code -d} is ignored.
+     */
+    public static MultiReleaseJavac of(JavacArguments base) {
+        return new MultiReleaseJavac(Objects.requireNonNull(base, "base"));
+    }
+
+    /**
+     * Adds the sources for a later release, replacing any given for it before.
+     *
+     * @param release The release, at least 9.
+     * @param arguments The source files for that release, and any options to add to
+     *                  those of the base sources.
+     */
+    public MultiReleaseJavac release(int release, JavacArguments arguments) {
+        if (release < 9) {
+            throw new IllegalArgumentException("Multi-release jars only have versions from 9 on: " + release);
+        }
+        releases.put(release, Objects.requireNonNull(arguments, "arguments"));
+        return this;
+    }
+
+    /**
+     * Sets the pool releases are compiled on. Defaults to {@link ForkJoinPool#commonPool()}.
+     */
+    public MultiReleaseJavac pool(ForkJoinPool pool) {
+        this.pool = Objects.requireNonNull(pool, "pool");
+        return this;
+    }
+
+    public Map<String, byte[]> compile() throws ExitStatusException {
+        return compile(new PrintWriter(System.err, true));
+    }
+
+    /**
+     * @param diagnostics Where to write warnings and errors. Those for the base sources
+     *                    come first, then those for each release in order.
+     * @return The compiled files, sorted by path, with those for later releases under
+     * {@code META-INF/versions/<release>/}.
+     * @throws ExitStatusException If any release failed to compile.
+     */
+    public Map<String, byte[]> compile(Writer diagnostics) throws ExitStatusException {
+        if (releases.isEmpty()) {
+            return InMemoryJavac.compile(base, diagnostics);
+        }
+
+        Path headers = null;
+        try {
+            headers = Files.createTempDirectory("multi-release-headers");
+            var plan = plan(headers);
+
+            var baseOutcome = new Outcome(0);
+            var headerOutcome = new Outcome(-1);
+            var versions = new ArrayList<Outcome>();
+            releases.keySet().forEach(release -> versions.add(new Outcome(release)));
+            var jobs = List.<Runnable>of(
+                    () -> baseOutcome.compile(base),
+                    () -> {
+                        // Nothing can compile against headers which failed
+                        if (headerOutcome.compileHeaders(plan.headerArguments())) {
+                            versions.parallelStream().forEach(version -> version.compile(plan.arguments().get(version.release)));
+                        }
+                    }
+            );
+            try {
+                pool.submit(() -> jobs.parallelStream().forEach(Runnable::run)).get();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while compiling releases", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+                    throw uncheckedIOException.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+
+            // The base sources and their headers fail the same way, so only say so once
+            var outcomes = new ArrayList<Outcome>();
+            outcomes.add(baseOutcome);
+            if (baseOutcome.files != null) {
+                outcomes.add(headerOutcome);
+            }
+            outcomes.addAll(versions);
+            var failed = false;
+            for (var outcome : outcomes) {
+                diagnostics.write(outcome.diagnostics.toString());
+                failed |= outcome.failed;
+            }
+            diagnostics.flush();
+            if (failed) {
+                throw new ExitStatusException(ExitStatusException.EXIT_FAILURE);
+            }
+
+            var files = new TreeMap<>(baseOutcome.files);
+            for (var version : versions) {
+                version.files.forEach((name, contents) ->
+                        files.put(VERSIONS + version.release + "/" + name, contents));
+            }
+            return Collections.unmodifiableMap(files);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (headers != null) {
+                delete(headers);
+            }
+        }
+    }
+
+    private record Plan(JavacArguments headerArguments, Map<Integer, JavacArguments> arguments) {
+    }
+
+    private Plan plan(Path headers) throws IOException {
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        try (var fileManager = compiler.getStandardFileManager(null, null, null)) {
+            var baseArguments = JavacTaskArguments.parse(compiler, fileManager, base);
+            if (baseArguments.allOptions().contains("--module-source-path")) {
+                throw new IllegalArgumentException("Multi-release compilation of several modules at once is not supported");
+            }
+            var options = baseArguments.allOptions();
+            var moduleInfo = baseArguments.sourceFiles().stream()
+                    .filter(source -> source.getFileName().toString().equals("module-info.java"))
+                    .findFirst();
+            var module = moduleInfo.isPresent() ? moduleName(compiler, fileManager, moduleInfo.get()) : null;
+
+            var headerArguments = new JavacArguments(base);
+            headerArguments.add("-d");
+            headerArguments.add(headers.toString());
+
+            var kept = new ArrayList<String>();
+            for (int i = 0; i < options.size(); i++) {
+                var option = options.get(i);
+                if (REPLACED_OPTIONS.contains(option)) {
+                    i++;
+                }
+                else if (REPLACED_OPTIONS.stream().noneMatch(replaced -> option.startsWith(replaced + "="))) {
+                    kept.add(option);
+                }
+            }
+            var classPath = ModuleCompilationPlan.values(options, "--class-path", "-classpath", "-cp");
+            var modulePath = ModuleCompilationPlan.values(options, "--module-path", "-p");
+
+            var arguments = new TreeMap<Integer, JavacArguments>();
+            for (var entry : releases.entrySet()) {
+                var releaseArguments = JavacTaskArguments.parse(compiler, fileManager, entry.getValue());
+                var compile = new JavacArguments(kept);
+                compile.addAll(releaseArguments.allOptions());
+                compile.add("--release");
+                compile.add(entry.getKey().toString());
+                // Anything else found by javac is part of the base sources
+                compile.add("-implicit:none");
+                if (module == null) {
+                    compile.add("--class-path");
+                    compile.add(path(headers, classPath));
+                }
+                else {
+                    if (releaseArguments.sourceFiles().stream()
+                            .anyMatch(source -> source.getFileName().toString().equals("module-info.java"))) {
+                        throw new IllegalArgumentException(
+                                "The sources for release " + entry.getKey() + " can't have their own module-info.java"
+                        );
+                    }
+                    compile.add("--module-path");
+                    compile.add(path(headers, modulePath));
+                    compile.add("--patch-module");
+                    compile.add(module + "=" + String.join(
+                            File.pathSeparator,
+                            sourceRoots(compiler, fileManager, releaseArguments.sourceFiles())
+                    ));
+                }
+                releaseArguments.sourceFiles().forEach(source -> compile.add(source.toString()));
+                arguments.put(entry.getKey(), compile);
+            }
+            return new Plan(headerArguments, arguments);
+        }
+    }
+
+    private static String path(Path first, List<String> rest) {
+        var entries = new ArrayList<String>();
+        entries.add(first.toString());
+        entries.addAll(rest);
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static String moduleName(
+            JavaCompiler compiler,
+            StandardJavaFileManager fileManager,
+            Path moduleInfo
+    ) throws IOException {
+        var task = (JavacTask) compiler.getTask(
+                null,
+                fileManager,
+                __ -> {},
+                List.of(),
+                null,
+                fileManager.getJavaFileObjects(moduleInfo)
+        );
+        for (var unit : task.parse()) {
+            if (unit.getModule() != null) {
+                return unit.getModule().getName().toString();
+            }
+        }
+        throw new IllegalArgumentException("No module declared in " + moduleInfo);
+    }
+
+    /**
+     * @return The directories the source files are in, going up one for each part of
+     * their package names.
+     */
+    private static Set<String> sourceRoots(
+            JavaCompiler compiler,
+            StandardJavaFileManager fileManager,
+            List<Path> sources
+    ) throws IOException {
+        var task = (JavacTask) compiler.getTask(
+                null,
+                fileManager,
+                __ -> {},
+                List.of(),
+                null,
+                fileManager.getJavaFileObjectsFromPaths(sources)
+        );
+        var roots = new LinkedHashSet<String>();
+        var units = task.parse().iterator();
+        for (var source : sources) {
+            var unit = units.next();
+            var root = source.toAbsolutePath().normalize().getParent();
+            var packageName = unit.getPackageName();
+            int depth = packageName == null ? 0 : packageName.toString().split("\\.").length;
+            for (int i = 0; i < depth; i++) {
+                root = root.getParent();
+            }
+            roots.add(root.toString());
+        }
+        return roots;
+    }
+
+    private static void delete(Path directory) {
+        try (var paths = Files.walk(directory)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            // Only temporary files are left behind
+        }
+    }
+
+    private static final class Outcome {
+        private final int release;
+        private final StringWriter diagnostics;
+        private Map<String, byte[]> files;
+        private boolean failed;
+
+        Outcome(int release) {
+            this.release = release;
+            this.diagnostics = new StringWriter();
+            this.files = null;
+            this.failed = false;
+        }
+
+        void compile(JavacArguments arguments) {
+            try {
+                files = InMemoryJavac.compile(arguments, diagnostics);
+            } catch (ExitStatusException e) {
+                failed = true;
+            }
+        }
+
+        boolean compileHeaders(JavacArguments arguments) {
+            try {
+                HeaderJavac.compile(arguments, diagnostics);
+                return true;
+            } catch (ExitStatusException e) {
+                failed = true;
+                return false;
+            }
+        }
+    }
+}
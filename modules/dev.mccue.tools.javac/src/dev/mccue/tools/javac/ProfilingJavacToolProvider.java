@@ -0,0 +1,39 @@
+package dev.mccue.tools.javac;
+
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.spi.ToolProvider;
+
+/**
+ * A {@code javac} which hands a profile of each compilation to a consumer, using
+ * {@link JavacProfiler}.
+ */
+final class ProfilingJavacToolProvider implements ToolProvider {
+    private final Consumer<? super JavacProfile> profiles;
+
+    ProfilingJavacToolProvider(Consumer<? super JavacProfile> profiles) {
+        this.profiles = profiles;
+    }
+
+    @Override
+    public String name() {
+        return "javac";
+    }
+
+    @Override
+    public int run(PrintWriter out, PrintWriter err, String... args) {
+        try {
+            var profile = JavacProfiler.profile(new JavacArguments(List.of(args)), err);
+            profiles.accept(profile);
+            return profile.success() ? 0 : 1;
+        } catch (IllegalArgumentException e) {
+            err.println("javac: " + e.getMessage());
+            return 2;
+        } catch (UncheckedIOException e) {
+            err.println("javac: " + e.getCause());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package dev.mccue.tools.javac;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Splits a source set into partitions that can be compiled at the same time, using
+ * the dependencies recorded by the last compilation.
+ *
+ * <p>Source files which depend on each other, directly or not, are strongly connected
+ * and always compiled together. The rest are compiled in waves: each wave only
+ * depends on the waves before it, whose classes are already written, so the
+ * partitions in a wave are independent of each other.
+ *
+ * <p>Source files which are new, changed, or depend on one that is might have
+ * dependencies the last compilation didn't see, so they are compiled last, together.
+ */
+final class SourcePartitions {
+    // Starting a javac task and reading the classes of earlier waves costs about as
+    // much as compiling this many source files
+    private static final int WAVE_COST = 20;
+
+    private SourcePartitions() {}
+
+    /**
+     * @param graph What the last compilation recorded.
+     * @param hashes The source files to compile, with the hashes of their contents.
+     * @param parallelism How many partitions can compile at once.
+     * @return The waves of partitions to compile in order, or {@code null} if that
+     * wouldn't be faster than compiling everything at once.
+     */
+    static List<List<List<Path>>> plan(DependencyGraph graph, Map<Path, String> hashes, int parallelism) {
+        if (parallelism < 2) {
+            return null;
+        }
+
+        var producers = new HashMap<String, Path>();
+        for (var source : graph.sources().values()) {
+            for (var node : source.classes()) {
+                producers.put(node.name(), source.path());
+            }
+        }
+
+        var unknown = new HashSet<String>();
+        for (var source : graph.sources().values()) {
+            if (!source.hash().equals(hashes.get(source.path()))) {
+                source.classes().forEach(node -> unknown.add(node.name()));
+            }
+        }
+        var last = new TreeSet<Path>();
+        for (var source : hashes.keySet()) {
+            var node = graph.sources().get(source);
+            if (node == null || !node.hash().equals(hashes.get(source))) {
+                last.add(source);
+            }
+        }
+        last.addAll(graph.dependents(graph.withSubtypes(unknown)));
+        // and whatever depends on those, until nothing new does
+        var added = true;
+        while (added) {
+            var classes = new HashSet<String>();
+            for (var source : last) {
+                var node = graph.sources().get(source);
+                if (node != null) {
+                    node.classes().forEach(c -> classes.add(c.name()));
+                }
+            }
+            added = last.addAll(graph.dependents(classes));
+        }
+        last.retainAll(hashes.keySet());
+
+        var sources = new ArrayList<Path>();
+        for (var source : hashes.keySet()) {
+            if (!last.contains(source)) {
+                sources.add(source);
+            }
+        }
+        var indices = new HashMap<Path, Integer>();
+        for (int i = 0; i < sources.size(); i++) {
+            indices.put(sources.get(i), i);
+        }
+        var dependencies = new int[sources.size()][];
+        for (int i = 0; i < sources.size(); i++) {
+            var uses = new TreeSet<Integer>();
+            for (var name : graph.sources().get(sources.get(i)).uses()) {
+                var producer = indices.get(producers.get(name));
+                if (producer != null && producer != i) {
+                    uses.add(producer);
+                }
+            }
+            dependencies[i] = uses.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        var component = components(dependencies);
+        int components = Arrays.stream(component).max().orElse(-1) + 1;
+        var members = new ArrayList<List<Path>>();
+        for (int c = 0; c < components; c++) {
+            members.add(new ArrayList<>());
+        }
+        for (int i = 0; i < sources.size(); i++) {
+            members.get(component[i]).add(sources.get(i));
+        }
+
+        var componentDependencies = new ArrayList<Set<Integer>>();
+        for (int c = 0; c < components; c++) {
+            componentDependencies.add(new HashSet<>());
+        }
+        for (int i = 0; i < sources.size(); i++) {
+            for (var dependency : dependencies[i]) {
+                if (component[dependency] != component[i]) {
+                    componentDependencies.get(component[i]).add(component[dependency]);
+                }
+            }
+        }
+        // Components are numbered after everything they depend on, so going in order
+        // only ever reads levels which are already final
+        var levels = new int[components];
+        for (int c = 0; c < components; c++) {
+            for (var dependency : componentDependencies.get(c)) {
+                levels[c] = Math.max(levels[c], levels[dependency] + 1);
+            }
+        }
+        var byLevel = new ArrayList<List<List<Path>>>();
+        for (int c = 0; c < components; c++) {
+            while (byLevel.size() <= levels[c]) {
+                byLevel.add(new ArrayList<>());
+            }
+            byLevel.get(levels[c]).add(members.get(c));
+        }
+
+        var waves = new ArrayList<List<List<Path>>>();
+        int cost = 0;
+        for (var level : byLevel) {
+            var wave = balance(level, parallelism);
+            cost += WAVE_COST + wave.stream().mapToInt(List::size).max().orElse(0);
+            waves.add(wave);
+        }
+        if (!last.isEmpty()) {
+            waves.add(List.of(List.copyOf(last)));
+            cost += WAVE_COST + last.size();
+        }
+
+        if (waves.stream().allMatch(wave -> wave.size() < 2) || cost >= hashes.size()) {
+            return null;
+        }
+        if (!independent(waves, indices, dependencies)) {
+            return null;
+        }
+        return waves;
+    }
+
+    /**
+     * @return Whether no partition uses a class produced by another partition in the
+     * same wave, which would still be compiling.
+     */
+    private static boolean independent(
+            List<List<List<Path>>> waves,
+            Map<Path, Integer> indices,
+            int[][] dependencies
+    ) {
+        for (var wave : waves) {
+            var partitionOf = new HashMap<Integer, Integer>();
+            for (int p = 0; p < wave.size(); p++) {
+                for (var source : wave.get(p)) {
+                    var index = indices.get(source);
+                    if (index != null) {
+                        partitionOf.put(index, p);
+                    }
+                }
+            }
+            for (var entry : partitionOf.entrySet()) {
+                for (var dependency : dependencies[entry.getKey()]) {
+                    var partition = partitionOf.get(dependency);
+                    if (partition != null && !partition.equals(entry.getValue())) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    // Largest first, each to the partition with the fewest source files so far
+    private static List<List<Path>> balance(List<List<Path>> components, int parallelism) {
+        var sorted = new ArrayList<>(components);
+        sorted.sort(Comparator.comparingInt((List<Path> c) -> c.size()).reversed()
+                .thenComparing(c -> c.get(0)));
+        var partitions = new ArrayList<List<Path>>();
+        for (var c : sorted) {
+            if (partitions.size() < parallelism) {
+                partitions.add(new ArrayList<>(c));
+            }
+            else {
+                partitions.stream()
+                        .min(Comparator.comparingInt(List::size))
+                        .orElseThrow()
+                        .addAll(c);
+            }
+        }
+        for (var partition : partitions) {
+            partition.sort(null);
+        }
+        return partitions;
+    }
+
+    /**
+     * Tarjan's algorithm, without recursion so that long chains of dependencies
+     * don't overflow the stack.
+     *
+     * @return The strongly connected component of each vertex. A component's number is
+     * higher than that of any component it depends on.
+     */
+    static int[] components(int[][] dependencies) {
+        int n = dependencies.length;
+        var index = new int[n];
+        var low = new int[n];
+        var onStack = new boolean[n];
+        var component = new int[n];
+        Arrays.fill(index, -1);
+        var stack = new ArrayDeque<Integer>();
+        int counter = 0;
+        int components = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            var work = new ArrayDeque<int[]>();
+            index[root] = low[root] = counter++;
+            stack.push(root);
+            onStack[root] = true;
+            work.push(new int[] { root, 0 });
+            while (!work.isEmpty()) {
+                var frame = work.peek();
+                int v = frame[0];
+                if (frame[1] < dependencies[v].length) {
+                    int w = dependencies[v][frame[1]++];
+                    if (index[w] == -1) {
+                        index[w] = low[w] = counter++;
+                        stack.push(w);
+                        onStack[w] = true;
+                        work.push(new int[] { w, 0 });
+                    }
+                    else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                }
+                else {
+                    work.pop();
+                    if (!work.isEmpty()) {
+                        int u = work.peek()[0];
+                        low[u] = Math.min(low[u], low[v]);
+                    }
+                    if (low[v] == index[v]) {
+                        int w;
+                        do {
+                            w = stack.pop();
+                            onStack[w] = false;
+                            component[w] = components;
+                        } while (w != v);
+                        components++;
+                    }
+                }
+            }
+        }
+        return component;
+    }
+}
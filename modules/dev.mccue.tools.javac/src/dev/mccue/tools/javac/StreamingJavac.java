@@ -0,0 +1,152 @@
+package dev.mccue.tools.javac;
+
+import javax.tools.Diagnostic;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Compiles with javac in-process, handing each diagnostic to a consumer as soon as javac
+ * reports it instead of writing it out as text.
+ *
+ * <pre>{@code
+ * var result = StreamingJavac.compile(
+ *         new JavacArguments()
+ *                 ._d("build/classes")
+ *                 .sourceFiles(sources),
+ *         diagnostic -> problems.add(diagnostic),
+ *         10
+ * );
+ * }</pre>
+ *
+ * <p>Compilation can be stopped after a number of errors. Unlike {@code -Xmaxerrs},
+ * which only stops errors from being printed, this stops javac from doing any more work.
+ */
+public final class StreamingJavac {
+    private StreamingJavac() {}
+
+    /**
+     * @param success Whether compilation succeeded.
+     * @param stopped Whether compilation was stopped early because of too many errors.
+     * @param kinds How many diagnostics there were of each kind.
+     * @param codes How many diagnostics there were with each code, sorted by code.
+     */
+    public record Result(
+            boolean success,
+            boolean stopped,
+            Map<Diagnostic.Kind, Integer> kinds,
+            Map<String, Integer> codes
+    ) {
+        public int errors() {
+            return kinds.getOrDefault(Diagnostic.Kind.ERROR, 0);
+        }
+
+        public int warnings() {
+            return kinds.getOrDefault(Diagnostic.Kind.WARNING, 0)
+                    + kinds.getOrDefault(Diagnostic.Kind.MANDATORY_WARNING, 0);
+        }
+    }
+
+    public static Result compile(
+            JavacArguments arguments,
+            Consumer<? super JavacDiagnostic> diagnostics
+    ) {
+        return compile(arguments, diagnostics, Integer.MAX_VALUE);
+    }
+
+    public static Result compile(
+            JavacArguments arguments,
+            Consumer<? super JavacDiagnostic> diagnostics,
+            int maxErrors
+    ) {
+        return compile(arguments, diagnostics, maxErrors, new PrintWriter(System.err, true));
+    }
+
+    /**
+     * @param arguments The arguments to javac.
+     * @param diagnostics Called with each diagnostic, in the order javac reports them.
+     * @param maxErrors How many errors to allow before stopping compilation.
+     * @param out Where to write anything javac prints that isn't a diagnostic, like the
+     *            output of {@code -verbose}.
+     * @return Whether compilation succeeded, and how many of each diagnostic there were.
+     * Failing to compile is not an exception: the errors have already been handed out.
+     */
+    public static Result compile(
+            JavacArguments arguments,
+            Consumer<? super JavacDiagnostic> diagnostics,
+            int maxErrors,
+            Writer out
+    ) {
+        if (maxErrors < 1) {
+            throw new IllegalArgumentException("maxErrors must be at least 1: " + maxErrors);
+        }
+
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        var kinds = new EnumMap<Diagnostic.Kind, Integer>(Diagnostic.Kind.class);
+        var codes = new TreeMap<String, Integer>();
+        try (var fileManager = compiler.getStandardFileManager(null, null, null)) {
+            var taskArguments = JavacTaskArguments.parse(compiler, fileManager, arguments);
+            var options = new ArrayList<>(taskArguments.allOptions());
+            if (taskArguments.classOutput() != null) {
+                options.add("-d");
+                options.add(taskArguments.classOutput().toString());
+            }
+
+            var task = compiler.getTask(
+                    out,
+                    fileManager,
+                    diagnostic -> {
+                        var javacDiagnostic = JavacDiagnostic.of(diagnostic);
+                        int count = kinds.merge(javacDiagnostic.kind(), 1, Integer::sum);
+                        if (javacDiagnostic.code() != null) {
+                            codes.merge(javacDiagnostic.code(), 1, Integer::sum);
+                        }
+                        diagnostics.accept(javacDiagnostic);
+                        if (javacDiagnostic.kind() == Diagnostic.Kind.ERROR && count >= maxErrors) {
+                            throw new Stop();
+                        }
+                    },
+                    options,
+                    null,
+                    fileManager.getJavaFileObjectsFromPaths(taskArguments.sourceFiles())
+            );
+
+            boolean success;
+            boolean stopped = false;
+            try {
+                success = task.call();
+            } catch (RuntimeException e) {
+                // javac wraps whatever the listener throws
+                if (!(e instanceof Stop) && !(e.getCause() instanceof Stop)) {
+                    throw e;
+                }
+                success = false;
+                stopped = true;
+            }
+            return new Result(
+                    success,
+                    stopped,
+                    Collections.unmodifiableMap(kinds),
+                    Collections.unmodifiableMap(codes)
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Stop extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Stop() {
+            super(null, null, false, false);
+        }
+    }
+}
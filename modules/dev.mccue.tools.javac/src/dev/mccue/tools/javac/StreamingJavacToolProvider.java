@@ -0,0 +1,39 @@
+package dev.mccue.tools.javac;
+
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.spi.ToolProvider;
+
+/**
+ * A {@code javac} which hands its diagnostics to a consumer, using {@link StreamingJavac}.
+ */
+final class StreamingJavacToolProvider implements ToolProvider {
+    private final Consumer<? super JavacDiagnostic> diagnostics;
+    private final int maxErrors;
+
+    StreamingJavacToolProvider(Consumer<? super JavacDiagnostic> diagnostics, int maxErrors) {
+        this.diagnostics = diagnostics;
+        this.maxErrors = maxErrors;
+    }
+
+    @Override
+    public String name() {
+        return "javac";
+    }
+
+    @Override
+    public int run(PrintWriter out, PrintWriter err, String... args) {
+        try {
+            var result = StreamingJavac.compile(new JavacArguments(List.of(args)), diagnostics, maxErrors, err);
+            return result.success() ? 0 : 1;
+        } catch (IllegalArgumentException e) {
+            err.println("javac: " + e.getMessage());
+            return 2;
+        } catch (UncheckedIOException e) {
+            err.println("javac: " + e.getCause());
+            return 1;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 module dev.mccue.tools.javac {
     requires jdk.compiler;
+    requires transitive java.compiler;
     requires transitive dev.mccue.tools;
     requires transitive dev.mccue.tools.java;
 
     exports dev.mccue.tools.javac;
+
+    uses javax.annotation.processing.Processor;
 }
\ No newline at end of file
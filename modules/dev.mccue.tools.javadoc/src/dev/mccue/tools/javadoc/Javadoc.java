@@ -2,15 +2,27 @@ package dev.mccue.tools.javadoc;
 
 import dev.mccue.tools.AbstractToolRunner;
 import dev.mccue.tools.ExitStatusException;
+import dev.mccue.tools.Reproducibility;
 import dev.mccue.tools.Tool;
+import dev.mccue.tools.ToolResult;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.function.Consumer;
 import java.util.spi.ToolProvider;
 
 public final class Javadoc
         extends AbstractToolRunner<Javadoc, JavadocArguments> {
+    private boolean normalize;
+
     private Javadoc(Tool tool, JavadocArguments arguments) {
         super(tool, arguments);
+        this.normalize = false;
     }
 
     private Javadoc() {
@@ -18,6 +30,59 @@ public final class Javadoc
                 Tool.ofToolProvider("javadoc"),
                 new JavadocArguments()
         );
+        this.normalize = false;
+    }
+
+    /**
+     * Makes the generated documentation depend only on its inputs, so regenerating it
+     * gives the same files.
+     *
+     * <p>Adds {@code -notimestamp}, so pages do not record when they were generated.
+     * Afterwards every file in the {@code -d} directory is dated
+     * {@link Reproducibility#DEFAULT_DATE} and given {@code 644} permissions,
+     * or {@code 755} for directories.
+     */
+    public Javadoc normalize() {
+        this.normalize = true;
+        return this;
+    }
+
+    @Override
+    protected void beforeRun() {
+        if (normalize && !arguments.has("-notimestamp")) {
+            arguments._notimestamp();
+        }
+    }
+
+    @Override
+    protected void afterRun(ToolResult result) {
+        if (!normalize) {
+            return;
+        }
+        var directory = arguments.valueOf("-d").map(Path::of);
+        if (directory.isPresent() && Files.isDirectory(directory.get())) {
+            try {
+                normalize(directory.get());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static void normalize(Path directory) throws IOException {
+        var time = FileTime.from(Reproducibility.DEFAULT_DATE.toInstant());
+        var posix = Files.getFileStore(directory).supportsFileAttributeView(PosixFileAttributeView.class);
+        try (var paths = Files.walk(directory)) {
+            for (var path : paths.toList()) {
+                if (posix) {
+                    Files.setPosixFilePermissions(
+                            path,
+                            PosixFilePermissions.fromString(Files.isDirectory(path) ? "rwxr-xr-x" : "rw-r--r--")
+                    );
+                }
+                Files.setLastModifiedTime(path, time);
+            }
+        }
     }
 
     public static Javadoc runner() {
@@ -2,15 +2,27 @@ package dev.mccue.tools.jmod;
 
 import dev.mccue.tools.AbstractToolRunner;
 import dev.mccue.tools.ExitStatusException;
+import dev.mccue.tools.Reproducibility;
 import dev.mccue.tools.Tool;
+import dev.mccue.tools.ToolResult;
+import dev.mccue.tools.jar.ArchiveNormalizer;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.function.Consumer;
 import java.util.spi.ToolProvider;
 
 public final class JMod
         extends AbstractToolRunner<JMod, JModArguments> {
+    private boolean normalize;
+
     private JMod(Tool tool, JModArguments arguments) {
         super(tool, arguments);
+        this.normalize = false;
     }
 
     private JMod() {
@@ -18,6 +30,50 @@ public final class JMod
                 Tool.ofToolProvider("jmod"),
                 new JModArguments()
         );
+        this.normalize = false;
+    }
+
+    /**
+     * Makes a created jmod depend only on its inputs, so rebuilding it gives the same bytes.
+     *
+     * <p>Unless given, {@code --date} is set to {@link Reproducibility#DEFAULT_DATE}.
+     * After the jmod is created, it is rewritten by {@link ArchiveNormalizer} with its
+     * entries sorted and permissions made uniform.
+     */
+    public JMod normalize() {
+        this.normalize = true;
+        return this;
+    }
+
+    @Override
+    protected void beforeRun() {
+        if (normalize && isCreating() && !arguments.has("--date")) {
+            // Options have to come before the jmod file
+            arguments.add(arguments.size() - 1, "--date");
+            arguments.add(arguments.size() - 1, Reproducibility.DEFAULT_DATE.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        }
+    }
+
+    @Override
+    protected void afterRun(ToolResult result) {
+        if (!normalize || !isCreating()) {
+            return;
+        }
+        var file = Path.of(arguments.get(arguments.size() - 1));
+        if (Files.isRegularFile(file)) {
+            var date = arguments.valueOf("--date")
+                    .map(value -> ZonedDateTime.parse(value, DateTimeFormatter.ISO_ZONED_DATE_TIME))
+                    .orElse(Reproducibility.DEFAULT_DATE);
+            try {
+                ArchiveNormalizer.normalize(file, date);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private boolean isCreating() {
+        return arguments.contains("create");
     }
 
     public static JMod runner() {
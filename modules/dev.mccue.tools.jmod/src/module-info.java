@@ -1,6 +1,7 @@
 module dev.mccue.tools.jmod {
     requires jdk.jlink;
     requires transitive dev.mccue.tools;
+    requires dev.mccue.tools.jar;
 
     exports dev.mccue.tools.jmod;
 }
\ No newline at end of file
@@ -4,14 +4,15 @@ import dev.mccue.tools.AbstractToolRunner;
 import dev.mccue.tools.ExitStatusException;
 import dev.mccue.tools.Tool;
 import dev.mccue.tools.ToolRunner;
+import dev.mccue.tools.jar.ZipExtractor;
 
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
 import java.util.function.Consumer;
-import java.util.zip.ZipInputStream;
 
 public final class PMD extends AbstractToolRunner<PMD, PMDArguments> {
     private static final boolean IS_WINDOWS = System.getProperty("os.name")
@@ -35,41 +36,18 @@ public final class PMD extends AbstractToolRunner<PMD, PMDArguments> {
             Files.copy(stream, downloadedZipPath, StandardCopyOption.REPLACE_EXISTING);
         }
 
-        downloadedZipPath = downloadedZipPath.toAbsolutePath();
-        try (var is = Files.newInputStream(downloadedZipPath);
-             var zis = new ZipInputStream(is)) {
-
-            for (
-                    var entry = zis.getNextEntry();
-                    entry != null;
-                    entry = zis.getNextEntry()
-            ) {
-                var entryName = entry.getName().replaceFirst(
-                        "pmd-bin-([0-9])+\\.([0-9])+\\.([0-9])+/", ""
-                );
-                var resolvedPath = destination.resolve(entryName).normalize();
-                if (!resolvedPath.startsWith(destination)) {
-                    throw new RuntimeException("Improper zip file");
-                }
-
-                if (entry.isDirectory()) {
-                    Files.createDirectories(resolvedPath);
-                } else {
-                    Files.createDirectories(resolvedPath.getParent());
-                    Files.copy(zis, resolvedPath, StandardCopyOption.REPLACE_EXISTING);
-
-                    if (resolvedPath.endsWith("pmd") && !IS_WINDOWS) {
-                        try {
-                            Tool.ofSubprocess("chmod")
-                                    .runner()
-                                    .echoCommand(false)
-                                    .run("+x", resolvedPath.toString());
-                        } catch (ExitStatusException e) {
-                            throw new IOException(e);
-                        }
-                    }
-                }
-            }
+        ZipExtractor.of(downloadedZipPath)
+                .rename(name -> name.replaceFirst("pmd-bin-([0-9])+\\.([0-9])+\\.([0-9])+/", ""))
+                .extract(destination);
+
+        // The launcher has to be executable even if the archive didn't record it as such
+        var launcher = destination.resolve("bin").resolve("pmd");
+        if (!IS_WINDOWS && Files.isRegularFile(launcher)) {
+            var permissions = Files.getPosixFilePermissions(launcher);
+            permissions.add(PosixFilePermission.OWNER_EXECUTE);
+            permissions.add(PosixFilePermission.GROUP_EXECUTE);
+            permissions.add(PosixFilePermission.OTHERS_EXECUTE);
+            Files.setPosixFilePermissions(launcher, permissions);
         }
     }
 
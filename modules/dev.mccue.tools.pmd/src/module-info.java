@@ -1,5 +1,6 @@
 module dev.mccue.tools.pmd {
     requires transitive dev.mccue.tools;
+    requires dev.mccue.tools.jar;
 
     exports dev.mccue.tools.pmd;
 }
\ No newline at end of file
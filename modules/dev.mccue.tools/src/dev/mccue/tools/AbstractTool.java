@@ -1,15 +1,26 @@
 package dev.mccue.tools;
 
 import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
 
 sealed abstract class AbstractTool
         implements Tool
-        permits SubprocessTool, ToolProviderTool {
-    abstract void run(
+        permits AdaptiveTool, SubprocessTool, ToolProviderTool {
+    abstract String name();
+
+    /**
+     * @return Everything which determines what running this tool does, other than its arguments.
+     */
+    abstract List<String> identity();
+
+    abstract ToolResult run(
             String[] arguments,
             OutputStream redirectOutput,
             OutputStream redirectError,
-            Consumer<? super String> echoCommand
-    ) throws ExitStatusException;
+            Consumer<? super String> echoCommand,
+            Duration timeout,
+            ProcessSampler processSampler
+    ) throws ToolTimeoutException;
 }
@@ -1,8 +1,11 @@
 package dev.mccue.tools;
 
 import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.function.Consumer;
 
 public non-sealed abstract class AbstractToolRunner<
@@ -14,6 +17,9 @@ public non-sealed abstract class AbstractToolRunner<
     private OutputStream redirectOutput;
     private OutputStream redirectError;
     private Consumer<? super String> echoCommand;
+    private Duration timeout;
+    private ProcessSampler processSampler;
+    private boolean deduplicate;
 
     protected AbstractToolRunner(
             Tool tool,
@@ -24,25 +30,125 @@ public non-sealed abstract class AbstractToolRunner<
         this.redirectOutput = null;
         this.redirectError = null;
         this.echoCommand = System.err::println;
+        this.timeout = null;
+        this.processSampler = null;
+        this.deduplicate = false;
     }
 
     @Override
-    public final void run() throws ExitStatusException {
+    public final ToolResult run() throws ExitStatusException {
+        beforeRun();
         var args = arguments.toArray(String[]::new);
-        (switch (tool) { case AbstractTool abstractTool -> abstractTool; })
-                .run(args, redirectOutput, redirectError, echoCommand);
+        var abstractTool = switch (tool) { case AbstractTool t -> t; };
+        var name = abstractTool.name();
+        var argumentList = Arrays.asList(args);
+
+        for (var listener : Listeners.ALL) {
+            listener.onStart(name, argumentList);
+        }
+
+        var start = Instant.now();
+        var startNanos = System.nanoTime();
+        ToolResult result;
+        try {
+            result = execute(abstractTool, args);
+        } catch (ToolTimeoutException e) {
+            var timedOut = new ToolResult(
+                    name,
+                    argumentList,
+                    e.getExitStatus(),
+                    start,
+                    Duration.ofNanos(System.nanoTime() - startNanos),
+                    e.executionMode(),
+                    Optional.empty(),
+                    0,
+                    0,
+                    true
+            );
+            for (var listener : Listeners.ALL) {
+                listener.onFinish(timedOut);
+            }
+            throw e;
+        } catch (RuntimeException | Error e) {
+            for (var listener : Listeners.ALL) {
+                listener.onError(name, argumentList, e);
+            }
+            throw e;
+        }
+
+        for (var listener : Listeners.ALL) {
+            listener.onFinish(result);
+        }
+
+        ExitStatusException.throwOnFailure(result.exitStatus());
+        afterRun(result);
+        return result;
+    }
+
+    /**
+     * Called before every run, so subclasses can add to the arguments.
+     */
+    protected void beforeRun() {
+    }
+
+    /**
+     * Called after every successful run, so subclasses can post-process what the tool produced.
+     */
+    protected void afterRun(ToolResult result) {
+    }
+
+    private ToolResult execute(AbstractTool abstractTool, String[] args) throws ToolTimeoutException {
+        var output = new CountingOutputStream(redirectOutput == null ? System.out : redirectOutput);
+        var error = new CountingOutputStream(redirectError == null ? System.err : redirectError);
+        return execute(abstractTool, args, output, error)
+                .withOutputBytes(output.count(), error.count());
+    }
+
+    private ToolResult execute(
+            AbstractTool abstractTool,
+            String[] args,
+            OutputStream redirectOutput,
+            OutputStream redirectError
+    ) throws ToolTimeoutException {
+        var effectiveTimeout = timeout == null ? Watchdog.defaultTimeout() : timeout;
+        if (deduplicate) {
+            return SingleFlight.run(
+                    abstractTool,
+                    args,
+                    redirectOutput,
+                    redirectError,
+                    (output, error) -> abstractTool.run(
+                            args,
+                            output,
+                            error,
+                            echoCommand,
+                            effectiveTimeout,
+                            processSampler
+                    )
+            );
+        }
+        else {
+            return abstractTool.run(
+                    args,
+                    redirectOutput,
+                    redirectError,
+                    echoCommand,
+                    effectiveTimeout,
+                    processSampler
+            );
+        }
     }
 
     @Override
-    public final void run(List<String> extraArguments) throws ExitStatusException {
+    public final ToolResult run(List<String> extraArguments) throws ExitStatusException {
         arguments.addAll(extraArguments);
-        run();
+        return run();
     }
 
     @Override
-    public final void run(String... extraArguments) throws ExitStatusException {
+    public final ToolResult run(String... extraArguments) throws ExitStatusException {
         arguments.addAll(Arrays.asList(extraArguments));
-        run();
+        return run();
     }
 
     @Override
@@ -82,6 +188,27 @@ public non-sealed abstract class AbstractToolRunner<
         return (Self) this;
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public final Self timeout(Duration timeout) {
+        this.timeout = timeout;
+        return (Self) this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public final Self processSampler(ProcessSampler processSampler) {
+        this.processSampler = processSampler;
+        return (Self) this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public final Self deduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+        return (Self) this;
+    }
+
     public final Arguments arguments() {
         return arguments;
     }
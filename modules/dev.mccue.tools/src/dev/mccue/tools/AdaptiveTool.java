@@ -0,0 +1,190 @@
+package dev.mccue.tools;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A tool which can run either in-process or as a subprocess, and picks
+ * whichever has recently been cheaper.
+ *
+ * <p>Latency and heap growth are tracked per tool name and mode as exponentially
+ * weighted moving averages shared by every adaptive tool in the JVM. Each mode is
+ * tried a few times before the averages are trusted, and every so often the slower
+ * mode is retried so a change in conditions gets noticed. Regardless of latency, runs
+ * go to a subprocess whenever running in-process would push this JVM's heap past
+ * {@link #HEAP_PRESSURE_THRESHOLD} of its maximum.
+ */
+final class AdaptiveTool extends AbstractTool {
+    static final double HEAP_PRESSURE_THRESHOLD = 0.75;
+
+    private static final int WARMUP_RUNS = 2;
+    private static final int EXPLORE_EVERY = 20;
+    private static final double SMOOTHING = 0.3;
+
+    private static final ConcurrentHashMap<String, Statistics> STATISTICS
+            = new ConcurrentHashMap<>();
+
+    // In-process runs share the heap, so growth is only measured for runs
+    // which had it to themselves from start to finish
+    private static final AtomicInteger IN_PROCESS_RUNNING = new AtomicInteger();
+    private static final AtomicLong IN_PROCESS_STARTED = new AtomicLong();
+
+    private final String name;
+    private final ToolProviderTool inProcess;
+    private final SubprocessTool subprocess;
+
+    AdaptiveTool(String name, ToolProviderTool inProcess, SubprocessTool subprocess) {
+        this.name = name;
+        this.inProcess = inProcess;
+        this.subprocess = subprocess;
+    }
+
+    private static final class Statistics {
+        private final long[] started = new long[ExecutionMode.values().length];
+        private final long[] runs = new long[ExecutionMode.values().length];
+        private final double[] latencyNanos = new double[ExecutionMode.values().length];
+        private double heapGrowthBytes = 0;
+        private long heapSamples = 0;
+        private long decisions = 0;
+
+        synchronized ExecutionMode choose() {
+            var mode = decide();
+            // Counted now, so that runs which start together don't all warm up the same mode
+            started[mode.ordinal()]++;
+            return mode;
+        }
+
+        private ExecutionMode decide() {
+            decisions++;
+
+            var runtime = Runtime.getRuntime();
+            var used = runtime.totalMemory() - runtime.freeMemory();
+            if (used + heapGrowthBytes > HEAP_PRESSURE_THRESHOLD * runtime.maxMemory()) {
+                return ExecutionMode.SUBPROCESS;
+            }
+
+            for (var mode : ExecutionMode.values()) {
+                if (started[mode.ordinal()] < WARMUP_RUNS) {
+                    return mode;
+                }
+            }
+
+            // Until both modes have finished a run, there's only one latency to go by
+            for (var mode : ExecutionMode.values()) {
+                if (runs[mode.ordinal()] == 0) {
+                    return mode == ExecutionMode.IN_PROCESS
+                            ? ExecutionMode.SUBPROCESS
+                            : ExecutionMode.IN_PROCESS;
+                }
+            }
+
+            var faster = latencyNanos[ExecutionMode.IN_PROCESS.ordinal()]
+                    <= latencyNanos[ExecutionMode.SUBPROCESS.ordinal()]
+                    ? ExecutionMode.IN_PROCESS
+                    : ExecutionMode.SUBPROCESS;
+            if (decisions % EXPLORE_EVERY == 0) {
+                return faster == ExecutionMode.IN_PROCESS
+                        ? ExecutionMode.SUBPROCESS
+                        : ExecutionMode.IN_PROCESS;
+            }
+            return faster;
+        }
+
+        synchronized void record(ExecutionMode mode, Duration duration) {
+            var i = mode.ordinal();
+            latencyNanos[i] = runs[i] == 0
+                    ? duration.toNanos()
+                    : SMOOTHING * duration.toNanos() + (1 - SMOOTHING) * latencyNanos[i];
+            runs[i]++;
+        }
+
+        synchronized void recordHeapGrowth(long heapGrowth) {
+            heapGrowthBytes = heapSamples == 0
+                    ? heapGrowth
+                    : SMOOTHING * heapGrowth + (1 - SMOOTHING) * heapGrowthBytes;
+            heapSamples++;
+        }
+    }
+
+    @Override
+    String name() {
+        return name;
+    }
+
+    @Override
+    List<String> identity() {
+        var identity = new ArrayList<String>();
+        identity.add("adaptive");
+        identity.addAll(inProcess.identity());
+        identity.addAll(subprocess.identity());
+        return identity;
+    }
+
+    @Override
+    public void run(String[] args) throws ExitStatusException {
+        ExitStatusException.throwOnFailure(
+                run(args, null, null, System.err::println, Watchdog.defaultTimeout(), null)
+                        .exitStatus()
+        );
+    }
+
+    @Override
+    public void run(List<String> args) throws ExitStatusException {
+        run(args.toArray(String[]::new));
+    }
+
+    @Override
+    ToolResult run(
+            String[] arguments,
+            OutputStream redirectOutput,
+            OutputStream redirectError,
+            Consumer<? super String> echoCommand,
+            Duration timeout,
+            ProcessSampler processSampler
+    ) throws ToolTimeoutException {
+        var statistics = STATISTICS.computeIfAbsent(name, __ -> new Statistics());
+        var mode = statistics.choose();
+        if (mode == ExecutionMode.SUBPROCESS) {
+            var result = subprocess.run(
+                    arguments,
+                    redirectOutput,
+                    redirectError,
+                    echoCommand,
+                    timeout,
+                    processSampler
+            );
+            statistics.record(mode, result.duration());
+            return result;
+        }
+        else {
+            var runtime = Runtime.getRuntime();
+            var generation = IN_PROCESS_STARTED.incrementAndGet();
+            var alone = IN_PROCESS_RUNNING.incrementAndGet() == 1;
+            try {
+                var usedBefore = runtime.totalMemory() - runtime.freeMemory();
+                var result = inProcess.run(
+                        arguments,
+                        redirectOutput,
+                        redirectError,
+                        echoCommand,
+                        timeout,
+                        processSampler
+                );
+                var usedAfter = runtime.totalMemory() - runtime.freeMemory();
+                statistics.record(mode, result.duration());
+                if (alone && IN_PROCESS_STARTED.get() == generation) {
+                    statistics.recordHeapGrowth(Math.max(0, usedAfter - usedBefore));
+                }
+                return result;
+            } finally {
+                IN_PROCESS_RUNNING.decrementAndGet();
+            }
+        }
+    }
+}
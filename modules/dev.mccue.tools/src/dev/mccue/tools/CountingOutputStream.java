@@ -0,0 +1,36 @@
+package dev.mccue.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class CountingOutputStream extends OutputStream {
+    private final OutputStream delegate;
+    private final AtomicLong count;
+
+    CountingOutputStream(OutputStream delegate) {
+        this.delegate = delegate;
+        this.count = new AtomicLong();
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        delegate.write(b);
+        count.incrementAndGet();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        delegate.write(b, off, len);
+        count.addAndGet(len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+}
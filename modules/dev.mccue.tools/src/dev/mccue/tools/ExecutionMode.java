@@ -0,0 +1,15 @@
+package dev.mccue.tools;
+
+/**
+ * How a tool was run.
+ */
+public enum ExecutionMode {
+    /**
+     * In this JVM, through a {@link java.util.spi.ToolProvider}.
+     */
+    IN_PROCESS,
+    /**
+     * As a separate process.
+     */
+    SUBPROCESS
+}
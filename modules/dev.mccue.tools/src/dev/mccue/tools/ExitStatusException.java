@@ -9,7 +9,8 @@ import java.io.Serial;
  * @author Geert Bevin (gbevin[remove] at uwyn dot com)
  * @since 1.5
  */
-public final class ExitStatusException extends Exception {
+public sealed class ExitStatusException extends Exception
+        permits ToolTimeoutException {
     public static final int EXIT_SUCCESS = 0;
     public static final int EXIT_FAILURE = 1;
 
@@ -22,6 +23,11 @@ public final class ExitStatusException extends Exception {
         exitStatus_ = exitStatus;
     }
 
+    ExitStatusException(int exitStatus, String message) {
+        super(message);
+        exitStatus_ = exitStatus;
+    }
+
     public int getExitStatus() {
         return exitStatus_;
     }
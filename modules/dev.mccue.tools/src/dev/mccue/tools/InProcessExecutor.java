@@ -0,0 +1,124 @@
+package dev.mccue.tools;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A pool of platform threads which in-process tools are run on.
+ *
+ * <p>Tools like javac and javadoc do long, cpu bound and deeply recursive work.
+ * Run directly on a virtual thread they would pin its carrier for the whole
+ * compilation and are limited by the default stack size. Handing them to a
+ * pool with large stacks instead lets any number of virtual threads wait on
+ * them cheaply.
+ *
+ * <p>In-process tools use the {@linkplain #defaultExecutor() default executor} when
+ * called from a virtual thread or when they have a timeout, unless they were created
+ * with an executor of their own, in which case they always use it.
+ */
+public final class InProcessExecutor implements AutoCloseable {
+    /**
+     * The stack size of threads in the default executor.
+     */
+    public static final long DEFAULT_STACK_SIZE = 16 * 1024 * 1024;
+
+    private static final ThreadLocal<InProcessExecutor> CURRENT = new ThreadLocal<>();
+
+    private static volatile InProcessExecutor defaultExecutor = null;
+
+    private final ExecutorService executorService;
+    private final int poolSize;
+    private final long stackSize;
+
+    private InProcessExecutor(int poolSize, long stackSize) {
+        var factory = Thread.ofPlatform()
+                .name("dev.mccue.tools-in-process-", 0)
+                .stackSize(stackSize)
+                .daemon()
+                .factory();
+        this.executorService = Executors.newFixedThreadPool(
+                poolSize,
+                runnable -> factory.newThread(() -> {
+                    CURRENT.set(this);
+                    runnable.run();
+                })
+        );
+        this.poolSize = poolSize;
+        this.stackSize = stackSize;
+    }
+
+    /**
+     * @param poolSize How many tools can run at once.
+     * @param stackSize The stack size of each thread, in bytes.
+     * @return A new executor. Its threads are started as needed.
+     */
+    public static InProcessExecutor of(int poolSize, long stackSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be positive: " + poolSize);
+        }
+        if (stackSize < 1) {
+            throw new IllegalArgumentException("stackSize must be positive: " + stackSize);
+        }
+        return new InProcessExecutor(poolSize, stackSize);
+    }
+
+    /**
+     * @return The executor used by in-process tools which were not given one. Unless
+     * replaced it has one thread per available processor, each with a stack of
+     * {@link #DEFAULT_STACK_SIZE} bytes.
+     */
+    public static InProcessExecutor defaultExecutor() {
+        var executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (InProcessExecutor.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    executor = of(Runtime.getRuntime().availableProcessors(), DEFAULT_STACK_SIZE);
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Replaces the default executor. The previous default is not closed,
+     * so tools already running on it are unaffected.
+     *
+     * @param executor The new default executor.
+     */
+    public static void defaultExecutor(InProcessExecutor executor) {
+        defaultExecutor = Objects.requireNonNull(executor, "executor");
+    }
+
+    public int poolSize() {
+        return poolSize;
+    }
+
+    public long stackSize() {
+        return stackSize;
+    }
+
+    /**
+     * @return Whether the current thread is one of this executor's threads, in
+     * which case work should be done inline rather than queued behind itself.
+     */
+    boolean isCurrent() {
+        return CURRENT.get() == this;
+    }
+
+    <T> Future<T> submit(Callable<T> task) {
+        return executorService.submit(task);
+    }
+
+    /**
+     * Stops accepting new tools and waits for the ones already submitted to finish.
+     */
+    @Override
+    public void close() {
+        executorService.close();
+    }
+}
@@ -0,0 +1,12 @@
+package dev.mccue.tools;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The {@link ToolListener}s registered for every tool run in this JVM.
+ */
+final class Listeners {
+    static final CopyOnWriteArrayList<ToolListener> ALL = new CopyOnWriteArrayList<>();
+
+    private Listeners() {}
+}
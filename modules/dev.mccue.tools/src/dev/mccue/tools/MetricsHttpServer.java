@@ -0,0 +1,54 @@
+package dev.mccue.tools;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves {@link ToolMetrics} in the Prometheus text format on {@code /metrics}.
+ *
+ * <p>Kept apart from {@link ToolMetrics} so that {@code jdk.httpserver} is only
+ * needed by programs which actually serve metrics.
+ */
+final class MetricsHttpServer {
+    private final HttpServer server;
+
+    private MetricsHttpServer(HttpServer server) {
+        this.server = server;
+    }
+
+    static MetricsHttpServer start(ToolMetrics metrics, InetSocketAddress address) {
+        HttpServer server;
+        try {
+            server = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                var body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.start();
+        return new MetricsHttpServer(server);
+    }
+
+    InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,43 @@
+package dev.mccue.tools;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers {@link ToolMetricsMXBean}s with the platform MBean server.
+ *
+ * <p>Kept apart from {@link ToolMetrics} so that {@code java.management} is only
+ * needed by programs which actually use JMX.
+ */
+final class MetricsMBeans {
+    private MetricsMBeans() {}
+
+    static void register(ToolMetricsMXBean bean) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name(bean));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by a racing call, which is just as good
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void unregister(ToolMetricsMXBean bean) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name(bean));
+        } catch (InstanceNotFoundException e) {
+            // Never registered, or already unregistered
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ObjectName name(ToolMetricsMXBean bean) throws JMException {
+        return new ObjectName(
+                "dev.mccue.tools:type=ToolMetrics,tool=" + ObjectName.quote(bean.getTool())
+        );
+    }
+}
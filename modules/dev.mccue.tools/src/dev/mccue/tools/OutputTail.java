@@ -0,0 +1,71 @@
+package dev.mccue.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keeps the last few bytes written by a tool so they can be reported
+ * if the tool needs to be stopped.
+ */
+final class OutputTail {
+    private final byte[] buffer;
+    private int position;
+    private boolean wrapped;
+
+    OutputTail(int size) {
+        this.buffer = new byte[size];
+        this.position = 0;
+        this.wrapped = false;
+    }
+
+    synchronized void write(byte[] b, int off, int len) {
+        if (len >= buffer.length) {
+            System.arraycopy(b, off + len - buffer.length, buffer, 0, buffer.length);
+            position = 0;
+            wrapped = true;
+            return;
+        }
+
+        var firstChunk = Math.min(len, buffer.length - position);
+        System.arraycopy(b, off, buffer, position, firstChunk);
+        System.arraycopy(b, off + firstChunk, buffer, 0, len - firstChunk);
+        if (position + len >= buffer.length) {
+            wrapped = true;
+        }
+        position = (position + len) % buffer.length;
+    }
+
+    OutputStream tee(OutputStream delegate) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                delegate.write(b);
+                OutputTail.this.write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                delegate.write(b, off, len);
+                OutputTail.this.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                delegate.flush();
+            }
+        };
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (!wrapped) {
+            return new String(buffer, 0, position, StandardCharsets.UTF_8);
+        }
+
+        var ordered = new byte[buffer.length];
+        System.arraycopy(buffer, position, ordered, 0, buffer.length - position);
+        System.arraycopy(buffer, 0, ordered, buffer.length - position, position);
+        return new String(ordered, StandardCharsets.UTF_8);
+    }
+}
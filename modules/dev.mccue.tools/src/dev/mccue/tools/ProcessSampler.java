@@ -0,0 +1,258 @@
+package dev.mccue.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Periodically samples the cpu, memory, I/O and context switch counters of
+ * subprocess tools and their descendants from {@code /proc}.
+ *
+ * <p>All samplers share a single timer thread. On systems without a Linux style
+ * {@code /proc} filesystem sampling is skipped and runs report no
+ * {@link ToolResult#processStats()}. In-process tools are never sampled.
+ *
+ * <p>Processes are sampled once when they start, at every interval, and once more
+ * when sampling stops. A process can only be read until it is reaped, which happens
+ * as soon as it exits, so the counters reported for a process are those from the
+ * last sample taken while it was running. A process which exits before its first
+ * sample, like most runs shorter than the interval, isn't counted at all, and
+ * {@link ProcessStats#samples()} is then zero.
+ */
+public final class ProcessSampler {
+    private static final Path PROC = Path.of("/proc");
+
+    // USER_HZ, which /proc/<pid>/stat reports cpu times in, is 100 on every
+    // architecture Linux supports in practice.
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private static final boolean SUPPORTED = Files.isReadable(PROC.resolve("self").resolve("stat"));
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            runnable -> Thread.ofPlatform()
+                    .name("dev.mccue.tools-process-sampler")
+                    .daemon()
+                    .unstarted(runnable)
+    );
+
+    private static final ProcessSampler DEFAULT = new ProcessSampler(Duration.ofMillis(250));
+
+    private final Duration interval;
+
+    private ProcessSampler(Duration interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * @return A sampler which samples every 250 milliseconds.
+     */
+    public static ProcessSampler of() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param interval How often to sample.
+     * @return A sampler which samples at the given interval.
+     */
+    public static ProcessSampler ofInterval(Duration interval) {
+        Objects.requireNonNull(interval, "interval");
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval must be positive: " + interval);
+        }
+        return new ProcessSampler(interval);
+    }
+
+    /**
+     * @return Whether process sampling works on this system.
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    public Duration interval() {
+        return interval;
+    }
+
+    /**
+     * Starts sampling the given process tree.
+     *
+     * @return The sampling, or {@code null} if sampling is not supported.
+     */
+    Sampling start(ProcessHandle root) {
+        if (!SUPPORTED) {
+            return null;
+        }
+        var sampling = new Sampling(root);
+        sampling.sample();
+        sampling.future = TIMER.scheduleAtFixedRate(
+                sampling::sample,
+                interval.toNanos(),
+                interval.toNanos(),
+                TimeUnit.NANOSECONDS
+        );
+        return sampling;
+    }
+
+    private record Snapshot(
+            long residentSetBytes,
+            long highWaterMarkBytes,
+            long readBytes,
+            long writeBytes,
+            long voluntaryContextSwitches,
+            long involuntaryContextSwitches,
+            long userTicks,
+            long systemTicks
+    ) {
+    }
+
+    static final class Sampling {
+        private final ProcessHandle root;
+        private final Map<Long, Snapshot> lastSeen;
+        private ScheduledFuture<?> future;
+        private int samples;
+        private int peakProcessCount;
+        private long peakResidentSetBytes;
+
+        private Sampling(ProcessHandle root) {
+            this.root = root;
+            this.lastSeen = new HashMap<>();
+            this.samples = 0;
+            this.peakProcessCount = 0;
+            this.peakResidentSetBytes = 0;
+        }
+
+        private synchronized void sample() {
+            List<ProcessHandle> handles;
+            try {
+                handles = Stream.concat(Stream.of(root), root.descendants()).toList();
+            } catch (RuntimeException e) {
+                return;
+            }
+            int processCount = 0;
+            long residentSetBytes = 0;
+            for (var handle : handles) {
+                Snapshot snapshot;
+                try {
+                    snapshot = read(handle.pid());
+                } catch (RuntimeException e) {
+                    // Read as the process was exiting, and cut short. Throwing would
+                    // also cancel every later sample.
+                    continue;
+                }
+                if (snapshot != null) {
+                    processCount++;
+                    residentSetBytes += snapshot.residentSetBytes;
+                    peakResidentSetBytes = Math.max(peakResidentSetBytes, snapshot.highWaterMarkBytes);
+                    lastSeen.put(handle.pid(), snapshot);
+                }
+            }
+
+            if (processCount > 0) {
+                samples++;
+                peakProcessCount = Math.max(peakProcessCount, processCount);
+                peakResidentSetBytes = Math.max(peakResidentSetBytes, residentSetBytes);
+            }
+        }
+
+        /**
+         * Stops sampling, after sampling whatever is still running one last time.
+         * Stopping again does nothing more.
+         *
+         * @return Statistics for everything sampled.
+         */
+        synchronized ProcessStats stop() {
+            if (!future.isCancelled()) {
+                future.cancel(false);
+                sample();
+            }
+
+            long readBytes = 0;
+            long writeBytes = 0;
+            long voluntaryContextSwitches = 0;
+            long involuntaryContextSwitches = 0;
+            long userTicks = 0;
+            long systemTicks = 0;
+            for (var snapshot : lastSeen.values()) {
+                readBytes += snapshot.readBytes;
+                writeBytes += snapshot.writeBytes;
+                voluntaryContextSwitches += snapshot.voluntaryContextSwitches;
+                involuntaryContextSwitches += snapshot.involuntaryContextSwitches;
+                userTicks += snapshot.userTicks;
+                systemTicks += snapshot.systemTicks;
+            }
+
+            return new ProcessStats(
+                    samples,
+                    peakProcessCount,
+                    peakResidentSetBytes,
+                    readBytes,
+                    writeBytes,
+                    voluntaryContextSwitches,
+                    involuntaryContextSwitches,
+                    Duration.ofMillis(userTicks * 1000 / CLOCK_TICKS_PER_SECOND),
+                    Duration.ofMillis(systemTicks * 1000 / CLOCK_TICKS_PER_SECOND)
+            );
+        }
+    }
+
+    private static Snapshot read(long pid) {
+        var directory = PROC.resolve(Long.toString(pid));
+        List<String> status;
+        String stat;
+        try {
+            status = Files.readAllLines(directory.resolve("status"));
+            stat = Files.readString(directory.resolve("stat"));
+        } catch (IOException e) {
+            // The process exited between being listed and being read
+            return null;
+        }
+
+        List<String> io;
+        try {
+            io = Files.readAllLines(directory.resolve("io"));
+        } catch (IOException e) {
+            // /proc/<pid>/io needs ptrace access, which can be denied by
+            // the yama security module or a container runtime.
+            io = List.of();
+        }
+
+        // The command name in parentheses can itself contain spaces and parentheses,
+        // so fields are counted from after the last closing parenthesis. utime and
+        // stime are the 14th and 15th fields of the whole line.
+        var fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+        long userTicks = fields.length > 12 ? Long.parseLong(fields[11]) : 0;
+        long systemTicks = fields.length > 12 ? Long.parseLong(fields[12]) : 0;
+
+        return new Snapshot(
+                field(status, "VmRSS:") * 1024,
+                field(status, "VmHWM:") * 1024,
+                field(io, "read_bytes:"),
+                field(io, "write_bytes:"),
+                field(status, "voluntary_ctxt_switches:"),
+                field(status, "nonvoluntary_ctxt_switches:"),
+                userTicks,
+                systemTicks
+        );
+    }
+
+    private static long field(List<String> lines, String name) {
+        for (var line : lines) {
+            if (line.startsWith(name)) {
+                var value = line.substring(name.length()).strip();
+                var space = value.indexOf(' ');
+                return Long.parseLong(space == -1 ? value : value.substring(0, space));
+            }
+        }
+        return 0;
+    }
+}
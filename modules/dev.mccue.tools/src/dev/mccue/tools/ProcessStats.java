@@ -0,0 +1,34 @@
+package dev.mccue.tools;
+
+import java.time.Duration;
+
+/**
+ * Resource usage of a subprocess tool and all of its descendants, as
+ * observed by a {@link ProcessSampler}.
+ *
+ * <p>Cumulative counters are summed over every process seen during the run,
+ * using the last value sampled for each. Processes which start and exit
+ * between two samples are not accounted for.
+ *
+ * @param samples The number of times the process tree was sampled.
+ * @param peakProcessCount The most processes seen in the tree at once.
+ * @param peakResidentSetBytes The highest resident set size of the tree, in bytes.
+ * @param readBytes Bytes the tree caused to be read from storage.
+ * @param writeBytes Bytes the tree caused to be written to storage.
+ * @param voluntaryContextSwitches Context switches where a process gave up the cpu, usually to wait on I/O.
+ * @param involuntaryContextSwitches Context switches where a process was preempted.
+ * @param userCpu Cpu time spent in user mode.
+ * @param systemCpu Cpu time spent in kernel mode.
+ */
+public record ProcessStats(
+        int samples,
+        int peakProcessCount,
+        long peakResidentSetBytes,
+        long readBytes,
+        long writeBytes,
+        long voluntaryContextSwitches,
+        long involuntaryContextSwitches,
+        Duration userCpu,
+        Duration systemCpu
+) {
+}
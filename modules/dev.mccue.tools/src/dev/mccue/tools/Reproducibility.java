@@ -0,0 +1,195 @@
+package dev.mccue.tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Checks that tools produce the same output every time they run with the same inputs.
+ *
+ * <pre>{@code
+ * var differences = Reproducibility.verify(
+ *         Jar.runner(arguments -> arguments
+ *                 .__create()
+ *                 .__file("build/app.jar")
+ *                 ._C("build/classes", "."))
+ *                 .normalize(),
+ *         Path.of("build", "app.jar")
+ * );
+ * }</pre>
+ */
+public final class Reproducibility {
+    /**
+     * The time normalized outputs are dated with unless told otherwise. It is
+     * the earliest time a jar or jmod can record.
+     */
+    public static final ZonedDateTime DEFAULT_DATE = ZonedDateTime.of(1980, 1, 1, 0, 0, 2, 0, ZoneOffset.UTC);
+
+    private Reproducibility() {}
+
+    /**
+     * @param output A file, or a directory of files.
+     * @return The SHA-256 digest of the file's contents, or of the names and contents
+     * of every file in the directory.
+     */
+    public static String digest(Path output) throws IOException {
+        var digest = sha256();
+        if (Files.isDirectory(output)) {
+            for (var file : files(output)) {
+                digest.update(file.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(sha256(Files.readAllBytes(output.resolve(file))));
+            }
+        }
+        else {
+            digest.update(Files.readAllBytes(output));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Runs a tool twice and compares what it produced each time. The first output is
+     * moved aside before the second run, so that is a clean rebuild.
+     *
+     * @param runner The runner, which writes the same output each time it runs.
+     * @param output The file or directory it writes.
+     * @return Descriptions of each difference between the two outputs. If there are
+     * none, the tool is deterministic for these inputs.
+     */
+    public static List<String> verify(ToolRunner runner, Path output) throws ExitStatusException, IOException {
+        output = output.toAbsolutePath();
+        runner.run();
+        var first = output.resolveSibling(output.getFileName() + "." + UUID.randomUUID() + ".first");
+        Files.move(output, first);
+        try {
+            runner.run();
+            return differences(first, output);
+        } finally {
+            delete(first);
+        }
+    }
+
+    /**
+     * @return Descriptions of each difference between two files or directories.
+     */
+    static List<String> differences(Path before, Path after) throws IOException {
+        var differences = new ArrayList<String>();
+        if (Files.isDirectory(before) && Files.isDirectory(after)) {
+            var beforeFiles = files(before);
+            var afterFiles = files(after);
+            var all = new TreeSet<>(beforeFiles);
+            all.addAll(afterFiles);
+            for (var file : all) {
+                if (!afterFiles.contains(file)) {
+                    differences.add(file + ": missing from the rebuild");
+                }
+                else if (!beforeFiles.contains(file)) {
+                    differences.add(file + ": only in the rebuild");
+                }
+                else {
+                    differences.addAll(fileDifferences(file, before.resolve(file), after.resolve(file)));
+                }
+            }
+        }
+        else {
+            differences.addAll(fileDifferences(after.toString(), before, after));
+        }
+        return differences;
+    }
+
+    private static List<String> fileDifferences(String name, Path before, Path after) throws IOException {
+        var mismatch = Files.mismatch(before, after);
+        if (mismatch == -1) {
+            return List.of();
+        }
+
+        // Archives are compared entry by entry, which says a lot more than a byte offset
+        List<? extends ZipEntry> beforeEntries;
+        List<? extends ZipEntry> afterEntries;
+        try (var beforeZip = new ZipFile(before.toFile()); var afterZip = new ZipFile(after.toFile())) {
+            beforeEntries = beforeZip.stream().toList();
+            afterEntries = afterZip.stream().toList();
+        } catch (ZipException e) {
+            return List.of(name + ": differs from byte " + mismatch);
+        }
+
+        var differences = new ArrayList<String>();
+        for (int i = 0; i < Math.max(beforeEntries.size(), afterEntries.size()); i++) {
+            if (i >= afterEntries.size()) {
+                differences.add(name + ": " + beforeEntries.get(i).getName() + " missing from the rebuild");
+                continue;
+            }
+            if (i >= beforeEntries.size()) {
+                differences.add(name + ": " + afterEntries.get(i).getName() + " only in the rebuild");
+                continue;
+            }
+
+            var was = beforeEntries.get(i);
+            var is = afterEntries.get(i);
+            var entry = name + "!/" + is.getName();
+            if (!was.getName().equals(is.getName())) {
+                differences.add(name + ": entry " + i + " is " + is.getName() + ", was " + was.getName());
+            }
+            else if (was.getCrc() != is.getCrc() || was.getSize() != is.getSize()) {
+                differences.add(entry + ": contents differ");
+            }
+            else if (was.getTime() != is.getTime()) {
+                differences.add(entry + ": dated " + is.getTimeLocal() + ", was " + was.getTimeLocal());
+            }
+            else if (was.getMethod() != is.getMethod() || was.getCompressedSize() != is.getCompressedSize()) {
+                differences.add(entry + ": compressed differently");
+            }
+            else if (!Objects.deepEquals(was.getExtra(), is.getExtra())) {
+                differences.add(entry + ": extra fields differ");
+            }
+        }
+        if (differences.isEmpty()) {
+            differences.add(name + ": differs from byte " + mismatch);
+        }
+        return differences;
+    }
+
+    private static TreeSet<String> files(Path directory) throws IOException {
+        try (var paths = Files.walk(directory)) {
+            var files = new TreeSet<String>();
+            paths.filter(Files::isRegularFile)
+                    .forEach(path -> files.add(directory.relativize(path).toString().replace('\\', '/')));
+            return files;
+        }
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (var paths = Files.walk(root)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static byte[] sha256(byte[] contents) {
+        return sha256().digest(contents);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package dev.mccue.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collapses identical tool runs which are in flight at the same time into
+ * a single execution.
+ *
+ * <p>Runs are identical when they use the same tool, from the same working
+ * directory, with the same arguments. The first caller runs the tool and
+ * captures its output. Everyone who asked for the same run while it was going
+ * gets that output written to their own streams and the same result or exception.
+ *
+ * <p>Only so much output is kept. A run which prints more than that stops being
+ * shared, and anyone who had already asked for it runs the tool again themselves.
+ */
+final class SingleFlight {
+    private record Key(List<String> tool, List<String> arguments) {
+    }
+
+    // How much of each stream is kept for the runs which join another
+    private static final int MAX_CAPTURED = 1024 * 1024;
+
+    /**
+     * @param output What was printed, or {@code null} if it was too much to keep.
+     * @param error What was printed, or {@code null} if it was too much to keep.
+     */
+    private record Outcome(ToolResult result, byte[] output, byte[] error, Throwable failure) {
+    }
+
+    interface Execution {
+        ToolResult run(OutputStream output, OutputStream error) throws ToolTimeoutException;
+    }
+
+    private static final ConcurrentHashMap<Key, CompletableFuture<Outcome>> IN_FLIGHT
+            = new ConcurrentHashMap<>();
+
+    private SingleFlight() {}
+
+    static ToolResult run(
+            AbstractTool tool,
+            String[] arguments,
+            OutputStream redirectOutput,
+            OutputStream redirectError,
+            Execution execution
+    ) throws ToolTimeoutException {
+        var output = redirectOutput == null ? System.out : redirectOutput;
+        var error = redirectError == null ? System.err : redirectError;
+
+        var key = new Key(tool.identity(), List.of(arguments));
+        var flight = new CompletableFuture<Outcome>();
+        var existing = IN_FLIGHT.putIfAbsent(key, flight);
+        if (existing != null) {
+            var outcome = existing.join();
+            if (outcome.output == null || outcome.error == null) {
+                return run(tool, arguments, redirectOutput, redirectError, execution);
+            }
+            return follow(outcome, output, error);
+        }
+
+        // Once there is too much output to keep, nobody else can join
+        Runnable overflowed = () -> IN_FLIGHT.remove(key, flight);
+        var capturedOutput = new Capture(overflowed);
+        var capturedError = new Capture(overflowed);
+        Outcome outcome;
+        try {
+            var result = execution.run(tee(output, capturedOutput), tee(error, capturedError));
+            outcome = new Outcome(result, capturedOutput.captured(), capturedError.captured(), null);
+        } catch (ToolTimeoutException | RuntimeException | Error e) {
+            outcome = new Outcome(null, capturedOutput.captured(), capturedError.captured(), e);
+        }
+
+        // Removing before completing means nobody can join a flight which has
+        // already landed and be handed a result older than their request.
+        IN_FLIGHT.remove(key, flight);
+        flight.complete(outcome);
+
+        rethrow(outcome.failure);
+        return outcome.result;
+    }
+
+    private static ToolResult follow(Outcome outcome, OutputStream output, OutputStream error)
+            throws ToolTimeoutException {
+        try {
+            output.write(outcome.output);
+            output.flush();
+            error.write(outcome.error);
+            error.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        rethrow(outcome.failure);
+        return outcome.result;
+    }
+
+    private static void rethrow(Throwable failure) throws ToolTimeoutException {
+        switch (failure) {
+            case null -> {}
+            case ToolTimeoutException e -> throw e;
+            case RuntimeException e -> throw e;
+            case Error e -> throw e;
+            default -> throw new IllegalStateException(failure);
+        }
+    }
+
+    private static OutputStream tee(OutputStream target, OutputStream capture) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                target.write(b);
+                capture.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                target.write(b, off, len);
+                capture.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                target.flush();
+            }
+        };
+    }
+
+    private static final class Capture extends ByteArrayOutputStream {
+        private final Runnable overflowed;
+        private boolean full;
+
+        Capture(Runnable overflowed) {
+            this.overflowed = overflowed;
+            this.full = false;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (fits(1)) {
+                super.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            if (fits(len)) {
+                super.write(b, off, len);
+            }
+        }
+
+        private boolean fits(int length) {
+            if (!full && count + (long) length > MAX_CAPTURED) {
+                full = true;
+                buf = new byte[0];
+                count = 0;
+                overflowed.run();
+            }
+            return !full;
+        }
+
+        /**
+         * @return What was written, or {@code null} if it was too much to keep.
+         */
+        synchronized byte[] captured() {
+            return full ? null : toByteArray();
+        }
+    }
+}
@@ -4,12 +4,20 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 final class SubprocessTool extends AbstractTool {
+    // How long to wait for the output of a timed out tool to be copied
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(5);
+
     private final List<String> commandPrefix;
     private final File directory;
 
@@ -18,9 +26,30 @@ final class SubprocessTool extends AbstractTool {
         this.directory = directory;
     }
 
+    @Override
+    String name() {
+        var name = Path.of(commandPrefix.get(0)).getFileName().toString();
+        var extension = name.lastIndexOf('.');
+        return extension > 0 ? name.substring(0, extension) : name;
+    }
+
+    @Override
+    List<String> identity() {
+        var identity = new ArrayList<String>();
+        identity.add("subprocess");
+        identity.add(directory == null
+                ? Path.of("").toAbsolutePath().toString()
+                : directory.getAbsolutePath());
+        identity.addAll(commandPrefix);
+        return identity;
+    }
+
     @Override
     public void run(String[] args) throws ExitStatusException {
-        run(args, null, null, System.err::println);
+        ExitStatusException.throwOnFailure(
+                run(args, null, null, System.err::println, Watchdog.defaultTimeout(), null)
+                        .exitStatus()
+        );
     }
 
     @Override
@@ -29,12 +58,14 @@ final class SubprocessTool extends AbstractTool {
     }
 
     @Override
-    void run(
+    ToolResult run(
             String[] arguments,
             OutputStream redirectOutput,
             OutputStream redirectError,
-            Consumer<? super String> echoCommand
-    ) throws ExitStatusException {
+            Consumer<? super String> echoCommand,
+            Duration timeout,
+            ProcessSampler processSampler
+    ) throws ToolTimeoutException {
         if (echoCommand != null) {
             var sb = new StringBuilder();
             sb.append(String.join(" ", commandPrefix));
@@ -56,27 +87,76 @@ final class SubprocessTool extends AbstractTool {
                 pb.directory(directory);
             }
 
+            var outputTail = timeout == null ? null : new OutputTail(Watchdog.OUTPUT_TAIL_SIZE);
+            var output = redirectOutput == null ? System.out : redirectOutput;
+            var error = redirectError == null ? System.err : redirectError;
+            if (outputTail != null) {
+                output = outputTail.tee(output);
+                error = outputTail.tee(error);
+            }
+
+            var start = Instant.now();
+            var startNanos = System.nanoTime();
             var process = pb.start();
-            var t1 = Thread.startVirtualThread(() -> {
-                try {
-                    process.getInputStream()
-                            .transferTo(redirectOutput == null ? System.out : redirectOutput);
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
+            var sampling = processSampler == null ? null : processSampler.start(process.toHandle());
+            try {
+                var stdout = output;
+                var t1 = Thread.startVirtualThread(() -> {
+                    try {
+                        process.getInputStream()
+                                .transferTo(stdout);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                var stderr = error;
+                var t2 = Thread.startVirtualThread(() -> {
+                    try {
+                        process.getErrorStream()
+                                .transferTo(stderr);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+
+                if (timeout != null && !process.waitFor(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                    var timeoutException = Watchdog.expire(
+                            name(),
+                            process,
+                            timeout,
+                            outputTail
+                    );
+                    process.waitFor();
+                    // The pipes close once the tree is gone, unless something which
+                    // escaped it still holds them open
+                    t1.join(DRAIN_TIMEOUT);
+                    t2.join(DRAIN_TIMEOUT);
+                    throw timeoutException;
                 }
-            });
-            var t2 = Thread.startVirtualThread(() -> {
-                try {
-                    process.getErrorStream()
-                            .transferTo(redirectError == null ? System.err : redirectError);
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
+
+                int exit = process.waitFor();
+                var duration = Duration.ofNanos(System.nanoTime() - startNanos);
+                var processStats = sampling == null ? null : sampling.stop();
+                t1.join();
+                t2.join();
+                return new ToolResult(
+                        name(),
+                        Arrays.asList(arguments),
+                        exit,
+                        start,
+                        duration,
+                        ExecutionMode.SUBPROCESS,
+                        Optional.ofNullable(processStats),
+                        0,
+                        0,
+                        false
+                );
+            } finally {
+                // Also when interrupted, or the timer would keep sampling forever
+                if (sampling != null) {
+                    sampling.stop();
                 }
-            });
-            int exit = process.waitFor();
-            ExitStatusException.throwOnFailure(exit);
-            t1.join();
-            t2.join();
+            }
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         } catch (IOException e) {
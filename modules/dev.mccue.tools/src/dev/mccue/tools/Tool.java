@@ -4,6 +4,7 @@ import java.io.File;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.spi.ToolProvider;
 
 public sealed interface Tool
@@ -15,11 +16,24 @@ public sealed interface Tool
     }
 
     static Tool ofToolProvider(ToolProvider toolProvider) {
-        return new ToolProviderTool(toolProvider);
+        return new ToolProviderTool(toolProvider, null);
     }
 
     static Tool ofToolProvider(String toolProviderName) {
-        return new ToolProviderTool(ToolProvider.findFirst(toolProviderName).orElseThrow());
+        return new ToolProviderTool(ToolProvider.findFirst(toolProviderName).orElseThrow(), null);
+    }
+
+    /**
+     * @param toolProvider The tool provider.
+     * @param executor The executor the tool will always be run on.
+     * @return A tool which runs the tool provider in-process.
+     */
+    static Tool ofToolProvider(ToolProvider toolProvider, InProcessExecutor executor) {
+        return new ToolProviderTool(toolProvider, Objects.requireNonNull(executor, "executor"));
+    }
+
+    static Tool ofToolProvider(String toolProviderName, InProcessExecutor executor) {
+        return ofToolProvider(ToolProvider.findFirst(toolProviderName).orElseThrow(), executor);
     }
 
     static Tool ofSubprocess(List<String> commandPrefix) {
@@ -46,6 +60,46 @@ public sealed interface Tool
         return new SubprocessTool(List.of(commandPrefix), directory);
     }
 
+    /**
+     * Creates a tool which runs either in-process or as a subprocess, whichever has
+     * recently been faster for tools of the same name. Runs always go to a subprocess
+     * while this JVM's heap is under pressure. The mode picked for each run is reported
+     * in {@link ToolResult#executionMode()}.
+     *
+     * @param toolProvider The tool provider to use when running in-process.
+     * @param commandPrefix The command to use when running as a subprocess.
+     * @return An adaptive tool.
+     */
+    static Tool adaptive(ToolProvider toolProvider, List<String> commandPrefix) {
+        return new AdaptiveTool(
+                toolProvider.name(),
+                new ToolProviderTool(toolProvider, null),
+                new SubprocessTool(commandPrefix, null)
+        );
+    }
+
+    /**
+     * Creates an adaptive tool for one of the tools which ship with the running JDK,
+     * like {@code javac}, {@code javadoc} or {@code jar}.
+     *
+     * @param toolName The name of the tool.
+     * @return An adaptive tool.
+     * @see #adaptive(ToolProvider, List)
+     */
+    static Tool adaptive(String toolName) {
+        var executable = Path.of(
+                System.getProperty("java.home"),
+                "bin",
+                System.getProperty("os.name").toLowerCase().startsWith("win")
+                        ? toolName + ".exe"
+                        : toolName
+        );
+        return adaptive(
+                ToolProvider.findFirst(toolName).orElseThrow(),
+                List.of(executable.toString())
+        );
+    }
+
     default ToolRunner runner() {
         return ToolRunner.of(this);
     }
@@ -2,6 +2,8 @@ package dev.mccue.tools;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public abstract class ToolArguments extends ArrayList<String> {
     public ToolArguments() {
@@ -11,4 +13,40 @@ public abstract class ToolArguments extends ArrayList<String> {
     public ToolArguments(Collection<? extends String> c) {
         super(c);
     }
+
+    /**
+     * @param options Every spelling of an option, like {@code -f} and {@code --file}.
+     * @return Whether the option was given.
+     */
+    public boolean has(String... options) {
+        for (var argument : this) {
+            for (var option : options) {
+                if (argument.equals(option) || argument.startsWith(option + "=")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param options Every spelling of an option, like {@code -f} and {@code --file}.
+     * @return The value last given for the option, as either {@code --option value}
+     * or {@code --option=value}.
+     */
+    public Optional<String> valueOf(String... options) {
+        var spellings = List.of(options);
+        String value = null;
+        for (int i = 0; i < size(); i++) {
+            var argument = get(i);
+            var equals = argument.indexOf('=');
+            if (spellings.contains(argument) && i + 1 < size()) {
+                value = get(++i);
+            }
+            else if (equals != -1 && spellings.contains(argument.substring(0, equals))) {
+                value = argument.substring(equals + 1);
+            }
+        }
+        return Optional.ofNullable(value);
+    }
 }
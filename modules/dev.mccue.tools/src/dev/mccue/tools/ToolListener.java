@@ -0,0 +1,59 @@
+package dev.mccue.tools;
+
+import java.util.List;
+
+/**
+ * Receives a callback around every tool run by a {@link ToolRunner}.
+ *
+ * <p>Callbacks are made on the thread which called {@link ToolRunner#run()},
+ * so they should be quick and must be thread safe. An exception thrown by a
+ * listener is not caught.
+ */
+public interface ToolListener {
+    /**
+     * Called right before a tool is run.
+     *
+     * @param tool The name of the tool.
+     * @param arguments The arguments it is being run with.
+     */
+    default void onStart(String tool, List<String> arguments) {
+    }
+
+    /**
+     * Called when a tool exits, whatever its exit status, including when it is
+     * stopped for running past its timeout.
+     *
+     * @param result The outcome of the run.
+     */
+    default void onFinish(ToolResult result) {
+    }
+
+    /**
+     * Called when running a tool failed with an exception, like a
+     * missing executable, instead of the tool exiting.
+     *
+     * @param tool The name of the tool.
+     * @param arguments The arguments it was run with.
+     * @param error The exception.
+     */
+    default void onError(String tool, List<String> arguments, Throwable error) {
+    }
+
+    /**
+     * Registers a listener for every tool run in this JVM.
+     *
+     * @param listener The listener.
+     */
+    static void register(ToolListener listener) {
+        Listeners.ALL.add(listener);
+    }
+
+    /**
+     * Stops a previously registered listener from receiving callbacks.
+     *
+     * @param listener The listener.
+     */
+    static void unregister(ToolListener listener) {
+        Listeners.ALL.remove(listener);
+    }
+}
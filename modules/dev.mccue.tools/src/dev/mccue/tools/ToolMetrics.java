@@ -0,0 +1,282 @@
+package dev.mccue.tools;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Counts, times and measures the output of every tool run, per tool.
+ *
+ * <p>Metrics can be read in the Prometheus text format with {@link #scrape()},
+ * served over HTTP with {@link #serve(InetSocketAddress)} or exposed as
+ * {@link ToolMetricsMXBean}s with {@link #registerMBeans()}. Serving needs the
+ * {@code jdk.httpserver} module and JMX needs {@code java.management}, neither of
+ * which is required otherwise.
+ *
+ * <p>Recording never takes a lock, so it stays cheap under heavy concurrency.
+ *
+ * <pre>{@code
+ * var metrics = ToolMetrics.start();
+ * metrics.serve(new InetSocketAddress(9400));
+ * }</pre>
+ */
+public final class ToolMetrics implements ToolListener, AutoCloseable {
+    private static final double[] DURATION_BUCKETS_SECONDS = {
+            0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5,
+            1, 2.5, 5, 10, 30, 60, 120, 300, 600
+    };
+
+    private static final long[] DURATION_BUCKETS_NANOS = new long[DURATION_BUCKETS_SECONDS.length];
+
+    static {
+        for (int i = 0; i < DURATION_BUCKETS_SECONDS.length; i++) {
+            DURATION_BUCKETS_NANOS[i] = (long) (DURATION_BUCKETS_SECONDS[i] * 1_000_000_000);
+        }
+    }
+
+    static final class PerTool implements ToolMetricsMXBean {
+        private final String tool;
+        private final LongAdder runs = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final LongAdder durationNanos = new LongAdder();
+        // One slot per bucket plus one for +Inf, each counting only the
+        // durations which fall in it. Made cumulative when scraped.
+        private final AtomicLongArray durationBuckets = new AtomicLongArray(DURATION_BUCKETS_NANOS.length + 1);
+        private final LongAdder outputBytes = new LongAdder();
+        private final LongAdder errorBytes = new LongAdder();
+
+        private PerTool(String tool) {
+            this.tool = tool;
+        }
+
+        private void record(ToolResult result) {
+            runs.increment();
+            if (result.exitStatus() != ExitStatusException.EXIT_SUCCESS) {
+                failures.increment();
+            }
+            if (result.timedOut()) {
+                timeouts.increment();
+            }
+
+            var nanos = result.duration().toNanos();
+            durationNanos.add(nanos);
+            int bucket = 0;
+            while (bucket < DURATION_BUCKETS_NANOS.length && nanos > DURATION_BUCKETS_NANOS[bucket]) {
+                bucket++;
+            }
+            durationBuckets.incrementAndGet(bucket);
+
+            outputBytes.add(result.outputBytes());
+            errorBytes.add(result.errorBytes());
+        }
+
+        @Override
+        public String getTool() {
+            return tool;
+        }
+
+        @Override
+        public long getRuns() {
+            return runs.sum();
+        }
+
+        @Override
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        @Override
+        public long getTimeouts() {
+            return timeouts.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getInFlight() {
+            return inFlight.get();
+        }
+
+        @Override
+        public double getTotalDurationSeconds() {
+            return durationNanos.sum() / 1e9;
+        }
+
+        @Override
+        public long getOutputBytes() {
+            return outputBytes.sum();
+        }
+
+        @Override
+        public long getErrorBytes() {
+            return errorBytes.sum();
+        }
+    }
+
+    private final ConcurrentHashMap<String, PerTool> tools;
+    private volatile boolean mbeansRegistered;
+    private MetricsHttpServer httpServer;
+
+    private ToolMetrics() {
+        this.tools = new ConcurrentHashMap<>();
+        this.mbeansRegistered = false;
+        this.httpServer = null;
+    }
+
+    /**
+     * Starts recording metrics for every tool run in this JVM.
+     *
+     * @return The metrics.
+     */
+    public static ToolMetrics start() {
+        var metrics = new ToolMetrics();
+        ToolListener.register(metrics);
+        return metrics;
+    }
+
+    private PerTool perTool(String tool) {
+        var perTool = tools.get(tool);
+        if (perTool == null) {
+            var created = new PerTool(tool);
+            perTool = tools.putIfAbsent(tool, created);
+            if (perTool == null) {
+                perTool = created;
+                if (mbeansRegistered) {
+                    MetricsMBeans.register(created);
+                }
+            }
+        }
+        return perTool;
+    }
+
+    @Override
+    public void onStart(String tool, List<String> arguments) {
+        perTool(tool).inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void onFinish(ToolResult result) {
+        var perTool = perTool(result.tool());
+        perTool.inFlight.decrementAndGet();
+        perTool.record(result);
+    }
+
+    @Override
+    public void onError(String tool, List<String> arguments, Throwable error) {
+        var perTool = perTool(tool);
+        perTool.inFlight.decrementAndGet();
+        perTool.errors.increment();
+    }
+
+    /**
+     * @return Every metric, in the Prometheus text exposition format.
+     */
+    public String scrape() {
+        var sorted = new TreeMap<>(tools);
+        var sb = new StringBuilder();
+
+        counter(sb, sorted, "tool_runs_total", "Tool runs which exited, including timeouts.", PerTool::getRuns);
+        counter(sb, sorted, "tool_failures_total", "Tool runs which exited with a non-zero status.", PerTool::getFailures);
+        counter(sb, sorted, "tool_timeouts_total", "Tool runs stopped for exceeding their timeout.", PerTool::getTimeouts);
+        counter(sb, sorted, "tool_errors_total", "Tool runs which failed with an exception instead of exiting.", PerTool::getErrors);
+        counter(sb, sorted, "tool_output_bytes_total", "Bytes written by tools to their output.", PerTool::getOutputBytes);
+        counter(sb, sorted, "tool_error_bytes_total", "Bytes written by tools to their error output.", PerTool::getErrorBytes);
+
+        sb.append("# HELP tool_in_flight Tool runs currently in progress.\n");
+        sb.append("# TYPE tool_in_flight gauge\n");
+        sorted.forEach((tool, perTool) -> sb.append("tool_in_flight{tool=").append(label(tool)).append("} ")
+                .append(perTool.getInFlight()).append('\n'));
+
+        sb.append("# HELP tool_run_duration_seconds How long tool runs took.\n");
+        sb.append("# TYPE tool_run_duration_seconds histogram\n");
+        sorted.forEach((tool, perTool) -> {
+            long cumulative = 0;
+            for (int i = 0; i < perTool.durationBuckets.length(); i++) {
+                cumulative += perTool.durationBuckets.get(i);
+                sb.append("tool_run_duration_seconds_bucket{tool=").append(label(tool))
+                        .append(",le=\"")
+                        .append(i < DURATION_BUCKETS_SECONDS.length ? Double.toString(DURATION_BUCKETS_SECONDS[i]) : "+Inf")
+                        .append("\"} ")
+                        .append(cumulative)
+                        .append('\n');
+            }
+            sb.append("tool_run_duration_seconds_sum{tool=").append(label(tool)).append("} ")
+                    .append(perTool.getTotalDurationSeconds()).append('\n');
+            sb.append("tool_run_duration_seconds_count{tool=").append(label(tool)).append("} ")
+                    .append(cumulative).append('\n');
+        });
+
+        return sb.toString();
+    }
+
+    private static void counter(
+            StringBuilder sb,
+            Map<String, PerTool> tools,
+            String name,
+            String help,
+            ToLongFunction<PerTool> value
+    ) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        tools.forEach((tool, perTool) -> sb.append(name).append("{tool=").append(label(tool)).append("} ")
+                .append(value.applyAsLong(perTool)).append('\n'));
+    }
+
+    private static String label(String value) {
+        return '"' + value.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n") + '"';
+    }
+
+    /**
+     * Serves {@link #scrape()} on {@code /metrics} at the given address until closed.
+     *
+     * @param address The address to listen on. Port {@code 0} picks a free port.
+     * @return The address actually listened on.
+     */
+    public synchronized InetSocketAddress serve(InetSocketAddress address) {
+        if (httpServer != null) {
+            throw new IllegalStateException("Already serving on " + httpServer.address());
+        }
+        httpServer = MetricsHttpServer.start(this, address);
+        return httpServer.address();
+    }
+
+    /**
+     * Registers a {@link ToolMetricsMXBean} per tool with the platform MBean server,
+     * named {@code dev.mccue.tools:type=ToolMetrics,tool="<tool>"}. Tools seen
+     * for the first time afterwards are registered as they appear.
+     */
+    public synchronized void registerMBeans() {
+        mbeansRegistered = true;
+        tools.values().forEach(MetricsMBeans::register);
+    }
+
+    /**
+     * Stops recording, stops serving and unregisters any MBeans.
+     */
+    @Override
+    public synchronized void close() {
+        ToolListener.unregister(this);
+        if (httpServer != null) {
+            httpServer.stop();
+            httpServer = null;
+        }
+        if (mbeansRegistered) {
+            mbeansRegistered = false;
+            tools.values().forEach(MetricsMBeans::unregister);
+        }
+    }
+}
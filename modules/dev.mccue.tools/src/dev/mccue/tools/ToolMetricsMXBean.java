@@ -0,0 +1,24 @@
+package dev.mccue.tools;
+
+/**
+ * Metrics for one tool, as exposed over JMX by {@link ToolMetrics#registerMBeans()}.
+ */
+public interface ToolMetricsMXBean {
+    String getTool();
+
+    long getRuns();
+
+    long getFailures();
+
+    long getTimeouts();
+
+    long getErrors();
+
+    long getInFlight();
+
+    double getTotalDurationSeconds();
+
+    long getOutputBytes();
+
+    long getErrorBytes();
+}
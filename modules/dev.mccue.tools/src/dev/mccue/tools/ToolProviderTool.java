@@ -2,20 +2,52 @@ package dev.mccue.tools;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.spi.ToolProvider;
 
 final class ToolProviderTool extends AbstractTool {
     private final ToolProvider toolProvider;
+    private final InProcessExecutor executor;
 
-    ToolProviderTool(ToolProvider toolProvider) {
+    ToolProviderTool(ToolProvider toolProvider, InProcessExecutor executor) {
         this.toolProvider = toolProvider;
+        this.executor = executor;
+    }
+
+    @Override
+    String name() {
+        return toolProvider.name();
+    }
+
+    @Override
+    List<String> identity() {
+        return List.of(
+                "tool-provider",
+                Path.of("").toAbsolutePath().toString(),
+                toolProvider.getClass().getName(),
+                toolProvider.name()
+        );
     }
 
     @Override
     public void run(String[] args) throws ExitStatusException {
-        run(args, null, null, System.err::println);
+        ExitStatusException.throwOnFailure(
+                run(args, null, null, System.err::println, Watchdog.defaultTimeout(), null)
+                        .exitStatus()
+        );
     }
 
     @Override
@@ -25,12 +57,14 @@ final class ToolProviderTool extends AbstractTool {
 
 
     @Override
-    void run(
+    ToolResult run(
             String[] arguments,
             OutputStream redirectOutput,
             OutputStream redirectError,
-            Consumer<? super String> echoCommand
-    ) throws ExitStatusException {
+            Consumer<? super String> echoCommand,
+            Duration timeout,
+            ProcessSampler processSampler
+    ) throws ToolTimeoutException {
         if (echoCommand != null) {
             var sb = new StringBuilder();
             sb.append(toolProvider.name());
@@ -40,16 +74,106 @@ final class ToolProviderTool extends AbstractTool {
             }
             echoCommand.accept(sb.toString());
         }
-        ExitStatusException.throwOnFailure(
-                toolProvider.run(
-                        redirectOutput == null
-                                ? System.out
-                                : new PrintStream(redirectOutput),
-                        redirectError == null
-                                ? System.err
-                                : new PrintStream(redirectError),
-                        arguments
-                )
+
+        var start = Instant.now();
+        var startNanos = System.nanoTime();
+        var pool = executor;
+        if (pool == null && (timeout != null || Thread.currentThread().isVirtual())) {
+            pool = InProcessExecutor.defaultExecutor();
+        }
+
+        if (pool == null || pool.isCurrent()) {
+            if (timeout == null) {
+                var out = redirectOutput == null
+                        ? System.out
+                        : new PrintStream(redirectOutput);
+                var err = redirectError == null
+                        ? System.err
+                        : new PrintStream(redirectError);
+                int exit;
+                try {
+                    exit = toolProvider.run(out, err, arguments);
+                } finally {
+                    out.flush();
+                    err.flush();
+                }
+                return result(arguments, exit, start, startNanos);
+            }
+            // Already on a pool thread, so waiting on the pool could deadlock
+            pool = null;
+        }
+
+        var outputTail = timeout == null ? null : new OutputTail(Watchdog.OUTPUT_TAIL_SIZE);
+        OutputStream output = redirectOutput == null ? System.out : redirectOutput;
+        OutputStream error = redirectError == null ? System.err : redirectError;
+        if (outputTail != null) {
+            output = outputTail.tee(output);
+            error = outputTail.tee(error);
+        }
+        var outStream = new PrintStream(output, true);
+        var errStream = new PrintStream(error, true);
+
+        var worker = new AtomicReference<Thread>();
+        Callable<Integer> task = () -> {
+            worker.set(Thread.currentThread());
+            try {
+                return toolProvider.run(outStream, errStream, arguments);
+            } finally {
+                worker.set(null);
+            }
+        };
+
+        Future<Integer> future;
+        if (pool == null) {
+            var futureTask = new FutureTask<>(task);
+            Thread.ofPlatform()
+                    .name(toolProvider.name())
+                    .stackSize(InProcessExecutor.DEFAULT_STACK_SIZE)
+                    .daemon()
+                    .start(futureTask);
+            future = futureTask;
+        }
+        else {
+            future = pool.submit(task);
+        }
+
+        int exit;
+        try {
+            exit = timeout == null
+                    ? future.get()
+                    : future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            var timeoutException = Watchdog.expire(toolProvider.name(), worker.get(), timeout, outputTail);
+            // Interrupts the worker only if it is still running this tool
+            future.cancel(true);
+            throw timeoutException;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            else if (e.getCause() instanceof Error err) {
+                throw err;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        return result(arguments, exit, start, startNanos);
+    }
+
+    private ToolResult result(String[] arguments, int exit, Instant start, long startNanos) {
+        return new ToolResult(
+                name(),
+                Arrays.asList(arguments),
+                exit,
+                start,
+                Duration.ofNanos(System.nanoTime() - startNanos),
+                ExecutionMode.IN_PROCESS,
+                Optional.empty(),
+                0,
+                0,
+                false
         );
     }
 }
@@ -0,0 +1,55 @@
+package dev.mccue.tools;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The outcome of running a tool.
+ *
+ * @param tool The name of the tool, like {@code javac} or {@code jar}.
+ * @param arguments The arguments the tool was run with.
+ * @param exitStatus The exit status of the tool.
+ * @param start When the tool was started.
+ * @param duration How long the tool ran for.
+ * @param executionMode Whether the tool ran in-process or as a subprocess.
+ * @param processStats Resource usage of the tool's process tree, if it was sampled.
+ * @param outputBytes How many bytes the tool wrote to its output.
+ * @param errorBytes How many bytes the tool wrote to its error output.
+ * @param timedOut Whether the tool was stopped for running past its timeout, in which
+ *                 case the exit status is {@link ToolTimeoutException#EXIT_TIMEOUT}.
+ *                 A tool can exit with that status on its own, so only this says
+ *                 whether it timed out.
+ */
+public record ToolResult(
+        String tool,
+        List<String> arguments,
+        int exitStatus,
+        Instant start,
+        Duration duration,
+        ExecutionMode executionMode,
+        Optional<ProcessStats> processStats,
+        long outputBytes,
+        long errorBytes,
+        boolean timedOut
+) {
+    public ToolResult {
+        arguments = List.copyOf(arguments);
+    }
+
+    ToolResult withOutputBytes(long outputBytes, long errorBytes) {
+        return new ToolResult(
+                tool,
+                arguments,
+                exitStatus,
+                start,
+                duration,
+                executionMode,
+                processStats,
+                outputBytes,
+                errorBytes,
+                timedOut
+        );
+    }
+}
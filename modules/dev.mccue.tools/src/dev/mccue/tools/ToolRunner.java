@@ -1,15 +1,16 @@
 package dev.mccue.tools;
 
 import java.io.OutputStream;
+import java.time.Duration;
 import java.util.List;
 import java.util.function.Consumer;
 
 public sealed interface ToolRunner permits AbstractToolRunner {
-    void run() throws ExitStatusException;
+    ToolResult run() throws ExitStatusException;
 
-    void run(List<String> extraArguments) throws ExitStatusException;
+    ToolResult run(List<String> extraArguments) throws ExitStatusException;
 
-    void run(String... extraArguments) throws ExitStatusException;
+    ToolResult run(String... extraArguments) throws ExitStatusException;
 
     ToolRunner echoCommand(boolean echo);
 
@@ -19,8 +20,57 @@ public sealed interface ToolRunner permits AbstractToolRunner {
 
     ToolRunner redirectError(OutputStream outputStream);
 
+    /**
+     * Sets how long the tool may run before it is stopped.
+     *
+     * <p>When the timeout expires, thread dumps of any JVMs the tool started and the
+     * tail of its output are captured, its whole process tree is killed, and a
+     * {@link ToolTimeoutException} is thrown. In-process tools cannot be killed, so their
+     * thread is interrupted and abandoned instead.
+     *
+     * @param timeout The timeout, or {@code null} to fall back to the {@linkplain #defaultTimeout(Duration) default}.
+     * @return This runner.
+     */
+    ToolRunner timeout(Duration timeout);
+
+    /**
+     * Samples the resource usage of the tool's process tree while it runs, reporting
+     * the totals in {@link ToolResult#processStats()}.
+     *
+     * <p>Only subprocess tools on Linux are sampled.
+     *
+     * @param processSampler The sampler to use, or {@code null} to not sample.
+     * @return This runner.
+     */
+    ToolRunner processSampler(ProcessSampler processSampler);
+
+    /**
+     * Shares a single execution between this run and any identical runs already in flight.
+     *
+     * <p>Runs are identical when they use the same tool, from the same working directory,
+     * with the same arguments. Only the first of them actually runs the tool. The others
+     * wait for it to finish, then have its output written to their own streams and
+     * get the same result, exit status or timeout. Arguments are compared verbatim.
+     *
+     * <p>This is only safe for runs whose effects don't need to happen more than once,
+     * like {@code jar --describe-module} or resolving dependencies.
+     *
+     * @param deduplicate Whether to deduplicate.
+     * @return This runner.
+     */
+    ToolRunner deduplicate(boolean deduplicate);
+
     ToolArguments arguments();
 
+    /**
+     * Sets the timeout used by every runner which doesn't set its own.
+     *
+     * @param timeout The timeout, or {@code null} for no timeout.
+     */
+    static void defaultTimeout(Duration timeout) {
+        Watchdog.defaultTimeout(timeout);
+    }
+
     static ToolRunner of(Tool tool) {
         return new BasicRunner(switch (tool) { case AbstractTool abstractTool -> abstractTool; }, new BasicToolArguments());
     }
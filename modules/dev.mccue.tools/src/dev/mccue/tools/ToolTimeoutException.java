@@ -0,0 +1,67 @@
+package dev.mccue.tools;
+
+import java.io.Serial;
+import java.time.Duration;
+
+/**
+ * When thrown, indicates that a tool did not finish within its timeout
+ * and was stopped by the watchdog.
+ *
+ * <p>Before the tool is stopped, thread dumps of any JVMs in its process
+ * tree and the last few kilobytes of its output are captured so that the
+ * cause of the hang can be investigated after the fact.
+ */
+public final class ToolTimeoutException extends ExitStatusException {
+    /**
+     * The exit status reported for a timed out tool, matching the convention
+     * of the coreutils {@code timeout} command.
+     */
+    public static final int EXIT_TIMEOUT = 124;
+
+    @Serial
+    private static final long serialVersionUID = -3120960744651327735L;
+
+    private final Duration timeout_;
+    private final String diagnostics_;
+    private final String outputTail_;
+    private final ExecutionMode executionMode_;
+
+    ToolTimeoutException(
+            String tool,
+            Duration timeout,
+            String diagnostics,
+            String outputTail,
+            ExecutionMode executionMode
+    ) {
+        super(EXIT_TIMEOUT, tool + " did not finish within " + timeout);
+        timeout_ = timeout;
+        diagnostics_ = diagnostics;
+        outputTail_ = outputTail;
+        executionMode_ = executionMode;
+    }
+
+    /**
+     * @return The timeout that was exceeded.
+     */
+    public Duration getTimeout() {
+        return timeout_;
+    }
+
+    /**
+     * @return Thread dumps and process information captured before the tool was stopped.
+     */
+    public String getDiagnostics() {
+        return diagnostics_;
+    }
+
+    /**
+     * @return The last output and error output written by the tool before it was stopped.
+     */
+    public String getOutputTail() {
+        return outputTail_;
+    }
+
+    ExecutionMode executionMode() {
+        return executionMode_;
+    }
+}
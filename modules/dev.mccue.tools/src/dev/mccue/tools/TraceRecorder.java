@@ -0,0 +1,249 @@
+package dev.mccue.tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records every tool run as a span and writes them out in the Chrome
+ * trace event format when closed.
+ *
+ * <p>The resulting file can be opened in Perfetto or {@code chrome://tracing}
+ * to see which tools ran when, on which thread, and where the build sat idle.
+ * Each thread which runs tools gets its own lane. Spans carry the tool's
+ * arguments, exit status and execution mode.
+ *
+ * <pre>{@code
+ * try (var trace = TraceRecorder.start(Path.of("build", "trace.json"))) {
+ *     Javac.run(arguments -> ...);
+ *     Jar.run(arguments -> ...);
+ * }
+ * }</pre>
+ */
+public final class TraceRecorder implements ToolListener, AutoCloseable {
+    private static final int MAX_ARGUMENTS_LENGTH = 1024;
+
+    private record Span(
+            long threadId,
+            ToolResult result
+    ) {
+    }
+
+    private record Failure(
+            long threadId,
+            Instant at,
+            String tool,
+            List<String> arguments,
+            Throwable error
+    ) {
+    }
+
+    private final Path output;
+    private final ConcurrentLinkedQueue<Span> spans;
+    private final ConcurrentLinkedQueue<Failure> failures;
+    private final ConcurrentHashMap<Long, String> threadNames;
+    private boolean closed;
+
+    private TraceRecorder(Path output) {
+        this.output = output;
+        this.spans = new ConcurrentLinkedQueue<>();
+        this.failures = new ConcurrentLinkedQueue<>();
+        this.threadNames = new ConcurrentHashMap<>();
+        this.closed = false;
+    }
+
+    /**
+     * Starts recording every tool run in this JVM.
+     *
+     * @param output Where to write the trace once the recorder is closed.
+     * @return The recorder.
+     */
+    public static TraceRecorder start(Path output) {
+        var recorder = new TraceRecorder(output);
+        ToolListener.register(recorder);
+        return recorder;
+    }
+
+    @Override
+    public void onFinish(ToolResult result) {
+        var thread = Thread.currentThread();
+        threadNames.putIfAbsent(thread.threadId(), threadName(thread));
+        spans.add(new Span(thread.threadId(), result));
+    }
+
+    @Override
+    public void onError(String tool, List<String> arguments, Throwable error) {
+        var thread = Thread.currentThread();
+        threadNames.putIfAbsent(thread.threadId(), threadName(thread));
+        failures.add(new Failure(thread.threadId(), Instant.now(), tool, List.copyOf(arguments), error));
+    }
+
+    /**
+     * Stops recording and writes the trace.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        ToolListener.unregister(this);
+
+        var pid = ProcessHandle.current().pid();
+        var events = new ArrayList<String>();
+        events.add(metadata("process_name", pid, 0, "tools"));
+        threadNames.forEach((threadId, name) ->
+                events.add(metadata("thread_name", pid, threadId, name)));
+
+        for (var span : spans) {
+            var result = span.result;
+            var args = new LinkedHashMap<String, Object>();
+            args.put("arguments", summarize(result.arguments()));
+            args.put("exitStatus", result.exitStatus());
+            args.put("executionMode", result.executionMode().name());
+            result.processStats().ifPresent(stats -> {
+                args.put("peakResidentSetBytes", stats.peakResidentSetBytes());
+                args.put("userCpuMicros", stats.userCpu().toNanos() / 1000);
+                args.put("systemCpuMicros", stats.systemCpu().toNanos() / 1000);
+            });
+            events.add(event(
+                    result.tool(),
+                    "X",
+                    micros(result.start()),
+                    result.duration().toNanos() / 1000,
+                    pid,
+                    span.threadId,
+                    args
+            ));
+        }
+
+        for (var failure : failures) {
+            var args = new LinkedHashMap<String, Object>();
+            args.put("arguments", summarize(failure.arguments));
+            args.put("error", String.valueOf(failure.error));
+            events.add(event(
+                    failure.tool + " failed",
+                    "i",
+                    micros(failure.at),
+                    -1,
+                    pid,
+                    failure.threadId,
+                    args
+            ));
+        }
+
+        var json = "{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n"
+                + String.join(",\n", events)
+                + "\n]}\n";
+        try {
+            var parent = output.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.writeString(output, json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String threadName(Thread thread) {
+        var name = thread.getName();
+        if (name.isEmpty()) {
+            name = (thread.isVirtual() ? "virtual-" : "thread-") + thread.threadId();
+        }
+        return name;
+    }
+
+    private static long micros(Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+
+    private static String summarize(List<String> arguments) {
+        var summary = String.join(" ", arguments);
+        if (summary.length() > MAX_ARGUMENTS_LENGTH) {
+            summary = summary.substring(0, MAX_ARGUMENTS_LENGTH) + "...";
+        }
+        return summary;
+    }
+
+    private static String metadata(String name, long pid, long threadId, String value) {
+        return "{\"name\":" + quote(name)
+                + ",\"ph\":\"M\",\"pid\":" + pid
+                + ",\"tid\":" + threadId
+                + ",\"args\":{\"name\":" + quote(value) + "}}";
+    }
+
+    private static String event(
+            String name,
+            String phase,
+            long timestamp,
+            long duration,
+            long pid,
+            long threadId,
+            Map<String, Object> args
+    ) {
+        var sb = new StringBuilder();
+        sb.append("{\"name\":").append(quote(name))
+                .append(",\"cat\":\"tool\",\"ph\":\"").append(phase)
+                .append("\",\"ts\":").append(timestamp);
+        if (duration >= 0) {
+            sb.append(",\"dur\":").append(duration);
+        }
+        else {
+            sb.append(",\"s\":\"t\"");
+        }
+        sb.append(",\"pid\":").append(pid)
+                .append(",\"tid\":").append(threadId)
+                .append(",\"args\":{");
+        var first = true;
+        for (var entry : args.entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append(quote(entry.getKey())).append(':');
+            if (entry.getValue() instanceof Number number) {
+                sb.append(number);
+            }
+            else {
+                sb.append(quote(String.valueOf(entry.getValue())));
+            }
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    private static String quote(String s) {
+        var sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            var c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
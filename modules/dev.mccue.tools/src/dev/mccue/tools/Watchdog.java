@@ -0,0 +1,174 @@
+package dev.mccue.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces tool timeouts.
+ *
+ * <p>When a tool runs past its timeout the watchdog records what it can about
+ * the stuck work - thread dumps of JVM processes via {@code jcmd Thread.print},
+ * the command lines of every process in the tree, or the stack of the thread
+ * running an in-process tool - and then stops it.
+ */
+final class Watchdog {
+    static final int OUTPUT_TAIL_SIZE = 8 * 1024;
+
+    private static final Duration JCMD_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final boolean IS_WINDOWS = System.getProperty("os.name")
+            .toLowerCase()
+            .startsWith("win");
+
+    private static volatile Duration defaultTimeout = null;
+
+    private Watchdog() {}
+
+    static Duration defaultTimeout() {
+        return defaultTimeout;
+    }
+
+    static void defaultTimeout(Duration timeout) {
+        defaultTimeout = timeout;
+    }
+
+    /**
+     * Captures diagnostics for the process tree rooted at the given process, then
+     * forcibly destroys every process in that tree.
+     */
+    static ToolTimeoutException expire(
+            String tool,
+            Process process,
+            Duration timeout,
+            OutputTail outputTail
+    ) {
+        // The tree has to be walked before anything is killed, otherwise
+        // grandchildren get re-parented and can no longer be found.
+        var tree = new ArrayList<ProcessHandle>();
+        tree.add(process.toHandle());
+        process.descendants().forEach(tree::add);
+
+        var diagnostics = new StringBuilder();
+        for (var handle : tree) {
+            diagnostics.append("Process ")
+                    .append(handle.pid())
+                    .append(": ")
+                    .append(handle.info().commandLine().orElse("<unknown>"))
+                    .append(System.lineSeparator());
+            if (isJvm(handle)) {
+                diagnostics.append(threadDump(handle))
+                        .append(System.lineSeparator());
+            }
+        }
+
+        for (int i = tree.size() - 1; i >= 0; i--) {
+            tree.get(i).destroyForcibly();
+        }
+
+        return new ToolTimeoutException(
+                tool,
+                timeout,
+                diagnostics.toString(),
+                outputTail == null ? "" : outputTail.toString(),
+                ExecutionMode.SUBPROCESS
+        );
+    }
+
+    /**
+     * Captures the stack of a thread running an in-process tool.
+     *
+     * <p>The thread is not interrupted here: it may belong to a pool and have moved on
+     * to other work by now. The caller stops the tool by cancelling its future, which
+     * only interrupts the thread while it is still running that tool. There is no way
+     * to forcibly stop an in-process tool, so a tool which ignores interruption will
+     * keep its thread busy until it finishes on its own.
+     *
+     * @param thread The thread running the tool, or {@code null} if it never got to start.
+     */
+    static ToolTimeoutException expire(
+            String tool,
+            Thread thread,
+            Duration timeout,
+            OutputTail outputTail
+    ) {
+        if (thread == null) {
+            return new ToolTimeoutException(
+                    tool,
+                    timeout,
+                    "(still waiting for a thread to run on)",
+                    "",
+                    ExecutionMode.IN_PROCESS
+            );
+        }
+
+        var diagnostics = new StringBuilder();
+        diagnostics.append('"')
+                .append(thread.getName())
+                .append("\" ")
+                .append(thread.getState())
+                .append(System.lineSeparator());
+        for (var element : thread.getStackTrace()) {
+            diagnostics.append("\tat ")
+                    .append(element)
+                    .append(System.lineSeparator());
+        }
+
+        return new ToolTimeoutException(
+                tool,
+                timeout,
+                diagnostics.toString(),
+                outputTail == null ? "" : outputTail.toString(),
+                ExecutionMode.IN_PROCESS
+        );
+    }
+
+    private static boolean isJvm(ProcessHandle handle) {
+        return handle.info()
+                .command()
+                .map(command -> Path.of(command).getFileName().toString())
+                .map(name -> name.equals("java") || name.equals("java.exe") || name.equals("javaw.exe"))
+                .orElse(false);
+    }
+
+    private static String threadDump(ProcessHandle handle) {
+        var jcmd = Path.of(
+                System.getProperty("java.home"),
+                "bin",
+                IS_WINDOWS ? "jcmd.exe" : "jcmd"
+        );
+        if (!Files.isExecutable(jcmd)) {
+            return "(jcmd not available, no thread dump captured)";
+        }
+
+        try {
+            var process = new ProcessBuilder(jcmd.toString(), Long.toString(handle.pid()), "Thread.print")
+                    .redirectErrorStream(true)
+                    .start();
+            var dump = new ByteArrayOutputStream();
+            var output = Thread.startVirtualThread(() -> {
+                try {
+                    process.getInputStream().transferTo(dump);
+                } catch (IOException e) {
+                    // Whatever was read before the failure is still worth reporting
+                }
+            });
+            if (!process.waitFor(JCMD_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                return "(jcmd did not respond within " + JCMD_TIMEOUT + ")";
+            }
+            output.join();
+            return dump.toString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "(could not run jcmd: " + e.getMessage() + ")";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "(interrupted while capturing thread dump)";
+        }
+    }
+}
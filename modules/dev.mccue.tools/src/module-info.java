@@ -1,3 +1,6 @@
 module dev.mccue.tools {
+    requires static java.management;
+    requires static jdk.httpserver;
+
     exports dev.mccue.tools;
-}
\ No newline at end of file
+}